@@ -0,0 +1,101 @@
+package org.noqturne;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.BenchmarkResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Runs the benchmarks with the allocation rate measured next to the throughput, and saves the
+ * results as JSON. Takes the usual JMH arguments, and additionally <code>--baseline &lt;file&gt;</code>
+ * with the results of an earlier run, for instance on the main branch, to compare this run against.
+ */
+public class BenchmarkRunner {
+
+    private static final String DEFAULT_RESULT_FILE = "benchmark-results.json";
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+    public static void main(String[] args) throws Exception {
+        List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+        File baseline = null;
+        int baselineIndex = jmhArgs.indexOf("--baseline");
+        if (baselineIndex >= 0) {
+            if (baselineIndex + 1 >= jmhArgs.size()) {
+                System.err.println("--baseline needs the results file of an earlier run");
+                System.exit(2);
+            }
+            baseline = new File(jmhArgs.remove(baselineIndex + 1));
+            jmhArgs.remove(baselineIndex);
+        }
+
+        CommandLineOptions commandLine = new CommandLineOptions(jmhArgs.toArray(new String[0]));
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(commandLine.getResultFormat().orElse(ResultFormatType.JSON))
+                .result(commandLine.getResult().orElse(DEFAULT_RESULT_FILE))
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        if (baseline != null) {
+            compare(results, new ObjectMapper().readTree(baseline));
+        }
+    }
+
+    /**
+     * Prints the score and allocations per operation of every benchmark relative to the same
+     * benchmark with the same parameters in the baseline. A ratio above 1 means more operations per
+     * second, or more bytes allocated per operation, than the baseline.
+     */
+    private static void compare(Collection<RunResult> results, JsonNode baseline) {
+        Map<String, JsonNode> baselineRuns = new HashMap<>();
+        for (JsonNode run : baseline) {
+            Map<String, String> params = new TreeMap<>();
+            run.path("params").fields().forEachRemaining(param -> params.put(param.getKey(), param.getValue().asText()));
+            baselineRuns.put(key(run.path("benchmark").asText(), params), run);
+        }
+
+        System.out.println();
+        System.out.printf("%-60s %14s %14s %8s %12s%n", "Benchmark", "Score", "Baseline", "Ratio", "Alloc ratio");
+        for (RunResult run : results) {
+            Map<String, String> params = new TreeMap<>();
+            for (String param : run.getParams().getParamsKeys()) {
+                params.put(param, run.getParams().getParam(param));
+            }
+            String key = key(run.getParams().getBenchmark(), params);
+            BenchmarkResult aggregated = run.getAggregatedResult();
+            Result<?> score = aggregated.getPrimaryResult();
+            JsonNode before = baselineRuns.get(key);
+            if (before == null) {
+                System.out.printf("%-60s %14.3f %14s%n", shortName(key), score.getScore(), "-");
+                continue;
+            }
+            double baselineScore = before.path("primaryMetric").path("score").asDouble();
+            Result<?> allocation = aggregated.getSecondaryResults().get(ALLOCATION_METRIC);
+            JsonNode baselineAllocation = before.path("secondaryMetrics").path(ALLOCATION_METRIC).path("score");
+            String allocationRatio = allocation != null && baselineAllocation.asDouble() > 0
+                    ? String.format("%.2f", allocation.getScore() / baselineAllocation.asDouble()) : "-";
+            System.out.printf("%-60s %14.3f %14.3f %8.2f %12s%n", shortName(key), score.getScore(), baselineScore,
+                    score.getScore() / baselineScore, allocationRatio);
+        }
+    }
+
+    private static String key(String benchmark, Map<String, String> params) {
+        return params.isEmpty() ? benchmark : benchmark + " " + params;
+    }
+
+    private static String shortName(String key) {
+        return key.startsWith(BenchmarkRunner.class.getPackageName() + ".")
+                ? key.substring(BenchmarkRunner.class.getPackageName().length() + 1) : key;
+    }
+}
@@ -0,0 +1,114 @@
+package org.noqturne;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures turning a thumbnail into cover art, the image part of fetching cover art for a song.
+ * <p>
+ * The thumbnails are generated JPEGs of the size YouTube serves, or the JPEGs in a folder when
+ * <code>-p thumbnails=&lt;folder&gt;</code> is given, for instance thumbnails saved from real songs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CoverArtBenchmark {
+
+    private static final int GENERATED_THUMBNAILS = 8;
+
+    /**
+     * Either the size of the generated thumbnails, such as <code>1280x720</code> for maxresdefault
+     * and hq720 thumbnails and <code>480x360</code> for hqdefault thumbnails, or a folder of JPEGs.
+     */
+    @Param({"1280x720", "480x360"})
+    public String thumbnails;
+
+    private final CoverArtProcessor processor = new CoverArtProcessor(CoverArtProcessor.DEFAULT_JPEG_QUALITY);
+    private byte[][] inputs;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void loadThumbnails() throws IOException {
+        List<byte[]> loaded = new ArrayList<>();
+        if (this.thumbnails.matches("\\d+x\\d+")) {
+            String[] size = this.thumbnails.split("x");
+            Random random = new Random(42);
+            for (int i = 0; i < GENERATED_THUMBNAILS; i++) {
+                loaded.add(generateThumbnail(Integer.parseInt(size[0]), Integer.parseInt(size[1]), random));
+            }
+        } else {
+            try (Stream<Path> files = Files.list(Paths.get(this.thumbnails))) {
+                for (Path file : files.filter(file -> file.toString().toLowerCase().endsWith(".jpg")).sorted().toList()) {
+                    loaded.add(Files.readAllBytes(file));
+                }
+            }
+        }
+        if (loaded.isEmpty()) {
+            throw new IllegalStateException("No JPEG thumbnails found in " + this.thumbnails);
+        }
+        this.inputs = loaded.toArray(new byte[0][]);
+    }
+
+    /**
+     * Draws overlapping shapes in random colors, which compresses about as well as a real thumbnail,
+     * unlike a single color or pure noise.
+     */
+    private static byte[] generateThumbnail(int width, int height, Random random) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setPaint(new GradientPaint(0, 0, new Color(random.nextInt()), width, height, new Color(random.nextInt())));
+        graphics.fillRect(0, 0, width, height);
+        for (int i = 0; i < 60; i++) {
+            graphics.setColor(new Color(random.nextInt(), true));
+            graphics.fillOval(random.nextInt(width), random.nextInt(height), random.nextInt(width / 3) + 1, random.nextInt(height / 3) + 1);
+        }
+        graphics.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    private byte[] nextThumbnail() {
+        byte[] thumbnail = this.inputs[this.next];
+        this.next = (this.next + 1) % this.inputs.length;
+        return thumbnail;
+    }
+
+    @Benchmark
+    public byte[] cropToSquare() throws IOException {
+        return this.processor.cropToSquare(nextThumbnail());
+    }
+
+    /**
+     * How cover art was cropped before {@link CoverArtProcessor}: decoding the whole thumbnail,
+     * cropping it and encoding the square with a new writer every time.
+     */
+    @Benchmark
+    public byte[] cropToSquareBaseline() throws IOException {
+        BufferedImage img = ImageIO.read(new ByteArrayInputStream(nextThumbnail()));
+        int targetWidth = img.getHeight();
+        int startX = (img.getWidth() / 2) - (targetWidth / 2);
+        BufferedImage croppedImg = img.getSubimage(startX, 0, targetWidth, targetWidth);
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        ImageIO.write(croppedImg, "jpg", byteStream);
+        return byteStream.toByteArray();
+    }
+}
@@ -0,0 +1,48 @@
+package org.noqturne;
+
+import com.mpatric.mp3agic.ID3v2;
+import com.mpatric.mp3agic.ID3v24Tag;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing the artist and title out of a filename, and the vId out of what the user entered.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilenameBenchmark {
+
+    public String filePath = "Downloads/Noqturne/Some Artist - Some Song (feat. Other Artist).mp3";
+    public String url = "https://www.youtube.com/watch?v=dQw4w9WgXcQ&list=PLtest&index=3";
+    public String vId = "dQw4w9WgXcQ";
+
+    @Benchmark
+    public String getSongName() {
+        return Tagger.getSongName(this.filePath);
+    }
+
+    @Benchmark
+    public ID3v2 addArtistAndSongname() {
+        ID3v2 tag = new ID3v24Tag();
+        Tagger.addArtistAndSongname(Tagger.getSongName(this.filePath).split(" - "), tag, this.filePath);
+        return tag;
+    }
+
+    @Benchmark
+    public String getVideoIdFromUrl() {
+        return Tagger.getVideoId(this.url);
+    }
+
+    /**
+     * A bare vId is recognized by failing to parse it as a URL.
+     */
+    @Benchmark
+    public String getVideoIdFromVId() {
+        return Tagger.getVideoId(this.vId);
+    }
+}
@@ -0,0 +1,133 @@
+package org.noqturne;
+
+import com.mpatric.mp3agic.ID3v2;
+import com.mpatric.mp3agic.ID3v24Tag;
+import com.mpatric.mp3agic.Mp3File;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures reading the ID3v2 tag of a song and writing the finished tag back, on synthetic mp3 files
+ * of several sizes that already carry a tag with cover art, like a song that is tagged again.
+ * <p>
+ * The benchmarks that write also count the files they saved and the bytes written to disk for them,
+ * see {@link WriteCounters}. Dividing <code>bytesWritten</code> by <code>files</code> gives the bytes
+ * written per file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Id3TagBenchmark {
+
+    private static final int COVER_ART_SIZE = 120 * 1024;
+
+    /**
+     * Size of the mp3 file in megabytes.
+     */
+    @Param({"1", "8", "32"})
+    public int fileSize;
+
+    private final Tagger tagger = new Tagger();
+    private Path dir;
+    private Path file;
+    private byte[] coverArt;
+    private int round;
+
+    @Setup(Level.Trial)
+    public void createSong() throws Exception {
+        this.dir = Files.createTempDirectory("noqturne-benchmark");
+        this.file = SyntheticMp3.create(this.dir.resolve("Artist - Title.mp3"), this.fileSize * 1024L * 1024L);
+        this.coverArt = new byte[COVER_ART_SIZE];
+        new Random(42).nextBytes(this.coverArt);
+        this.tagger.saveMP3FileWithCover(this.file, nextTag());
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteSong() throws Exception {
+        try (Stream<Path> files = Files.walk(this.dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * A tag that differs a little every time, so every save actually changes the file.
+     */
+    private ID3v2 nextTag() {
+        this.round++;
+        ID3v2 tag = new ID3v24Tag();
+        tag.setArtist("Artist");
+        tag.setTitle("Title " + this.round);
+        tag.setAlbumImage(this.coverArt, Tagger.MIME_TYPE);
+        tag.setComment(Tagger.COVER_ART_COMMENT_PREFIX + "benchmark" + this.round % 10);
+        return tag;
+    }
+
+    @Benchmark
+    public ID3v2 load() throws Exception {
+        return Tagger.loadId3v2Tag(this.file);
+    }
+
+    /**
+     * How the tag was read before {@link Id3TagReader}: mp3agic scans every audio frame of the file.
+     */
+    @Benchmark
+    public ID3v2 loadBaseline() throws Exception {
+        return new Mp3File(this.file).getId3v2Tag();
+    }
+
+    /**
+     * Counts the files saved by a benchmark and the bytes written to disk for them, per iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class WriteCounters {
+        public long files;
+        public long bytesWritten;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.files = 0;
+            this.bytesWritten = 0;
+        }
+
+        void written(long bytes) {
+            this.files++;
+            this.bytesWritten += bytes;
+        }
+    }
+
+    @Benchmark
+    public void save(WriteCounters counters) throws Exception {
+        counters.written(this.tagger.saveMP3FileWithCover(this.file, nextTag()).bytesWritten());
+    }
+
+    /**
+     * How the tag was written before {@link Id3TagWriter}: the whole file is saved to a temporary
+     * file that then replaces the original.
+     */
+    @Benchmark
+    public void saveBaseline(WriteCounters counters) throws Exception {
+        Mp3File mp3file = new Mp3File(this.file);
+        mp3file.setId3v2Tag(nextTag());
+        File tempMp3File = File.createTempFile("temp", ".mp3");
+        mp3file.save(tempMp3File.getAbsolutePath());
+        long bytesWritten = tempMp3File.length();
+        // Moving the file to another volume copies it once more
+        if (!Files.getFileStore(tempMp3File.toPath()).equals(Files.getFileStore(this.file))) {
+            bytesWritten *= 2;
+        }
+        Files.move(tempMp3File.toPath(), this.file, StandardCopyOption.REPLACE_EXISTING);
+        counters.written(bytesWritten);
+    }
+}
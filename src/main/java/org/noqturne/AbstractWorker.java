@@ -1,18 +1,24 @@
 package org.noqturne;
 
+import org.jetbrains.annotations.Nullable;
+
 import javax.swing.*;
 import java.awt.*;
 
 public abstract class AbstractWorker extends SwingWorker<Void, Void> {
-    private final JFrame frame;
+    private final @Nullable JFrame frame;
 
-    public AbstractWorker(JFrame frame) {
+    /**
+     * @param frame the frame that shows a wait cursor while the task runs, or <code>null</code> when
+     *              running without a GUI
+     */
+    public AbstractWorker(@Nullable JFrame frame) {
         this.frame = frame;
     }
 
     @Override
     protected Void doInBackground() {
-        frame.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        setCursor(Cursor.WAIT_CURSOR);
         beginTask();
         executeTask();
         return null;
@@ -20,10 +26,16 @@ public abstract class AbstractWorker extends SwingWorker<Void, Void> {
 
     @Override
     protected void done() {
-        frame.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+        setCursor(Cursor.DEFAULT_CURSOR);
         taskCompleted();
     }
 
+    private void setCursor(int cursorType) {
+        if (frame != null) {
+            frame.setCursor(Cursor.getPredefinedCursor(cursorType));
+        }
+    }
+
     // Abstract methods for specific task implementation
     protected abstract void beginTask();
 
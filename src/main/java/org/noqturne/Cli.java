@@ -0,0 +1,494 @@
+package org.noqturne;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpServer;
+import org.noqturne.exceptions.TaggingFolderException;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs Noqturne from the command line without a GUI, so large batches can be tagged on machines
+ * without a display. The commands run on the same {@link Tagger}, {@link SongDownloader} and
+ * {@link LibraryAuditor} as the GUI, see {@link #USAGE} for the commands and options.
+ * <p>
+ * With <code>--json</code>, standard output only contains JSON objects, one per line, see
+ * {@link ConsoleLogger}. Besides <code>log</code> events, these are:
+ * <ul>
+ *     <li><code>progress</code>: a song is being downloaded, with its <code>vId</code>, its
+ *     <code>status</code> and the <code>downloadedBytes</code>, <code>totalBytes</code>,
+ *     <code>bytesPerSecond</code> and <code>etaSeconds</code> that are known. Written when the status
+ *     changes and at most once a second otherwise</li>
+ *     <li><code>downloaded</code>: a song was downloaded, with its <code>file</code></li>
+ *     <li><code>song</code>: a song was tagged or failed, with its <code>file</code>, its
+ *     <code>status</code> (<code>tagged</code> or <code>failed</code>), the number of songs
+ *     <code>done</code> so far and the <code>total</code> number of songs if it is known</li>
+ *     <li><code>result</code>: the outcome of the command</li>
+ *     <li><code>exit</code>: the exit <code>code</code> of the process, always the last line</li>
+ * </ul>
+ */
+public class Cli {
+
+    public static final int EXIT_OK = 0;
+    // Some songs could not be tagged, or an audit found songs that are missing tags
+    public static final int EXIT_INCOMPLETE = 1;
+    public static final int EXIT_USAGE = 2;
+    // The command could not be run at all, such as when there are no songs to tag
+    public static final int EXIT_ERROR = 3;
+
+    private static final long PROGRESS_INTERVAL_NANOS = 1_000_000_000L;
+
+    static final String USAGE = """
+            Usage: noqturne [options] <command> [arguments]
+
+            Commands:
+              tag-folder [folder]       tag all mp3 files in a folder, the tagging folder by default
+              tag-file <file>           tag a single mp3 file
+              download-and-tag <url>    download a YouTube video or playlist and tag its songs
+              audit [folder]            list mp3 files that are missing tags
+              watch [folder...]         keep tagging mp3 files as they are added to the folders,
+                                        the tagging folder by default, until stopped
+
+            Options:
+              --vid <vId>               tag every song with the cover art of this video, also accepts its URL
+              --folder <folder>         tagging folder for this run, instead of the one in the settings
+              --concurrency <songs>     maximum number of songs tagged at the same time
+              --json                    write progress as JSON objects, one per line
+              --offline                 only use cover art searches made before, even expired ones
+              --metrics-port <port>     serve metrics in Prometheus format on http://127.0.0.1:<port>/metrics
+              --help                    show this message
+
+            Options of watch:
+              --settle <seconds>        time a file must stop changing before it is tagged, 5 by default
+              --batch-size <songs>      number of new files that are tagged together, 50 by default
+              --max-latency <seconds>   longest time a new file waits for others to be tagged with, 30 by default
+
+            Exit codes: 0 success, 1 some songs failed or are missing tags, 2 usage error,
+            3 the command could not be run""";
+
+    private final ConsoleLogger logger;
+    private final Arguments arguments;
+    private final Tagger tagger;
+
+    private Cli(ConsoleLogger logger, Arguments arguments) {
+        this.logger = logger;
+        this.arguments = arguments;
+        this.tagger = arguments.concurrency() > 0
+                ? new Tagger(TaggingPipeline.Settings.forConcurrency(arguments.concurrency())) : new Tagger();
+    }
+
+    /**
+     * Runs a command, writing its progress to standard output. Anything else that writes to standard
+     * output, such as the output of processes, is sent to standard error instead, so standard output
+     * stays readable for programs.
+     *
+     * @param args the command line arguments
+     * @return the exit code
+     */
+    public static int run(String[] args) {
+        PrintStream out = System.out;
+        System.setOut(System.err);
+        return run(args, out, System.err);
+    }
+
+    /**
+     * Runs a command.
+     *
+     * @param args the command line arguments
+     * @param out stream progress is written to
+     * @param err stream errors and usage are written to, unless they are written to <code>out</code> as JSON
+     * @return the exit code
+     */
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        Arguments arguments;
+        try {
+            arguments = Arguments.parse(args);
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return EXIT_USAGE;
+        }
+        if (arguments.help()) {
+            out.println(USAGE);
+            return EXIT_OK;
+        }
+        ConsoleLogger logger = new ConsoleLogger(out, err, arguments.json());
+        if (arguments.folder() != null) {
+            ResourceManager.overrideTaggingDirectory(arguments.folder());
+        }
+        if (arguments.offline()) {
+            ResourceManager.getSearchCache().setOfflineMode(true);
+        }
+        HttpServer metricsServer = null;
+        int exitCode;
+        try {
+            if (arguments.metricsPort() > 0) {
+                metricsServer = ResourceManager.getMetrics().serve(arguments.metricsPort());
+            }
+            exitCode = new Cli(logger, arguments).execute();
+        } catch (IOException e) {
+            logger.printError("Could not serve metrics on port " + arguments.metricsPort() + ": " + e.getMessage());
+            exitCode = EXIT_ERROR;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.printError("Interrupted before the command finished");
+            exitCode = EXIT_ERROR;
+        } catch (RuntimeException e) {
+            ErrorLogger.runtimeExceptionOccurred(e);
+            exitCode = EXIT_ERROR;
+        } finally {
+            if (metricsServer != null) {
+                metricsServer.stop(0);
+            }
+        }
+        logger.emit(ConsoleLogger.event("exit").put("code", exitCode));
+        return exitCode;
+    }
+
+    private int execute() throws InterruptedException {
+        return switch (arguments.command()) {
+            case "tag-folder" -> tagFolder(arguments.operand());
+            case "tag-file" -> tagFile(arguments.operand());
+            case "download-and-tag" -> downloadAndTag(arguments.operand());
+            case "audit" -> audit(arguments.operand());
+            case "watch" -> watch(arguments.operands());
+            default -> throw new IllegalStateException("Unknown command " + arguments.command());
+        };
+    }
+
+    private int tagFolder(@Nullable String folder) throws InterruptedException {
+        File[] songs = listSongs(folder);
+        if (songs == null) {
+            return EXIT_ERROR;
+        }
+        if (songs.length == 0) {
+            logger.printError("There are no songs in the folder!");
+            return EXIT_ERROR;
+        }
+        return tagSongs(songs);
+    }
+
+    private int tagFile(String file) throws InterruptedException {
+        File song = new File(file);
+        if (!song.isFile()) {
+            logger.printError("File does not exist: " + file);
+            return EXIT_ERROR;
+        }
+        return tagSongs(new File[] {song});
+    }
+
+    private int tagSongs(File[] songs) throws InterruptedException {
+        prepareSearch();
+        TaggingPipeline.Batch batch = tagger.startBatch(arguments.vId(), songListener(songs.length));
+        for (File song : songs) {
+            batch.submit(song);
+        }
+        return reportResult(tagger.finishBatch(batch));
+    }
+
+    private int downloadAndTag(String url) throws InterruptedException {
+        try {
+            ResourceManager.getTaggingDirectory();
+        } catch (IOException | TaggingFolderException e) {
+            logger.printError("Could not find folder to download songs to, set it with --folder");
+            return EXIT_ERROR;
+        }
+        prepareSearch();
+        SongDownloader songDownloader = new SongDownloader();
+        tagger.addRewriteListener(file -> songDownloader.fileRewritten(file.toFile()));
+        if (logger.isJson()) {
+            songDownloader.getProgress().addListener(progressListener());
+        }
+        // The number of songs is not known while they are still being downloaded
+        TaggingPipeline.Batch batch = tagger.startBatch(arguments.vId(), songListener(-1));
+        boolean downloadFailed = false;
+        try {
+            songDownloader.downloadSongs(url, song -> {
+                logger.emit(ConsoleLogger.event("downloaded").put("file", song.getAbsolutePath()));
+                batch.submit(song);
+                return song;
+            });
+            logger.println("Download complete.");
+        } catch (IOException e) {
+            // Songs that were downloaded before the failure are still tagged
+            ErrorLogger.runtimeExceptionOccurred(e);
+            downloadFailed = true;
+        }
+        TaggingPipeline.BatchResult result = tagger.finishBatch(batch);
+        if (batch.size() == 0) {
+            logger.printError("No songs were downloaded!");
+            return EXIT_ERROR;
+        }
+        int exitCode = reportResult(result);
+        return downloadFailed ? EXIT_INCOMPLETE : exitCode;
+    }
+
+    /**
+     * @return a listener writing <code>progress</code> events, throttled so a song does not flood the
+     * output with an event for every chunk yt-dlp downloads
+     */
+    private DownloadProgress.Listener progressListener() {
+        Map<String, DownloadProgress.Item> lastItems = new ConcurrentHashMap<>();
+        Map<String, Long> lastTimes = new ConcurrentHashMap<>();
+        return item -> {
+            long now = System.nanoTime();
+            DownloadProgress.Item last = lastItems.get(item.videoId());
+            Long lastTime = lastTimes.get(item.videoId());
+            boolean statusChanged = last == null || !last.status().equals(item.status());
+            if (!statusChanged && now - lastTime < PROGRESS_INTERVAL_NANOS) {
+                return;
+            }
+            lastItems.put(item.videoId(), item);
+            lastTimes.put(item.videoId(), now);
+            ObjectNode event = ConsoleLogger.event("progress")
+                    .put("vId", item.videoId())
+                    .put("status", item.status())
+                    .put("downloadedBytes", item.downloadedBytes());
+            if (item.totalBytes() != null) {
+                event.put("totalBytes", item.totalBytes());
+            }
+            if (item.bytesPerSecond() != null) {
+                event.put("bytesPerSecond", item.bytesPerSecond());
+            }
+            if (item.etaSeconds() != null) {
+                event.put("etaSeconds", item.etaSeconds());
+            }
+            logger.emit(event);
+        };
+    }
+
+    private int audit(@Nullable String folder) throws InterruptedException {
+        File[] songs = listSongs(folder);
+        if (songs == null) {
+            return EXIT_ERROR;
+        }
+        LibraryAuditor.AuditReport report = new LibraryAuditor(LibraryAuditor.DEFAULT_THREADS).audit(songs);
+        if (logger.isJson()) {
+            ObjectNode event = ConsoleLogger.event("result")
+                    .put("command", arguments.command())
+                    .put("audited", report.audited());
+            ArrayNode incomplete = event.putArray("incomplete");
+            for (LibraryAuditor.Finding finding : report.incomplete()) {
+                ArrayNode missing = incomplete.addObject()
+                        .put("file", finding.file().getAbsolutePath())
+                        .putArray("missing");
+                finding.missing().forEach(tag -> missing.add(tag.name()));
+            }
+            ArrayNode unreadable = event.putArray("unreadable");
+            report.unreadable().forEach(file -> unreadable.add(file.getAbsolutePath()));
+            logger.emit(event);
+        } else {
+            LibraryAuditor.printReport(report);
+        }
+        return report.isComplete() ? EXIT_OK : EXIT_INCOMPLETE;
+    }
+
+    private int watch(List<String> folders) throws InterruptedException {
+        List<Path> paths = new ArrayList<>();
+        folders.forEach(folder -> paths.add(Path.of(folder)));
+        if (paths.isEmpty()) {
+            try {
+                paths.add(ResourceManager.getTaggingDirectory().toPath());
+            } catch (IOException | TaggingFolderException e) {
+                logger.printError("Could not find folder to watch, give it as argument or with --folder");
+                return EXIT_ERROR;
+            }
+        }
+        prepareSearch();
+        FolderWatcher watcher = new FolderWatcher(paths, arguments.watchSettings(), tagger, songListener(-1),
+                ResourceManager.getAppDirectory().resolve("watched.json"));
+        try {
+            watcher.start();
+        } catch (IOException e) {
+            ErrorLogger.runtimeExceptionOccurred(e, "Could not watch folders");
+            return EXIT_ERROR;
+        }
+        // Runs until the process is stopped, the batch being tagged then finishes first
+        Runtime.getRuntime().addShutdownHook(new Thread(watcher::close, "noqturne-watch-shutdown"));
+        watcher.awaitClose();
+        return EXIT_OK;
+    }
+
+    /**
+     * @return the mp3 files in the given folder or else the tagging folder, or <code>null</code> if the
+     * folder does not exist
+     */
+    private @Nullable File[] listSongs(@Nullable String folder) {
+        File directory;
+        if (folder != null) {
+            directory = new File(folder);
+        } else {
+            try {
+                directory = ResourceManager.getTaggingDirectory();
+            } catch (IOException | TaggingFolderException e) {
+                logger.printError("Could not find folder to tag mp3 files in, give it as argument or with --folder");
+                return null;
+            }
+        }
+        File[] songs = directory.listFiles(file -> file.isFile() && file.getName().endsWith(".mp3"));
+        if (songs == null) {
+            logger.printError("Folder does not exist: " + directory);
+        }
+        return songs;
+    }
+
+    /**
+     * Makes sure the cover art of songs can be searched for, unless every song gets the cover art of
+     * the vId given on the command line.
+     */
+    private void prepareSearch() {
+        if (arguments.vId() == null) {
+            ResourceManager.ensureYtMusicApiInstallation();
+        }
+    }
+
+    /**
+     * @param total number of songs in the batch, or -1 if it is not known
+     */
+    private TaggingPipeline.SongListener songListener(int total) {
+        AtomicInteger done = new AtomicInteger();
+        return (song, tagged) -> {
+            ObjectNode event = ConsoleLogger.event("song")
+                    .put("file", song.getAbsolutePath())
+                    .put("status", tagged ? "tagged" : "failed")
+                    .put("done", done.incrementAndGet());
+            if (total >= 0) {
+                event.put("total", total);
+            }
+            logger.emit(event);
+        };
+    }
+
+    private int reportResult(TaggingPipeline.BatchResult result) {
+        if (logger.isJson()) {
+            ObjectNode event = ConsoleLogger.event("result")
+                    .put("command", arguments.command())
+                    .put("tagged", result.tagged());
+            ArrayNode failed = event.putArray("failed");
+            result.failed().forEach(file -> failed.add(file.getAbsolutePath()));
+            logger.emit(event);
+        } else {
+            logger.println("Tagged " + result.tagged() + " song(s), " + result.failed().size() + " could not be tagged.");
+            result.failed().forEach(file -> logger.printError("Could not tag " + file.getName()));
+        }
+        return result.isSuccessful() ? EXIT_OK : EXIT_INCOMPLETE;
+    }
+
+    /**
+     * The parsed command line.
+     *
+     * @param command the command to run
+     * @param operands the arguments of the command
+     * @param vId vId of the cover art to tag every song with, or <code>null</code> to search for it
+     * @param folder tagging folder for this run, or <code>null</code> to use the one in the settings
+     * @param concurrency maximum number of songs tagged at the same time, 0 for the default
+     * @param watchSettings how the watch command batches new files
+     * @param metricsPort port to serve metrics on, 0 to not serve them
+     * @param json whether to write progress as JSON
+     * @param offline whether to only use cached searches, see {@link SearchCache#setOfflineMode(boolean)}
+     * @param help whether to only show the usage
+     */
+    record Arguments(String command, List<String> operands, @Nullable String vId, @Nullable Path folder,
+                     int concurrency, FolderWatcher.Settings watchSettings, int metricsPort, boolean json,
+                     boolean offline, boolean help) {
+
+        /**
+         * @return the only argument of the command, or <code>null</code> if it has none
+         */
+        @Nullable String operand() {
+            return operands.isEmpty() ? null : operands.get(0);
+        }
+
+        /**
+         * @throws IllegalArgumentException if the command line is not valid, with a message telling why
+         */
+        static Arguments parse(String[] args) {
+            List<String> positional = new ArrayList<>();
+            String vId = null;
+            Path folder = null;
+            int concurrency = 0;
+            int metricsPort = 0;
+            FolderWatcher.Settings defaults = FolderWatcher.Settings.defaults();
+            Duration settleTime = defaults.settleTime();
+            int batchSize = defaults.batchSize();
+            Duration maxLatency = defaults.maxLatency();
+            boolean json = false;
+            boolean offline = false;
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--help", "-h" -> {
+                        return new Arguments("", List.of(), null, null, 0, defaults, 0, false, false, true);
+                    }
+                    case "--json" -> json = true;
+                    case "--offline" -> offline = true;
+                    case "--vid" -> {
+                        String value = value(args, ++i, "--vid");
+                        vId = Tagger.getVideoId(value);
+                        if (vId == null) {
+                            throw new IllegalArgumentException("Could not extract video id from " + value);
+                        }
+                    }
+                    case "--folder" -> folder = Path.of(value(args, ++i, "--folder"));
+                    case "--concurrency" -> concurrency = positiveNumber(args, ++i, "--concurrency");
+                    case "--metrics-port" -> metricsPort = positiveNumber(args, ++i, "--metrics-port");
+                    case "--settle" -> settleTime = Duration.ofSeconds(positiveNumber(args, ++i, "--settle"));
+                    case "--batch-size" -> batchSize = positiveNumber(args, ++i, "--batch-size");
+                    case "--max-latency" -> maxLatency = Duration.ofSeconds(positiveNumber(args, ++i, "--max-latency"));
+                    default -> {
+                        if (args[i].startsWith("--")) {
+                            throw new IllegalArgumentException("Unknown option " + args[i]);
+                        }
+                        positional.add(args[i]);
+                    }
+                }
+            }
+            if (positional.isEmpty()) {
+                throw new IllegalArgumentException("No command given");
+            }
+            String command = positional.get(0);
+            List<String> operands = positional.subList(1, positional.size());
+            boolean valid = switch (command) {
+                case "tag-file", "download-and-tag" -> operands.size() == 1;
+                case "tag-folder", "audit" -> operands.size() <= 1;
+                case "watch" -> true;
+                default -> throw new IllegalArgumentException("Unknown command " + command);
+            };
+            if (!valid) {
+                throw new IllegalArgumentException("Wrong number of arguments for " + command);
+            }
+            FolderWatcher.Settings watchSettings = new FolderWatcher.Settings(settleTime, batchSize, maxLatency);
+            return new Arguments(command, List.copyOf(operands), vId, folder, concurrency, watchSettings, metricsPort,
+                    json, offline, false);
+        }
+
+        private static int positiveNumber(String[] args, int index, String option) {
+            String value = value(args, index, option);
+            try {
+                int number = Integer.parseInt(value);
+                if (number > 0) {
+                    return number;
+                }
+            } catch (NumberFormatException e) {
+                // Reported below
+            }
+            throw new IllegalArgumentException(option + " must be a positive number, not " + value);
+        }
+
+        private static String value(String[] args, int index, String option) {
+            if (index >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            return args[index];
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package org.noqturne;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+/**
+ * The settings of Noqturne, stored in <code>config.txt</code> in this app's folder as one
+ * <code>KEY=value</code> line per setting.
+ * <p>
+ * The file is read once. Settings are read from memory after that, without locking, so they can be
+ * read on hot paths. Changing a setting rewrites the file atomically and then tells the listeners of
+ * that setting, which is how running pipelines pick up new concurrency settings. Lines this version of
+ * Noqturne does not know are kept as they are.
+ */
+public class Config {
+
+    /**
+     * A setting, with the type of its value.
+     *
+     * @param name the key of the setting in the file
+     * @param defaultValue value of the setting if the file does not have it or has an invalid value
+     * @param parser turns the text in the file into a value, throwing an IllegalArgumentException if
+     *               the text is not a valid value
+     * @param <T> the type of the value
+     */
+    public record Key<T>(String name, T defaultValue, Function<String, T> parser) {
+
+        static Key<Boolean> bool(String name, boolean defaultValue) {
+            return new Key<>(name, defaultValue, text -> switch (text.trim().toLowerCase(Locale.ROOT)) {
+                case "true" -> true;
+                case "false" -> false;
+                default -> throw new IllegalArgumentException(name + " must be true or false");
+            });
+        }
+
+        static Key<Integer> positiveInt(String name, int defaultValue) {
+            return intBetween(name, defaultValue, 1, Integer.MAX_VALUE);
+        }
+
+        static Key<Integer> intBetween(String name, int defaultValue, int min, int max) {
+            return new Key<>(name, defaultValue, text -> {
+                int value = Integer.parseInt(text.trim());
+                if (value < min || value > max) {
+                    throw new IllegalArgumentException(name + " must be between " + min + " and " + max);
+                }
+                return value;
+            });
+        }
+
+        static Key<Float> floatBetween(String name, float defaultValue, float min, float max) {
+            return new Key<>(name, defaultValue, text -> {
+                float value = Float.parseFloat(text.trim());
+                // Also rejects NaN
+                if (!(value >= min && value <= max)) {
+                    throw new IllegalArgumentException(name + " must be between " + min + " and " + max);
+                }
+                return value;
+            });
+        }
+    }
+
+    public static final Key<Path> TAGGING_FOLDER = new Key<>("TAGGING_FOLDER",
+            Paths.get(System.getProperty("user.home"), "Downloads"), Paths::get);
+    public static final Key<Integer> DOWNLOAD_WORKERS =
+            Key.positiveInt("DOWNLOAD_WORKERS", SongDownloader.Settings.defaults().workers());
+    public static final Key<Integer> CONCURRENT_FRAGMENTS =
+            Key.positiveInt("CONCURRENT_FRAGMENTS", SongDownloader.Settings.defaults().concurrentFragments());
+    public static final Key<Integer> SEARCH_THREADS =
+            Key.positiveInt("SEARCH_THREADS", TaggingPipeline.Settings.defaults().searchThreads());
+    public static final Key<Integer> FETCH_THREADS =
+            Key.positiveInt("FETCH_THREADS", TaggingPipeline.Settings.defaults().fetchThreads());
+    public static final Key<Integer> CROP_THREADS =
+            Key.positiveInt("CROP_THREADS", TaggingPipeline.Settings.defaults().cropThreads());
+    public static final Key<Integer> SAVE_THREADS =
+            Key.positiveInt("SAVE_THREADS", TaggingPipeline.Settings.defaults().saveThreads());
+    public static final Key<Integer> MAX_SONGS_IN_FLIGHT =
+            Key.positiveInt("MAX_SONGS_IN_FLIGHT", TaggingPipeline.Settings.defaults().maxInFlight());
+    public static final Key<Integer> COVER_ART_CACHE_MB = Key.intBetween("COVER_ART_CACHE_MB", 256, 1,
+            (int) (CoverArtCache.MAX_BYTES / (1024 * 1024)));
+    public static final Key<Integer> SEARCH_CACHE_ENTRIES = Key.positiveInt("SEARCH_CACHE_ENTRIES", 20_000);
+    public static final Key<Integer> SEARCH_CACHE_TTL_DAYS = Key.positiveInt("SEARCH_CACHE_TTL_DAYS", 30);
+    public static final Key<Float> JPEG_QUALITY =
+            Key.floatBetween("JPEG_QUALITY", CoverArtProcessor.DEFAULT_JPEG_QUALITY, 0, 1);
+    public static final Key<Integer> TAG_PADDING_KB =
+            Key.intBetween("TAG_PADDING_KB", Id3TagWriter.DEFAULT_PADDING / 1024, 0, 1024);
+    public static final Key<Integer> THUMBNAIL_CONNECT_TIMEOUT_SECONDS =
+            Key.positiveInt("THUMBNAIL_CONNECT_TIMEOUT_SECONDS", 10);
+    public static final Key<Integer> THUMBNAIL_READ_TIMEOUT_SECONDS =
+            Key.positiveInt("THUMBNAIL_READ_TIMEOUT_SECONDS", 20);
+    public static final Key<Boolean> OFFLINE_MODE = Key.bool("OFFLINE_MODE", false);
+    public static final Key<Integer> SEARCH_TIMEOUT_SECONDS = Key.positiveInt("SEARCH_TIMEOUT_SECONDS", 60);
+    public static final Key<CoverArtSearch.Provider> SEARCH_PROVIDER = new Key<>("SEARCH_PROVIDER",
+            CoverArtSearch.Provider.YTMUSICAPI, text -> CoverArtSearch.Provider.valueOf(text.trim().toUpperCase(Locale.ROOT)));
+
+    /**
+     * Receives the new value of a setting, on the thread that changed it.
+     *
+     * @param <T> the type of the value
+     */
+    @FunctionalInterface
+    public interface Listener<T> {
+        void changed(T value);
+    }
+
+    /**
+     * The settings as in the file, and the values parsed from them so far.
+     */
+    private record State(Map<String, String> texts, Map<String, Object> parsed) {
+        State(Map<String, String> texts) {
+            this(Collections.unmodifiableMap(texts), new ConcurrentHashMap<>());
+        }
+    }
+
+    private final Path file;
+    // Replaced as a whole on every change, so readers never see a half updated state
+    private volatile State state;
+    private final Map<String, List<Listener<?>>> listeners = new HashMap<>();
+
+    private Config(Path file, Map<String, String> texts) {
+        this.file = file;
+        this.state = new State(texts);
+    }
+
+    /**
+     * Reads the settings from a file.
+     *
+     * @param file the file, which does not have to exist yet
+     * @return the settings
+     * @throws IOException if the file exists but could not be read
+     */
+    public static Config load(Path file) throws IOException {
+        Map<String, String> values = new LinkedHashMap<>();
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                int separator = line.indexOf('=');
+                if (separator > 0) {
+                    values.put(line.substring(0, separator), line.substring(separator + 1));
+                }
+            }
+        }
+        return new Config(file, values);
+    }
+
+    /**
+     * @param file the file the settings are saved to once they are changed
+     * @return settings that all have their default values
+     */
+    static Config empty(Path file) {
+        return new Config(file, new LinkedHashMap<>());
+    }
+
+    /**
+     * @param key the setting
+     * @param <T> the type of the value
+     * @return the value of the setting, or its default value if it is not set or not valid
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Key<T> key) {
+        State current = state;
+        return (T) current.parsed().computeIfAbsent(key.name(), name -> {
+            String text = current.texts().get(name);
+            if (text == null) {
+                return key.defaultValue();
+            }
+            try {
+                return key.parser().apply(text);
+            } catch (IllegalArgumentException e) {
+                return key.defaultValue();
+            }
+        });
+    }
+
+    /**
+     * @param key the setting
+     * @return whether the file has a value for the setting
+     */
+    public boolean contains(Key<?> key) {
+        return state.texts().containsKey(key.name());
+    }
+
+    /**
+     * Changes a setting, saves the file and tells the listeners of the setting.
+     *
+     * @param key the setting
+     * @param value the new value
+     * @param <T> the type of the value
+     * @return whether the value changed, if not the file is not saved and the listeners are not told
+     * @throws IOException if the file could not be saved, in which case the setting is not changed
+     */
+    public <T> boolean set(Key<T> key, T value) throws IOException {
+        String text = value.toString();
+        List<Listener<?>> toTell;
+        synchronized (this) {
+            if (text.equals(state.texts().get(key.name()))) {
+                return false;
+            }
+            Map<String, String> changed = new LinkedHashMap<>(state.texts());
+            changed.put(key.name(), text);
+            save(changed);
+            state = new State(changed);
+            toTell = List.copyOf(listeners.getOrDefault(key.name(), List.of()));
+        }
+        for (Listener<?> listener : toTell) {
+            @SuppressWarnings("unchecked")
+            Listener<T> typed = (Listener<T>) listener;
+            typed.changed(value);
+        }
+        return true;
+    }
+
+    /**
+     * @param key the setting to listen to
+     * @param listener receives every following change of the setting
+     * @param <T> the type of the value
+     */
+    public synchronized <T> void addListener(Key<T> key, Listener<T> listener) {
+        listeners.computeIfAbsent(key.name(), name -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    /**
+     * @param key the setting that was listened to
+     * @param listener no longer receives changes of the setting
+     * @param <T> the type of the value
+     */
+    public synchronized <T> void removeListener(Key<T> key, Listener<T> listener) {
+        List<Listener<?>> keyListeners = listeners.get(key.name());
+        if (keyListeners != null) {
+            keyListeners.remove(listener);
+        }
+    }
+
+    /**
+     * The file is replaced atomically, so a crash while writing never leaves a corrupt config behind.
+     */
+    private void save(Map<String, String> toSave) throws IOException {
+        List<String> lines = new ArrayList<>();
+        toSave.forEach((name, text) -> lines.add(name + "=" + text));
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,108 @@
+package org.noqturne;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded queue of text waiting to be shown in the console of the GUI. Any number of threads can add
+ * text without locking or blocking, while a single thread, the event dispatch thread, takes it out in
+ * chunks, see {@link Gui#displayText(String, boolean)}. When text arrives faster than it is shown and
+ * the buffer is full, new text is dropped and counted instead of making the worker threads wait.
+ * <p>
+ * Every slot has a sequence number telling whether it is free to be written for a given position or
+ * holds the text for it, so producers only contend on claiming a position.
+ */
+class ConsoleBuffer {
+
+    /**
+     * Text to show in the console.
+     *
+     * @param text the text, including its line break
+     * @param error whether the text is an error, which is shown in red
+     */
+    record Entry(String text, boolean error) {}
+
+    private final int mask;
+    private final Entry[] entries;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // Only touched by the consumer
+    private long head;
+
+    /**
+     * @param capacity maximum number of entries waiting to be shown, rounded up to a power of two
+     */
+    ConsoleBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.entries = new Entry[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds text to the buffer. Never blocks.
+     *
+     * @param text the text, including its line break
+     * @param error whether the text is an error
+     * @return whether the text was added, <code>false</code> if the buffer was full and it was dropped
+     */
+    boolean offer(String text, boolean error) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    entries[index] = new Entry(text, error);
+                    // Publishes the entry to the consumer
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // The consumer has not taken the entry a full lap ago yet
+                dropped.incrementAndGet();
+                return false;
+            } else {
+                // Another producer claimed this position first
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Takes out all entries that were added so far, oldest first. Must only be called by a single thread.
+     *
+     * @param consumer receives the entries
+     * @return number of entries taken out
+     */
+    int drain(Consumer<Entry> consumer) {
+        int drained = 0;
+        while (true) {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                // Empty, or a producer claimed the position but has not written it yet
+                return drained;
+            }
+            Entry entry = entries[index];
+            entries[index] = null;
+            // Frees the slot for the producer that comes by a lap later
+            sequences.set(index, head + mask + 1);
+            head++;
+            drained++;
+            consumer.accept(entry);
+        }
+    }
+
+    /**
+     * @return number of entries dropped since the last call, because the buffer was full
+     */
+    long takeDropped() {
+        return dropped.getAndSet(0);
+    }
+}
@@ -0,0 +1,98 @@
+package org.noqturne;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.PrintStream;
+
+/**
+ * Logger used when Noqturne runs without a GUI, see {@link Cli}. Status updates are written to the
+ * console, either as plain lines or as JSON objects, one per line, so other programs can follow the
+ * progress of a batch. In JSON mode, every line has an <code>event</code> field telling what kind
+ * of line it is, status updates being <code>log</code> events.
+ */
+public class ConsoleLogger extends Logger {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final PrintStream out;
+    private final PrintStream err;
+    private final boolean json;
+
+    /**
+     * @param out stream status updates and events are written to
+     * @param err stream errors are written to, unless they are written to <code>out</code> as JSON
+     * @param json whether to write JSON objects instead of plain lines
+     */
+    public ConsoleLogger(PrintStream out, PrintStream err, boolean json) {
+        super(null);
+        this.out = out;
+        this.err = err;
+        this.json = json;
+    }
+
+    @Override
+    public void println(String string) {
+        if (json) {
+            emit(event("log").put("level", "info").put("message", string));
+        } else {
+            synchronized (this) {
+                out.println(string);
+            }
+        }
+    }
+
+    @Override
+    public void printError(String string) {
+        if (json) {
+            emit(event("log").put("level", "error").put("message", string));
+        } else {
+            synchronized (this) {
+                err.println(string);
+            }
+        }
+    }
+
+    /**
+     * @return whether events are written, which is only done in JSON mode
+     */
+    public boolean isJson() {
+        return json;
+    }
+
+    /**
+     * Creates an event to be filled in and written with {@link #emit(ObjectNode)}.
+     *
+     * @param type the kind of event, written to its <code>event</code> field
+     * @return the event, which also has the current time in epoch milliseconds in its <code>time</code> field
+     */
+    public static ObjectNode event(String type) {
+        return mapper.createObjectNode()
+                .put("event", type)
+                .put("time", System.currentTimeMillis());
+    }
+
+    /**
+     * Writes an event as a single line. Events are only written in JSON mode, in plain mode they are
+     * dropped. Lines of events written from different threads never interleave.
+     *
+     * @param event the event
+     */
+    public void emit(ObjectNode event) {
+        if (!json) {
+            return;
+        }
+        String line;
+        try {
+            line = mapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            // Cannot happen for a tree of plain values
+            throw new IllegalStateException(e);
+        }
+        synchronized (this) {
+            out.println(line);
+            out.flush();
+        }
+    }
+}
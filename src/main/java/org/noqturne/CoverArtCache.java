@@ -0,0 +1,378 @@
+package org.noqturne;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent cache of cropped cover art, keyed by the vId the cover art was made from.
+ * <p>
+ * The cover art itself is appended to a packfile, which is read through a memory mapping. A small
+ * index file records, also append-only, at which offset of the packfile the cover art of each vId
+ * is stored, which entries were used and which entries were evicted. When the packfile holds more bytes
+ * than the configured maximum, the least recently used entries are evicted, and once most of the
+ * packfile consists of evicted entries, it is compacted into a new packfile. Since uses are recorded
+ * too, the least recently used entries are still known after the cache is opened again. Once the
+ * index holds many more records than entries, it is rewritten with one record per entry.
+ */
+public class CoverArtCache implements Closeable {
+
+    private static final int INDEX_MAGIC = 0x4E514349; // "NQCI"
+    private static final int INDEX_VERSION = 1;
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_REMOVE = 2;
+    private static final byte RECORD_TOUCH = 3;
+    private static final long MIN_COMPACTION_BYTES = 8L * 1024 * 1024;
+    private static final int MIN_INDEX_REWRITE_RECORDS = 4096;
+    /**
+     * The largest maximum size of a cache. The packfile can grow to twice the maximum size before it
+     * is compacted, and all of it is mapped into memory, which is only possible below 2 GB.
+     */
+    public static final long MAX_BYTES = 512L * 1024 * 1024;
+    private static final String INDEX_FILE = "covers.idx";
+
+    /**
+     * Statistics of a cache.
+     *
+     * @param hits number of lookups that found cover art
+     * @param misses number of lookups that found nothing
+     * @param evictions number of entries evicted to stay under the maximum size
+     * @param entries number of entries in the cache
+     * @param liveBytes bytes of cover art in the cache
+     * @param packBytes size of the packfile, including evicted entries not compacted yet
+     */
+    public record Stats(long hits, long misses, long evictions, int entries, long liveBytes, long packBytes) {}
+
+    private record Entry(long offset, int length) {}
+
+    private final Path directory;
+    private final long maxBytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    // Iterates from least to most recently used
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long generation;
+    private Path packPath;
+    private FileChannel pack;
+    private MappedByteBuffer mapped;
+    private DataOutputStream index;
+    private long liveBytes;
+    private long packBytes;
+    private int indexRecords;
+
+    /**
+     * Opens the cache in the given directory, creating it if it does not exist yet.
+     *
+     * @param directory directory the cache files are stored in
+     * @param maxBytes maximum number of bytes of cover art kept in the cache, at most {@link #MAX_BYTES}
+     * @throws IOException if an I/O error occurs
+     */
+    public CoverArtCache(Path directory, long maxBytes) throws IOException {
+        if (maxBytes > MAX_BYTES) {
+            throw new IllegalArgumentException("A cover art cache can hold at most " + MAX_BYTES + " bytes");
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        load();
+    }
+
+    /**
+     * Gets cached cover art.
+     *
+     * @param vId the vId the cover art was made from
+     * @return byte[] with the cropped cover art (mimeType jpeg), or <code>null</code> if it is not cached
+     */
+    public synchronized @Nullable byte[] get(String vId) {
+        Entry entry = entries.get(vId);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        byte[] coverArt = new byte[entry.length()];
+        try {
+            mapping(entry).get((int) entry.offset(), coverArt);
+        } catch (IOException e) {
+            ErrorLogger.runtimeExceptionOccurred(e);
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        try {
+            // Not flushed, losing the last uses in a crash only makes eviction slightly less accurate
+            writeRecord(RECORD_TOUCH, vId, entry);
+            rewriteIndexIfBloated();
+        } catch (IOException e) {
+            ErrorLogger.runtimeExceptionOccurred(e, "Could not record the use of cached cover art");
+        }
+        return coverArt;
+    }
+
+    /**
+     * Adds cover art to the cache, evicting the least recently used entries if the cache grows too big.
+     *
+     * @param vId the vId the cover art was made from
+     * @param coverArt byte[] with the cropped cover art (mimeType jpeg)
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized void put(String vId, byte[] coverArt) throws IOException {
+        if (coverArt.length > maxBytes || entries.containsKey(vId)) {
+            return;
+        }
+        long offset = packBytes;
+        writeFully(pack, ByteBuffer.wrap(coverArt), offset);
+        packBytes += coverArt.length;
+        Entry entry = new Entry(offset, coverArt.length);
+        entries.put(vId, entry);
+        liveBytes += entry.length();
+        writeRecord(RECORD_PUT, vId, entry);
+
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (liveBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Entry> evicted = eldest.next();
+            eldest.remove();
+            liveBytes -= evicted.getValue().length();
+            evictions.incrementAndGet();
+            writeRecord(RECORD_REMOVE, evicted.getKey(), evicted.getValue());
+        }
+        index.flush();
+
+        long deadBytes = packBytes - liveBytes;
+        if (deadBytes > MIN_COMPACTION_BYTES && deadBytes > liveBytes) {
+            compact();
+        } else {
+            rewriteIndexIfBloated();
+        }
+    }
+
+    /**
+     * Rewrites the packfile so that it only contains the entries that have not been evicted.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized void compact() throws IOException {
+        long newGeneration = generation + 1;
+        Path newPackPath = directory.resolve(packFileName(newGeneration));
+        // Keeps the order of the entries, and with it which were used least recently
+        LinkedHashMap<String, Entry> compacted = new LinkedHashMap<>(256, 0.75f, true);
+        long offset = 0;
+        try (FileChannel newPack = FileChannel.open(newPackPath,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry old = e.getValue();
+                ByteBuffer data = mapping(old).slice((int) old.offset(), old.length());
+                writeFully(newPack, data, offset);
+                compacted.put(e.getKey(), new Entry(offset, old.length()));
+                offset += old.length();
+            }
+            newPack.force(true);
+        }
+        index.close();
+        pack.close();
+        mapped = null;
+        replaceIndex(compacted, newGeneration);
+
+        deleteStalePack(packPath);
+        generation = newGeneration;
+        packPath = newPackPath;
+        entries.clear();
+        entries.putAll(compacted);
+        liveBytes = offset;
+        packBytes = offset;
+        openForAppending();
+    }
+
+    /**
+     * Rewrites the index with one record per entry once uses and evictions make up most of it, so it
+     * does not keep growing while the packfile does not need compacting.
+     */
+    private void rewriteIndexIfBloated() throws IOException {
+        if (indexRecords <= MIN_INDEX_REWRITE_RECORDS || indexRecords <= 2 * entries.size()) {
+            return;
+        }
+        index.close();
+        replaceIndex(entries, generation);
+        index = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(directory.resolve(INDEX_FILE),
+                StandardOpenOption.APPEND)));
+    }
+
+    /**
+     * Atomically replaces the index with one listing the given entries, least recently used first.
+     */
+    private void replaceIndex(Map<String, Entry> toWrite, long indexGeneration) throws IOException {
+        Path newIndexPath = directory.resolve(INDEX_FILE + ".tmp");
+        try (DataOutputStream newIndex = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(newIndexPath)))) {
+            writeIndexHeader(newIndex, indexGeneration);
+            for (Map.Entry<String, Entry> e : toWrite.entrySet()) {
+                writeRecordTo(newIndex, RECORD_PUT, e.getKey(), e.getValue());
+            }
+        }
+        Files.move(newIndexPath, directory.resolve(INDEX_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        indexRecords = toWrite.size();
+    }
+
+    /**
+     * @return {@link Stats} of this cache
+     */
+    public synchronized Stats stats() {
+        return new Stats(hits.get(), misses.get(), evictions.get(), entries.size(), liveBytes, packBytes);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        index.close();
+        pack.close();
+        mapped = null;
+    }
+
+    private void load() throws IOException {
+        Path indexPath = directory.resolve(INDEX_FILE);
+        if (Files.exists(indexPath)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+                if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+                    throw new IOException("Unknown cover art cache index format");
+                }
+                generation = in.readLong();
+                packPath = directory.resolve(packFileName(generation));
+                long packSize = Files.exists(packPath) ? Files.size(packPath) : 0;
+                readRecords(in, packSize);
+            } catch (IOException e) {
+                // A corrupt index only costs the cached cover art, so start over
+                ErrorLogger.runtimeExceptionOccurred(e, "Cover art cache was corrupt and has been cleared");
+                entries.clear();
+                liveBytes = 0;
+                indexRecords = 0;
+                generation++;
+                Files.deleteIfExists(indexPath);
+            }
+        }
+        if (!Files.exists(indexPath)) {
+            packPath = directory.resolve(packFileName(generation));
+            Files.deleteIfExists(packPath);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexPath)))) {
+                writeIndexHeader(out, generation);
+            }
+        }
+        openForAppending();
+        packBytes = pack.size();
+        removeStalePacks();
+    }
+
+    private void readRecords(DataInputStream in, long packSize) throws IOException {
+        while (true) {
+            byte type;
+            try {
+                type = in.readByte();
+            } catch (EOFException e) {
+                return;
+            }
+            String vId;
+            Entry entry;
+            try {
+                byte[] key = new byte[in.readUnsignedShort()];
+                in.readFully(key);
+                vId = new String(key, StandardCharsets.UTF_8);
+                entry = new Entry(in.readLong(), in.readInt());
+            } catch (EOFException e) {
+                // The last record was only partially written, for example because the application was killed
+                return;
+            }
+            indexRecords++;
+            if (type == RECORD_TOUCH) {
+                // Looking the entry up makes it the most recently used one
+                entries.get(vId);
+            } else if (type == RECORD_PUT && entry.offset() + entry.length() <= packSize) {
+                Entry previous = entries.put(vId, entry);
+                if (previous != null) {
+                    liveBytes -= previous.length();
+                }
+                liveBytes += entry.length();
+            } else if (type == RECORD_REMOVE) {
+                Entry removed = entries.remove(vId);
+                if (removed != null) {
+                    liveBytes -= removed.length();
+                }
+            }
+        }
+    }
+
+    private void openForAppending() throws IOException {
+        pack = FileChannel.open(packPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(directory.resolve(INDEX_FILE),
+                StandardOpenOption.APPEND)));
+    }
+
+    /**
+     * Gets a mapping of the packfile that contains the given entry, mapping the packfile again if the
+     * entry was appended after the current mapping was made.
+     */
+    private MappedByteBuffer mapping(Entry entry) throws IOException {
+        if (mapped == null || entry.offset() + entry.length() > mapped.capacity()) {
+            mapped = pack.map(FileChannel.MapMode.READ_ONLY, 0, packBytes);
+        }
+        return mapped;
+    }
+
+    /**
+     * Deletes packfiles of earlier generations. On Windows a packfile cannot be deleted while it is
+     * still mapped, in which case it is deleted the next time the cache is opened.
+     */
+    private void removeStalePacks() throws IOException {
+        try (DirectoryStream<Path> packs = Files.newDirectoryStream(directory, "covers-*.pack")) {
+            for (Path stale : packs) {
+                if (!stale.equals(packPath)) {
+                    deleteStalePack(stale);
+                }
+            }
+        }
+    }
+
+    private static void deleteStalePack(Path stale) {
+        try {
+            Files.deleteIfExists(stale);
+        } catch (IOException e) {
+            stale.toFile().deleteOnExit();
+        }
+    }
+
+    private static String packFileName(long generation) {
+        return "covers-" + generation + ".pack";
+    }
+
+    private static void writeIndexHeader(DataOutputStream out, long generation) throws IOException {
+        out.writeInt(INDEX_MAGIC);
+        out.writeInt(INDEX_VERSION);
+        out.writeLong(generation);
+    }
+
+    private void writeRecord(byte type, String vId, Entry entry) throws IOException {
+        writeRecordTo(index, type, vId, entry);
+        indexRecords++;
+    }
+
+    private static void writeRecordTo(DataOutputStream out, byte type, String vId, Entry entry) throws IOException {
+        byte[] key = vId.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(type);
+        out.writeShort(key.length);
+        out.write(key);
+        out.writeLong(entry.offset());
+        out.writeInt(entry.length());
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.noqturne;
+
+import javax.imageio.*;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Turns thumbnails into cover art by cropping them to a centered square.
+ * <p>
+ * Only the square itself is decoded, instead of decoding the whole thumbnail and cropping afterwards.
+ * Every thread keeps its own JPEG reader, writer and output buffer, so cropping many thumbnails in
+ * parallel does not create a new set of them, and several megabytes of garbage, for every song.
+ */
+public class CoverArtProcessor {
+
+    /**
+     * JPEG quality ImageIO uses when no quality is specified.
+     */
+    public static final float DEFAULT_JPEG_QUALITY = 0.75f;
+    private static final int INITIAL_BUFFER_SIZE = 256 * 1024;
+
+    private final float jpegQuality;
+    private final ThreadLocal<ImageReader> readers = ThreadLocal.withInitial(
+            () -> ImageIO.getImageReadersByFormatName("jpeg").next());
+    private final ThreadLocal<ImageWriter> writers = ThreadLocal.withInitial(
+            () -> ImageIO.getImageWritersByFormatName("jpeg").next());
+    private final ThreadLocal<ByteArrayOutputStream> buffers = ThreadLocal.withInitial(
+            () -> new ByteArrayOutputStream(INITIAL_BUFFER_SIZE));
+
+    /**
+     * @param jpegQuality quality of the encoded cover art, between 0 and 1
+     */
+    public CoverArtProcessor(float jpegQuality) {
+        if (jpegQuality < 0 || jpegQuality > 1) {
+            throw new IllegalArgumentException("JPEG quality must be between 0 and 1: " + jpegQuality);
+        }
+        this.jpegQuality = jpegQuality;
+    }
+
+    /**
+     * Crops a thumbnail to a centered square, which is the shape cover art is expected to have.
+     *
+     * @param thumbnail byte[] with the encoded thumbnail
+     * @return byte[] with the cropped cover art (mimeType jpeg)
+     * @throws IOException if the thumbnail could not be decoded or the cover art could not be encoded
+     */
+    public byte[] cropToSquare(byte[] thumbnail) throws IOException {
+        BufferedImage square = decodeCenteredSquare(thumbnail);
+        ImageWriter writer = writers.get();
+        ByteArrayOutputStream buffer = buffers.get();
+        buffer.reset();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(jpegQuality);
+        // A memory cache, since ImageIO would otherwise cache the output in a temporary file
+        try (MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(buffer)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(square, null, null), param);
+        } finally {
+            writer.reset();
+        }
+        return buffer.toByteArray();
+    }
+
+    private BufferedImage decodeCenteredSquare(byte[] thumbnail) throws IOException {
+        ImageReader reader = readers.get();
+        try (ImageInputStream in = new MemoryCacheImageInputStream(new ByteArrayInputStream(thumbnail))) {
+            if (!reader.getOriginatingProvider().canDecodeInput(in)) {
+                return cropFullyDecoded(thumbnail);
+            }
+            reader.setInput(in, true, true);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            int side = Math.min(width, height);
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(new Rectangle(width / 2 - side / 2, height / 2 - side / 2, side, side));
+            return reader.read(0, param);
+        } finally {
+            reader.reset();
+        }
+    }
+
+    /**
+     * Fallback for thumbnails that are not JPEG images.
+     */
+    private static BufferedImage cropFullyDecoded(byte[] thumbnail) throws IOException {
+        BufferedImage img = ImageIO.read(new ByteArrayInputStream(thumbnail));
+        if (img == null) {
+            throw new IOException("Thumbnail is not in a readable image format");
+        }
+        int side = Math.min(img.getWidth(), img.getHeight());
+        return img.getSubimage(img.getWidth() / 2 - side / 2, img.getHeight() / 2 - side / 2, side, side);
+    }
+}
@@ -0,0 +1,34 @@
+package org.noqturne;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Searches YouTube Music for the vIds of a song, whose thumbnails are used as cover art.
+ */
+public interface CoverArtSearch {
+
+    /**
+     * The implementations to choose from with {@link Config#SEARCH_PROVIDER}.
+     */
+    enum Provider {
+        /**
+         * The ytmusicapi Python package, see {@link CoverArtSearchWorker}.
+         */
+        YTMUSICAPI,
+        /**
+         * The search backend of YouTube Music called from Java, see {@link YouTubeMusicSearch}.
+         */
+        NATIVE
+    }
+
+    /**
+     * Searches YouTube Music for a song.
+     *
+     * @param query the name of the song to search for
+     * @return the vIds of the results, best match first. Can be empty
+     * @throws IOException if the search failed or was not answered in time
+     * @throws InterruptedException if the current Thread is interrupted while waiting
+     */
+    List<String> search(String query) throws IOException, InterruptedException;
+}
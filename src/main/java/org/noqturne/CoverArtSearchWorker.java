@@ -0,0 +1,211 @@
+package org.noqturne;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-lived Python process running coverArt.py in worker mode. Instead of paying for interpreter
+ * start-up and the ytmusicapi import for every song, one process answers all searches.
+ * <p>
+ * Requests and responses are newline-delimited JSON objects on the stdin and stdout of the process,
+ * matched to each other by their <code>id</code>, so several searches can be in flight at once.
+ * The process is started on first use and restarted on the next search after it has crashed.
+ * Its lifecycle is owned by {@link ResourceManager}.
+ */
+public class CoverArtSearchWorker implements CoverArtSearch {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final int STDERR_LINES_KEPT = 20;
+
+    private final Path script;
+    private final long timeoutSeconds;
+    private final AtomicLong requestIds = new AtomicLong();
+    private final Map<Long, CompletableFuture<JsonNode>> pending = new ConcurrentHashMap<>();
+    private final Deque<String> recentStderr = new ArrayDeque<>();
+    private Process process;
+    private BufferedWriter stdin;
+    private CompletableFuture<Void> ready;
+
+    /**
+     * Creates a worker for the given script. The Python process is not started until it is needed.
+     *
+     * @param script Path to coverArt.py
+     * @param timeoutSeconds how long to wait for the process to start or for a search to be answered
+     */
+    public CoverArtSearchWorker(Path script, long timeoutSeconds) {
+        this.script = script;
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    /**
+     * Searches YouTube Music for a song.
+     *
+     * @param query the name of the song to search for
+     * @return the vIds of the results, best match first. Can be empty
+     * @throws IOException if the worker could not be started, crashed, or did not answer in time
+     * @throws InterruptedException if the current Thread is interrupted while waiting
+     */
+    @Override
+    public List<String> search(String query) throws IOException, InterruptedException {
+        ObjectNode request = mapper.createObjectNode().put("query", query);
+        JsonNode response = send(request);
+        if (response.has("error")) {
+            throw new IOException("Cover art search failed: " + response.get("error").asText());
+        }
+        List<String> vIds = new ArrayList<>();
+        for (JsonNode vId : response.path("vIds")) {
+            vIds.add(vId.asText());
+        }
+        return vIds;
+    }
+
+    /**
+     * Checks whether the worker process is running and answering requests.
+     *
+     * @return true if the process answered a ping, false otherwise
+     */
+    public boolean isHealthy() {
+        synchronized (this) {
+            if (process == null || !process.isAlive()) {
+                return false;
+            }
+        }
+        try {
+            return send(mapper.createObjectNode().put("op", "ping")).path("pong").asBoolean();
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Stops the worker process. It will be started again on the next search.
+     */
+    public synchronized void shutdown() {
+        if (process == null) {
+            return;
+        }
+        Process stopping = process;
+        process = null;
+        try {
+            // Closing stdin makes the worker finish its current searches and exit
+            stdin.close();
+            if (!stopping.waitFor(2, TimeUnit.SECONDS)) {
+                stopping.destroyForcibly();
+            }
+        } catch (IOException e) {
+            stopping.destroyForcibly();
+        } catch (InterruptedException e) {
+            stopping.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+        failPending(new IOException("Cover art search worker was shut down"));
+    }
+
+    private JsonNode send(ObjectNode request) throws IOException, InterruptedException {
+        long id = requestIds.incrementAndGet();
+        request.put("id", id);
+        CompletableFuture<JsonNode> response = new CompletableFuture<>();
+        pending.put(id, response);
+        try {
+            CompletableFuture<Void> started = ensureStarted();
+            started.get(timeoutSeconds, TimeUnit.SECONDS);
+            synchronized (this) {
+                stdin.write(mapper.writeValueAsString(request));
+                stdin.newLine();
+                stdin.flush();
+            }
+            return response.get(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IOException("Cover art search worker did not respond within " + timeoutSeconds + " seconds");
+        } finally {
+            pending.remove(id);
+        }
+    }
+
+    private synchronized CompletableFuture<Void> ensureStarted() throws IOException {
+        if (process != null && process.isAlive()) {
+            return ready;
+        }
+        ProcessBuilder pb = new ProcessBuilder(Platform.pythonCommand(), "-u", script.toString(), "--worker");
+        pb.environment().put("PYTHONIOENCODING", "utf-8");
+        CompletableFuture<Void> startedReady = new CompletableFuture<>();
+        ProcessSupervisor.Supervised supervised;
+        // The process outlives the search starting it, so its output is not read in that song's context
+        try (ErrorLogger.Scope ignored = ErrorLogger.enterContext(ErrorLogger.Context.NONE)) {
+            supervised = ProcessSupervisor.start(pb, "noqturne-cover-art-worker",
+                    line -> handleResponse(line, startedReady), this::keepError);
+        }
+        Process started = supervised.process();
+        process = started;
+        stdin = new BufferedWriter(new OutputStreamWriter(started.getOutputStream(), StandardCharsets.UTF_8));
+        ready = startedReady;
+        // Both streams are read to the end, so the crash report includes the last lines of stderr
+        supervised.outputRead().thenRun(() -> workerExited(started, startedReady));
+        return startedReady;
+    }
+
+    private void handleResponse(String line, CompletableFuture<Void> workerReady) {
+        JsonNode response;
+        try {
+            response = mapper.readTree(line);
+        } catch (IOException e) {
+            // Not a response, for example a warning printed by a Python library
+            return;
+        }
+        if (response.path("ready").asBoolean()) {
+            workerReady.complete(null);
+            return;
+        }
+        CompletableFuture<JsonNode> future = pending.get(response.path("id").asLong());
+        if (future != null) {
+            future.complete(response);
+        }
+    }
+
+    private void workerExited(Process worker, CompletableFuture<Void> workerReady) {
+        IOException crashed = new IOException("Cover art search worker exited: " + lastErrors());
+        workerReady.completeExceptionally(crashed);
+        synchronized (this) {
+            if (process == worker) {
+                process = null;
+                failPending(crashed);
+            }
+        }
+    }
+
+    private void keepError(String line) {
+        synchronized (recentStderr) {
+            if (recentStderr.size() == STDERR_LINES_KEPT) {
+                recentStderr.removeFirst();
+            }
+            recentStderr.addLast(line);
+        }
+    }
+
+    private String lastErrors() {
+        synchronized (recentStderr) {
+            return String.join("\n", recentStderr);
+        }
+    }
+
+    private void failPending(IOException cause) {
+        pending.values().forEach(future -> future.completeExceptionally(cause));
+    }
+}
@@ -0,0 +1,267 @@
+package org.noqturne;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Checks whether the programs Noqturne runs are installed: yt-dlp, ffmpeg, Python and the ytmusicapi
+ * package of Python. The checks run in parallel on virtual threads, so checking does not hold up
+ * the thread asking for it.
+ * <p>
+ * Finding out the version of a program means starting it, which is what makes checking slow. The
+ * versions are therefore cached in a file, along with a stamp of each program: its location, size and
+ * last modified time. A program is only started again once its stamp changes, such as when it was
+ * updated. Programs that are missing are not cached, they are looked for again on every check.
+ */
+public class DependencyStatus {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final long PROBE_TIMEOUT_SECONDS = 30;
+    private static final ObjectMapper mapper = new ObjectMapper();
+    // Prints the version and folder of ytmusicapi without importing it, which would take much longer
+    private static final String YTMUSICAPI_PROBE = "import importlib.metadata, importlib.util; "
+            + "print(importlib.metadata.version('ytmusicapi')); "
+            + "print(importlib.util.find_spec('ytmusicapi').submodule_search_locations[0])";
+
+    public enum Dependency {
+        YT_DLP, FFMPEG, PYTHON, YTMUSICAPI
+    }
+
+    /**
+     * Outcome of checking a single dependency.
+     *
+     * @param dependency the dependency
+     * @param available whether the dependency is installed and runs
+     * @param version the version the dependency reported, or <code>null</code> if it is not available
+     * @param location where the dependency is installed, or <code>null</code> if it is not available
+     * @param cached whether the outcome was taken from the cache instead of starting the dependency
+     */
+    public record Probe(Dependency dependency, boolean available, @Nullable String version,
+                        @Nullable Path location, boolean cached) {
+
+        static Probe missing(Dependency dependency) {
+            return new Probe(dependency, false, null, null, false);
+        }
+    }
+
+    /**
+     * Outcome of checking all dependencies.
+     *
+     * @param probes the outcome of every dependency
+     */
+    public record Report(Map<Dependency, Probe> probes) {
+
+        /**
+         * @param dependency the dependency
+         * @return whether the dependency is installed and runs
+         */
+        public boolean isAvailable(Dependency dependency) {
+            Probe probe = probes.get(dependency);
+            return probe != null && probe.available();
+        }
+    }
+
+    /**
+     * A cached version, valid as long as the stamp of the dependency is the same.
+     */
+    private record CacheEntry(String stamp, String version, Path location) {}
+
+    private final Path cacheFile;
+    private final Path binDir;
+    private final Map<Dependency, CacheEntry> cache = new ConcurrentHashMap<>();
+
+    /**
+     * @param cacheFile file the versions of the dependencies are cached in
+     * @param binDir the folder yt-dlp, and on Windows ffmpeg, are downloaded to
+     */
+    public DependencyStatus(Path cacheFile, Path binDir) {
+        this.cacheFile = cacheFile;
+        this.binDir = binDir;
+        load();
+    }
+
+    /**
+     * Checks all dependencies in the background.
+     *
+     * @return completes with the outcome once every dependency has been checked
+     */
+    public CompletableFuture<Report> check() {
+        ExecutorService executor = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("noqturne-dependency-check-", 1).factory());
+        Map<Dependency, CompletableFuture<Probe>> probes = new EnumMap<>(Dependency.class);
+        for (Dependency dependency : Dependency.values()) {
+            probes.put(dependency, CompletableFuture.supplyAsync(() -> probe(dependency), executor));
+        }
+        return CompletableFuture.allOf(probes.values().toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> {
+                    executor.shutdown();
+                    Map<Dependency, Probe> report = new EnumMap<>(Dependency.class);
+                    probes.forEach((dependency, probe) -> report.put(dependency, probe.join()));
+                    save();
+                    return new Report(Collections.unmodifiableMap(report));
+                });
+    }
+
+    private Probe probe(Dependency dependency) {
+        try {
+            return switch (dependency) {
+                case YT_DLP -> probeBinary(dependency, binDir.resolve(Platform.executableName("yt-dlp")), "--version");
+                case FFMPEG -> probeBinary(dependency, Platform.isWindows()
+                        ? binDir.resolve(Platform.executableName("ffmpeg")) : Platform.findOnPath("ffmpeg"), "-version");
+                case PYTHON -> probeBinary(dependency, Platform.findOnPath(Platform.pythonCommand()), "--version");
+                case YTMUSICAPI -> probeYtMusicApi();
+            };
+        } catch (IOException e) {
+            // Missing or broken, which the user is told about when the dependency is needed
+            return Probe.missing(dependency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Probe.missing(dependency);
+        }
+    }
+
+    private Probe probeBinary(Dependency dependency, @Nullable Path binary, String versionArgument)
+            throws IOException, InterruptedException {
+        if (binary == null || !Files.exists(binary)) {
+            cache.remove(dependency);
+            return Probe.missing(dependency);
+        }
+        String stamp = stamp(binary);
+        CacheEntry cached = cache.get(dependency);
+        if (cached != null && cached.stamp().equals(stamp)) {
+            return new Probe(dependency, true, cached.version(), cached.location(), true);
+        }
+        List<String> output = run(binary.toString(), versionArgument);
+        if (output.isEmpty()) {
+            throw new IOException(binary + " did not print its version");
+        }
+        String version = parseVersion(dependency, output.get(0));
+        cache.put(dependency, new CacheEntry(stamp, version, binary));
+        return new Probe(dependency, true, version, binary, false);
+    }
+
+    private Probe probeYtMusicApi() throws IOException, InterruptedException {
+        Path python = Platform.findOnPath(Platform.pythonCommand());
+        if (python == null) {
+            cache.remove(Dependency.YTMUSICAPI);
+            return Probe.missing(Dependency.YTMUSICAPI);
+        }
+        // Installing or updating the package replaces files in its folder, which changes the folder
+        CacheEntry cached = cache.get(Dependency.YTMUSICAPI);
+        if (cached != null && Files.isDirectory(cached.location())
+                && cached.stamp().equals(stamp(python) + "|" + stamp(cached.location()))) {
+            return new Probe(Dependency.YTMUSICAPI, true, cached.version(), cached.location(), true);
+        }
+        List<String> output = run(python.toString(), "-c", Platform.quoteArgument(YTMUSICAPI_PROBE));
+        if (output.size() < 2) {
+            cache.remove(Dependency.YTMUSICAPI);
+            return Probe.missing(Dependency.YTMUSICAPI);
+        }
+        String version = output.get(0).trim();
+        Path location = Path.of(output.get(1).trim());
+        cache.put(Dependency.YTMUSICAPI, new CacheEntry(stamp(python) + "|" + stamp(location), version, location));
+        return new Probe(Dependency.YTMUSICAPI, true, version, location, false);
+    }
+
+    /**
+     * @return what identifies the current version of a file, which changes when it is replaced
+     */
+    private static String stamp(Path file) throws IOException {
+        Path real = file.toRealPath();
+        return real + "|" + Files.size(real) + "|" + Files.getLastModifiedTime(real).toMillis();
+    }
+
+    /**
+     * @return the version in the first line a dependency printed, such as <code>3.11.4</code> in
+     * <code>Python 3.11.4</code>
+     */
+    static String parseVersion(Dependency dependency, String firstLine) {
+        String[] words = firstLine.trim().split("\\s+");
+        return switch (dependency) {
+            // ffmpeg version 7.1-full_build-www.gyan.dev Copyright (c) ...
+            case FFMPEG -> words.length > 2 ? words[2] : firstLine.trim();
+            case PYTHON -> words[words.length - 1];
+            default -> firstLine.trim();
+        };
+    }
+
+    /**
+     * Runs a command until it exits.
+     *
+     * @return the lines the command printed to its standard output
+     * @throws IOException if the command could not be started, failed or did not exit in time
+     */
+    private static List<String> run(String... command) throws IOException, InterruptedException {
+        List<String> output = new CopyOnWriteArrayList<>();
+        ProcessSupervisor.Supervised supervised = ProcessSupervisor.start(new ProcessBuilder(command),
+                "noqturne-dependency-probe", output::add, line -> {});
+        try {
+            Process process = supervised.process().onExit().get(PROBE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            supervised.outputRead().get(PROBE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (process.exitValue() != 0) {
+                throw new IOException(command[0] + " exited with " + process.exitValue());
+            }
+            return output;
+        } catch (TimeoutException e) {
+            supervised.process().destroyForcibly();
+            throw new IOException(command[0] + " did not exit within " + PROBE_TIMEOUT_SECONDS + " seconds");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            supervised.process().destroyForcibly();
+            throw e;
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(cacheFile)) {
+            return;
+        }
+        try {
+            JsonNode root = mapper.readTree(cacheFile.toFile());
+            if (root.path("version").asInt() != FORMAT_VERSION) {
+                return;
+            }
+            for (Dependency dependency : Dependency.values()) {
+                JsonNode entry = root.path("dependencies").path(dependency.name());
+                if (entry.isObject()) {
+                    cache.put(dependency, new CacheEntry(entry.path("stamp").asText(),
+                            entry.path("version").asText(), Path.of(entry.path("location").asText())));
+                }
+            }
+        } catch (IOException e) {
+            // Every dependency is checked again
+            cache.clear();
+        }
+    }
+
+    /**
+     * The file is replaced atomically, so a crash while writing never leaves a corrupt cache behind.
+     */
+    private synchronized void save() {
+        ObjectNode root = mapper.createObjectNode().put("version", FORMAT_VERSION);
+        ObjectNode dependencies = root.putObject("dependencies");
+        cache.forEach((dependency, entry) -> dependencies.putObject(dependency.name())
+                .put("stamp", entry.stamp())
+                .put("version", entry.version())
+                .put("location", entry.location().toString()));
+        try {
+            Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+            Path temp = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+            mapper.writeValue(temp.toFile(), root);
+            Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The dependencies are simply checked again next time
+            ErrorLogger.runtimeExceptionOccurred(e, "Could not cache the versions of the dependencies");
+        }
+    }
+}
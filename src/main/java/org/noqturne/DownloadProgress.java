@@ -0,0 +1,114 @@
+package org.noqturne;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Progress of the songs a {@link SongDownloader} is downloading, as reported by yt-dlp through its
+ * progress template: the bytes downloaded so far, the size of the song, the speed and the time left.
+ * <p>
+ * Updated by the threads reading the output of yt-dlp, so listeners are called on those threads and
+ * must not block.
+ */
+public class DownloadProgress {
+
+    /**
+     * Progress of a single song.
+     *
+     * @param videoId vId of the video the song is downloaded from
+     * @param status status reported by yt-dlp, <code>downloading</code>, <code>finished</code> or
+     *               <code>error</code>
+     * @param downloadedBytes number of bytes downloaded so far
+     * @param totalBytes size of the song in bytes, estimated by yt-dlp if the exact size is not known,
+     *                   or <code>null</code> if not known at all
+     * @param bytesPerSecond current download speed, or <code>null</code> if not known
+     * @param etaSeconds expected number of seconds until the song is downloaded, or <code>null</code>
+     *                   if not known
+     */
+    public record Item(String videoId, String status, long downloadedBytes, @Nullable Long totalBytes,
+                       @Nullable Double bytesPerSecond, @Nullable Long etaSeconds) {
+
+        /**
+         * @return whether yt-dlp is done downloading the song, it may still be converting it
+         */
+        public boolean isFinished() {
+            return "finished".equals(status);
+        }
+
+        /**
+         * @return the downloaded part of the song between 0 and 1, or <code>null</code> if the size of
+         * the song is not known
+         */
+        public @Nullable Double fraction() {
+            if (totalBytes == null || totalBytes <= 0) {
+                return null;
+            }
+            return Math.min(1.0, (double) downloadedBytes / totalBytes);
+        }
+    }
+
+    /**
+     * Receives every update of the progress of a song.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void progressed(Item item);
+    }
+
+    private final Map<String, Item> items = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param listener receives every following update
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener no longer receives updates
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Records the latest progress of a song and passes it on to the listeners.
+     *
+     * @param item the progress of the song
+     */
+    void update(Item item) {
+        items.put(item.videoId(), item);
+        for (Listener listener : listeners) {
+            listener.progressed(item);
+        }
+    }
+
+    /**
+     * @return the latest progress of every song of the current download
+     */
+    public List<Item> items() {
+        return List.copyOf(items.values());
+    }
+
+    /**
+     * @return the combined speed in bytes per second of the songs that are being downloaded
+     */
+    public double totalBytesPerSecond() {
+        return items.values().stream()
+                .filter(item -> !item.isFinished() && item.bytesPerSecond() != null)
+                .mapToDouble(Item::bytesPerSecond)
+                .sum();
+    }
+
+    /**
+     * Forgets the songs of the previous download.
+     */
+    void clear() {
+        items.clear();
+    }
+}
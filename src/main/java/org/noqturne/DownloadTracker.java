@@ -0,0 +1,217 @@
+package org.noqturne;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Records which mp3 files appear in a folder while songs are being downloaded into it, using a
+ * {@link WatchService} so the folder does not have to be listed before and after every download.
+ * <p>
+ * Every download job opens its own {@link Session}. All sessions that are open when a file appears
+ * observe it. A job claims the files it knows to be its own, which keeps them out of all sessions
+ * until the last one closes, so concurrent jobs writing to the same folder do not pick up each other's
+ * songs. Files nobody claimed go to whichever job closes its session last, as only then no job can
+ * still claim them.
+ * If the operating system drops events, the sessions fall back to listing the folder and taking every
+ * mp3 file that was modified since they were opened.
+ * <p>
+ * Writing tags sometimes replaces a song with a rewritten copy of itself, which the operating system
+ * reports as a creation as well. Such songs are claimed with {@link #claim(File)} by whoever rewrote them.
+ */
+public class DownloadTracker {
+
+    private static final FileFilter MP3_FILTER = file -> file.getName().endsWith(".mp3");
+
+    private final Path directory;
+    private final Set<Session> sessions = new HashSet<>();
+    private final Set<File> claimed = new HashSet<>();
+    private WatchService watchService;
+
+    /**
+     * @param directory the folder songs are downloaded into
+     */
+    public DownloadTracker(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the folder this tracker watches
+     */
+    public Path getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Starts recording the mp3 files that appear in the folder. Only files that appear after this
+     * method returns are recorded.
+     *
+     * @return the new session, which must be closed once its download has finished
+     * @throws IOException if the folder cannot be watched
+     */
+    public synchronized Session open() throws IOException {
+        if (this.sessions.isEmpty()) {
+            startWatching();
+        }
+        Session session = new Session(System.currentTimeMillis());
+        this.sessions.add(session);
+        return session;
+    }
+
+    /**
+     * Keeps a file out of all open sessions until the last one closes, such as a song whose tags were
+     * rewritten, so it is not mistaken for a song that was downloaded. Does nothing when no session is open.
+     *
+     * @param file the mp3 file
+     */
+    public synchronized void claim(File file) {
+        // Nothing can observe the file, and the claim would only be forgotten once a session closes
+        if (this.sessions.isEmpty()) {
+            return;
+        }
+        this.claimed.add(file);
+        for (Session session : this.sessions) {
+            session.observed.remove(file);
+        }
+    }
+
+    private void startWatching() throws IOException {
+        WatchService service = this.directory.getFileSystem().newWatchService();
+        // Only creations, so tags written in place to songs in the folder are not mistaken for new songs.
+        // A song replacing an existing file of the same name is moved into place, which is a creation too
+        this.directory.register(service, StandardWatchEventKinds.ENTRY_CREATE);
+        this.watchService = service;
+        Thread watcher = new Thread(() -> watch(service), "noqturne-watch");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watch(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        overflowed();
+                    } else if (event.context() instanceof Path name && name.toString().endsWith(".mp3")) {
+                        appeared(this.directory.resolve(name).toFile());
+                    }
+                }
+                if (!key.reset()) {
+                    // The folder itself is gone, nothing more will appear in it
+                    overflowed();
+                    return;
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // The last session was closed
+        }
+    }
+
+    private synchronized void appeared(File file) {
+        if (this.claimed.contains(file)) {
+            return;
+        }
+        for (Session session : this.sessions) {
+            session.observed.add(file);
+        }
+    }
+
+    private synchronized void overflowed() {
+        for (Session session : this.sessions) {
+            session.overflowed = true;
+        }
+    }
+
+    /**
+     * The mp3 files that appeared in the folder during a single download job.
+     */
+    public class Session implements AutoCloseable {
+        private long openedAt;
+        private final Set<File> observed = new LinkedHashSet<>();
+        private boolean overflowed;
+        private boolean closed;
+
+        private Session(long openedAt) {
+            this.openedAt = openedAt;
+        }
+
+        /**
+         * Marks a file as belonging to this session's download, so no other session picks it up.
+         *
+         * @param file the mp3 file
+         */
+        public void claim(File file) {
+            DownloadTracker.this.claim(file);
+        }
+
+        /**
+         * Stops recording and collects the files that appeared during this session that were not
+         * claimed, such as songs whose download was not reported. If other sessions are still open,
+         * those files are left to them instead, as their jobs may still claim them.
+         *
+         * @return the unclaimed mp3 files that still exist, empty if other sessions are still open
+         */
+        public List<File> unclaimedFiles() {
+            Set<File> unclaimed = new LinkedHashSet<>();
+            synchronized (DownloadTracker.this) {
+                if (this.closed) {
+                    return List.of();
+                }
+                this.closed = true;
+                sessions.remove(this);
+                if (!sessions.isEmpty()) {
+                    for (Session session : sessions) {
+                        session.observed.addAll(this.observed);
+                        session.overflowed |= this.overflowed;
+                        session.openedAt = Math.min(session.openedAt, this.openedAt);
+                    }
+                    return List.of();
+                }
+                if (this.overflowed) {
+                    unclaimed.addAll(modifiedSinceOpened());
+                    unclaimed.removeAll(claimed);
+                } else {
+                    unclaimed.addAll(this.observed);
+                }
+                claimed.clear();
+                stopWatching();
+            }
+            unclaimed.removeIf(file -> !file.isFile());
+            return new ArrayList<>(unclaimed);
+        }
+
+        private List<File> modifiedSinceOpened() {
+            File[] files = directory.toFile().listFiles(MP3_FILTER);
+            if (files == null) {
+                return List.of();
+            }
+            List<File> modified = new ArrayList<>();
+            for (File file : files) {
+                if (file.lastModified() >= this.openedAt) {
+                    modified.add(file);
+                }
+            }
+            return modified;
+        }
+
+        /**
+         * Stops recording without collecting files.
+         */
+        @Override
+        public void close() {
+            unclaimedFiles();
+        }
+    }
+
+    private void stopWatching() {
+        try {
+            this.watchService.close();
+        } catch (IOException e) {
+            ErrorLogger.runtimeExceptionOccurred(e);
+        }
+        this.watchService = null;
+    }
+}
@@ -0,0 +1,181 @@
+package org.noqturne;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Appends entries to a log file on a background thread, so threads that run into errors only have to
+ * put the entry in a queue. The queue is unbounded, so no entry is ever dropped or overwritten, also
+ * not when many songs of a batch fail at the same time.
+ * <p>
+ * When the log file would grow beyond its maximum size, it is renamed to <code>&lt;name&gt;.1</code>,
+ * the previous <code>&lt;name&gt;.1</code> to <code>&lt;name&gt;.2</code> and so on, and the oldest
+ * one is deleted.
+ */
+class ErrorLogAppender implements Closeable {
+
+    // Compared by identity, tells the writer thread to stop
+    @SuppressWarnings("StringOperationCanBeSimplified")
+    private static final String STOP = new String("stop");
+
+    private final Path file;
+    private final long maxBytes;
+    private final int backups;
+    private final LinkedBlockingQueue<String> queue = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+    private volatile boolean closed;
+    private Writer writer;
+    private long size;
+    private boolean failureReported;
+
+    /**
+     * Starts the writer thread. The log file is opened once the first entry arrives.
+     *
+     * @param file the log file
+     * @param maxBytes size in bytes after which the log file is rotated
+     * @param backups number of rotated log files that are kept
+     */
+    ErrorLogAppender(Path file, long maxBytes, int backups) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.backups = backups;
+        this.writerThread = new Thread(this::writeEntries, "noqturne-error-log");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Queues an entry to be appended to the log file. Never blocks on the file.
+     *
+     * @param entry the entry, ending with a line break
+     */
+    void append(String entry) {
+        queue.add(entry);
+        if (closed) {
+            // The writer thread is gone, so the entry is written right away
+            drain();
+        }
+    }
+
+    private void writeEntries() {
+        try {
+            while (true) {
+                String entry = queue.take();
+                if (entry == STOP) {
+                    return;
+                }
+                synchronized (this) {
+                    write(entry);
+                    drain();
+                }
+                if (closed) {
+                    // The stop entry may have been taken by the drain
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Remaining entries are written by close
+        }
+    }
+
+    /**
+     * Writes every queued entry and flushes the log file.
+     */
+    private synchronized void drain() {
+        String entry;
+        while ((entry = queue.poll()) != null) {
+            if (entry != STOP) {
+                write(entry);
+            }
+        }
+        try {
+            if (writer != null) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            writeFailed();
+        }
+    }
+
+    private void write(String entry) {
+        byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+        try {
+            if (writer == null) {
+                Path parent = file.toAbsolutePath().getParent();
+                Files.createDirectories(parent);
+                size = Files.exists(file) ? Files.size(file) : 0;
+                writer = new OutputStreamWriter(new FileOutputStream(file.toFile(), true), StandardCharsets.UTF_8);
+            }
+            if (size > 0 && size + bytes.length > maxBytes) {
+                rotate();
+            }
+            writer.write(entry);
+            size += bytes.length;
+        } catch (IOException e) {
+            writeFailed();
+        }
+    }
+
+    private void rotate() throws IOException {
+        writer.close();
+        Files.deleteIfExists(backup(backups));
+        for (int i = backups - 1; i >= 1; i--) {
+            if (Files.exists(backup(i))) {
+                Files.move(backup(i), backup(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (backups > 0) {
+            Files.move(file, backup(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(file);
+        }
+        writer = new OutputStreamWriter(new FileOutputStream(file.toFile(), true), StandardCharsets.UTF_8);
+        size = 0;
+    }
+
+    private Path backup(int number) {
+        return file.resolveSibling(file.getFileName() + "." + number);
+    }
+
+    private void writeFailed() {
+        // Reported once, otherwise every following error would be reported twice
+        if (!failureReported) {
+            failureReported = true;
+            Logger logger = Logger.getLogger();
+            if (logger != null) {
+                logger.printError("A runtime error occurred, but could not be logged due to an IOException");
+            }
+        }
+    }
+
+    /**
+     * Writes the entries that are still queued, stops the writer thread and closes the log file.
+     * Entries appended after closing are written on the thread appending them.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        queue.add(STOP);
+        try {
+            writerThread.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drain();
+        synchronized (this) {
+            try {
+                if (writer != null) {
+                    writer.close();
+                }
+            } catch (IOException e) {
+                writeFailed();
+            }
+            // Reopened if an entry is appended after all
+            writer = null;
+        }
+    }
+}
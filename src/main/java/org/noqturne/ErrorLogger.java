@@ -1,14 +1,74 @@
 package org.noqturne;
 
+import org.jetbrains.annotations.Nullable;
+
 import java.io.*;
-import java.util.Date;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
 
 /**
  * Class that gets called whenever a critical error occurs and reviewing a stacktrace
  * is necessary
+ * <p>
+ * Errors are appended to <code>errorLog.log</code> by an {@link ErrorLogAppender}, so the thread
+ * running into the error never waits for the file. Every entry tells which song, stage and vId the
+ * thread was working on, see {@link #enterContext(Context)}.
  */
 public class ErrorLogger {
 
+    private static final Path LOG_FILE = Path.of("errorLog.log");
+    private static final long MAX_LOG_BYTES = 1024 * 1024;
+    private static final int LOG_BACKUPS = 3;
+    private static final ThreadLocal<Context> context = ThreadLocal.withInitial(() -> Context.NONE);
+    private static ErrorLogAppender appender;
+
+    /**
+     * What a thread is working on, which is written along with the errors it runs into.
+     *
+     * @param file the mp3 file, or <code>null</code> if not known
+     * @param stage the stage of downloading or tagging, see {@link Metrics.Stage#label()}, or
+     *              <code>null</code> if not known
+     * @param vId the vId of the video or cover art, or <code>null</code> if not known
+     */
+    public record Context(@Nullable String file, @Nullable String stage, @Nullable String vId) {
+        static final Context NONE = new Context(null, null, null);
+    }
+
+    /**
+     * Restores the context a thread had before {@link #enterContext(Context)} when closed.
+     */
+    public static class Scope implements AutoCloseable {
+        private final Context previous;
+
+        private Scope(Context previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            context.set(previous);
+        }
+    }
+
+    /**
+     * Sets what the current thread is working on, until the returned scope is closed.
+     *
+     * @param newContext the song, stage and vId the current thread is working on
+     * @return the scope, to be closed once the thread is done with the work
+     */
+    public static Scope enterContext(Context newContext) {
+        Scope scope = new Scope(context.get());
+        context.set(newContext);
+        return scope;
+    }
+
+    /**
+     * @return what the current thread is working on, so it can be passed on to threads helping it
+     */
+    public static Context currentContext() {
+        return context.get();
+    }
+
     /**
      * Called when a critical Exception occurs. Dumps the stack trace of the Exception to a log
      * file for debugging purposes.
@@ -52,24 +112,45 @@ public class ErrorLogger {
         Logger.getLogger().printError("The following error occurred: " + text);
     }
 
+    /**
+     * Writes the errors that are still queued to the log file and stops the thread writing them,
+     * which is started again by the next error. Called when the application exits.
+     */
+    public static synchronized void flush() {
+        if (appender != null) {
+            appender.close();
+            appender = null;
+        }
+    }
+
+    private static synchronized ErrorLogAppender getAppender() {
+        if (appender == null) {
+            appender = new ErrorLogAppender(LOG_FILE, MAX_LOG_BYTES, LOG_BACKUPS);
+        }
+        return appender;
+    }
+
     private static void logToFile(Object e) {
-        try {
-            File errorLog = new File("errorLog.log");
-            //noinspection ResultOfMethodCallIgnored
-            errorLog.createNewFile();
-            FileWriter fileWriter = new FileWriter("errorLog.log");
-            StringWriter sw = new StringWriter();
-            if (e instanceof Throwable) {
-                ((Throwable) e).printStackTrace(new PrintWriter(sw));
-            } else if (e instanceof String) {
-                sw.write(e + "\n");
-            }
-            sw.write("\nThis log has been generated at " + new Date());
-            fileWriter.write(sw.toString());
-            fileWriter.close();
-        } catch (IOException ex) {
-            Logger.getLogger().printError("A runtime error occurred, but could not be logged due to an IOException");
+        StringWriter sw = new StringWriter();
+        Context current = context.get();
+        sw.write(LocalDateTime.now() + " [" + Thread.currentThread().getName() + "]");
+        if (current.stage() != null) {
+            sw.write(" stage=" + current.stage());
+        }
+        if (current.file() != null) {
+            sw.write(" file=" + current.file());
+        }
+        if (current.vId() != null) {
+            sw.write(" vId=" + current.vId());
+        }
+        sw.write("\n");
+        if (e instanceof Throwable) {
+            ((Throwable) e).printStackTrace(new PrintWriter(sw));
+        } else if (e instanceof String) {
+            sw.write(e + "\n");
         }
+        sw.write("\n");
+        getAppender().append(sw.toString());
     }
 
 }
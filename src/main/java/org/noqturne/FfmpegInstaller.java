@@ -0,0 +1,178 @@
+package org.noqturne;
+
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.LongConsumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Installs ffmpeg by reading the zip of an ffmpeg build while it is being downloaded. Only the
+ * binaries yt-dlp needs are written to disk, straight into the bin folder, and the download stops
+ * as soon as they have all been found. The zip itself and the rest of its entries never touch disk.
+ */
+public class FfmpegInstaller extends FileDownloader {
+
+    public static final String FFMPEG_BUILD_URL =
+            "https://github.com/yt-dlp/FFmpeg-Builds/releases/download/latest/ffmpeg-master-latest-win64-gpl.zip";
+    private static final List<String> BINARIES = List.of("ffmpeg", "ffprobe");
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final long PROGRESS_INTERVAL_NANOS = 250_000_000L;
+
+    private final HttpClient client;
+
+    /**
+     * @param frame the GUI showing the progress of the download, or <code>null</code> to log the
+     *              progress instead
+     * @param binDir Path object pointing to the folder to install ffmpeg in
+     */
+    public FfmpegInstaller(@Nullable JFrame frame, Path binDir) {
+        super(frame, FFMPEG_BUILD_URL, binDir, "ffmpeg");
+        this.client = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+    }
+
+    /**
+     * Streams the zip of the ffmpeg build and extracts the binaries from it.
+     *
+     * @param url website to download the zip from
+     * @param binDir Path object pointing to the folder to install ffmpeg in
+     * @throws IOException if an I/O error occurs or the zip does not contain the binaries
+     * @throws InterruptedException if the current Thread is interrupted while waiting
+     */
+    @Override
+    protected void downloadFromUrl(String url, Path binDir) throws IOException, InterruptedException {
+        HttpResponse<InputStream> response = client.send(HttpRequest.newBuilder(URI.create(url)).build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() != 200) {
+            response.body().close();
+            throw new IOException("Could not download ffmpeg, the server responded with " + response.statusCode());
+        }
+        long length = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        Files.createDirectories(binDir);
+        Set<String> names = new HashSet<>();
+        BINARIES.forEach(binary -> names.add(Platform.executableName(binary)));
+        // Closing the stream early drops the connection, so the rest of the zip is not downloaded
+        try (InputStream zip = response.body()) {
+            extract(zip, binDir, names, read -> {
+                if (length > 0) {
+                    setProgress((int) Math.min(100, read * 100 / length));
+                }
+            });
+        }
+        Logger.getLogger().println("ffmpeg successfully installed!");
+    }
+
+    /**
+     * Writes the entries of a zip with the given file names to a folder, regardless of the folder they
+     * are in within the zip. Each file is written next to its destination first and then moved, so an
+     * existing binary is never left half overwritten.
+     *
+     * @param zip the zip, read up to the last of the entries
+     * @param destination Path object pointing to the folder to write the entries to
+     * @param names file names of the entries to extract
+     * @param progress receives the number of bytes of the zip read so far, at most a few times a second
+     * @throws IOException if an I/O error occurs or not every entry was found
+     */
+    static void extract(InputStream zip, Path destination, Set<String> names, LongConsumer progress) throws IOException {
+        Set<String> missing = new HashSet<>(names);
+        CountingInputStream counted = new CountingInputStream(zip, progress);
+        ZipInputStream zis = new ZipInputStream(counted);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        ZipEntry entry;
+        while (!missing.isEmpty() && (entry = zis.getNextEntry()) != null) {
+            String name = entry.getName().substring(entry.getName().lastIndexOf('/') + 1);
+            if (entry.isDirectory() || !missing.remove(name)) {
+                continue;
+            }
+            Path target = destination.resolve(name);
+            Path temp = destination.resolve(name + ".tmp");
+            try {
+                try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    int read;
+                    while ((read = zis.read(buffer)) != -1) {
+                        ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+                        while (bytes.hasRemaining()) {
+                            out.write(bytes);
+                        }
+                    }
+                }
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new IOException("The ffmpeg build does not contain " + String.join(", ", missing));
+        }
+        progress.accept(counted.count);
+    }
+
+    /**
+     * Counts the bytes of the zip that have been read, which is how far the download got.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private final LongConsumer progress;
+        private long count;
+        private long lastProgress = System.nanoTime();
+
+        CountingInputStream(InputStream in, LongConsumer progress) {
+            super(in);
+            this.progress = progress;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read != -1) {
+                counted(1);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                counted(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            counted(skipped);
+            return skipped;
+        }
+
+        private void counted(long bytes) {
+            count += bytes;
+            if (System.nanoTime() - lastProgress >= PROGRESS_INTERVAL_NANOS) {
+                progress.accept(count);
+                lastProgress = System.nanoTime();
+            }
+        }
+    }
+}
@@ -1,33 +1,46 @@
 package org.noqturne;
 
+import org.jetbrains.annotations.Nullable;
+
 import javax.swing.*;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.URL;
-import java.net.URLConnection;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 
 public class FileDownloader extends AbstractWorker {
 
     private final String url;
     private final Path path;
     private final String name;
+    private final Logger logger;
+    // Percentage step at which progress is logged when there is no GUI to show a progress bar in
+    private static final int LOGGED_PROGRESS_STEP = 10;
+    private int loggedProgress;
 
     /**
      * Instantiates AbstractWorker with the right parameters
      *
+     * @param frame the GUI showing the progress of the download, or <code>null</code> to log the
+     *              progress instead
      * @param url website to download from. Should directly point to the download link
      * @param path Path object to download the file to
      * @param name String denoting the object that is being downloaded
      */
-    public FileDownloader(JFrame frame, String url, Path path, String name) {
+    public FileDownloader(@Nullable JFrame frame, String url, Path path, String name) {
         super(frame);
         this.url = url;
         this.path = path;
         this.name = name;
+        this.logger = Logger.getLogger();
+        if (frame == null) {
+            // Progress updates are coalesced, so steps are logged once they are passed rather than reached
+            addPropertyChangeListener(e -> {
+                if (e.getPropertyName().equals("progress")
+                        && (Integer) e.getNewValue() >= this.loggedProgress + LOGGED_PROGRESS_STEP) {
+                    this.loggedProgress = (Integer) e.getNewValue() / LOGGED_PROGRESS_STEP * LOGGED_PROGRESS_STEP;
+                    this.logger.println("Downloading " + name + ": " + this.loggedProgress + "%");
+                }
+            });
+        }
     }
 
     @Override
@@ -38,10 +51,14 @@ public class FileDownloader extends AbstractWorker {
     @Override
     protected void executeTask() {
         try {
-            Gui.getInstance().showProgressBar(this, "Downloading " + name + "...");
+            if (Gui.getInstance() != null) {
+                Gui.getInstance().showProgressBar(this, "Downloading " + name + "...");
+            }
             downloadFromUrl(url, path);
         } catch (IOException e) {
             ErrorLogger.runtimeExceptionOccurred(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -51,33 +68,19 @@ public class FileDownloader extends AbstractWorker {
     }
 
     /**
-     * Downloads file from a website to a specified filepath.
+     * Downloads file from a website to a specified filepath with a {@link SegmentedDownloader}, which
+     * continues where an earlier failed attempt stopped.
      *
      * @param url website to download from. Should directly point to the download link
      * @param path Path object to download the file to
      * @throws IOException if an I/O error occurs
+     * @throws InterruptedException if the current Thread is interrupted while waiting
      */
-    private void downloadFromUrl(String url, Path path) throws IOException {
-        URL urlObject = new URL(url);
-        URLConnection connection = urlObject.openConnection();
-        long contentLength = connection.getContentLengthLong(); // Total file size
-
-        try (InputStream in = connection.getInputStream();
-             OutputStream out = Files.newOutputStream(path, StandardOpenOption.CREATE)) {
-
-            byte[] buffer = new byte[8192]; // 8KB buffer
-            long bytesRead = 0;
-            int read;
-
-            while ((read = in.read(buffer)) != -1) {
-                out.write(buffer, 0, read);
-                bytesRead += read;
-
-                if (contentLength > 0) {
-                    int percent = (int) ((bytesRead * 100) / contentLength);
-                    setProgress(percent);
-                }
+    protected void downloadFromUrl(String url, Path path) throws IOException, InterruptedException {
+        new SegmentedDownloader(SegmentedDownloader.Settings.defaults()).download(url, path, (downloaded, total) -> {
+            if (total > 0) {
+                setProgress((int) (downloaded * 100 / total));
             }
-        }
+        });
     }
 }
@@ -0,0 +1,361 @@
+package org.noqturne;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mpatric.mp3agic.InvalidDataException;
+import com.mpatric.mp3agic.UnsupportedTagException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Tags mp3 files as they are dropped into one or more folders, for ingest workflows where songs
+ * arrive all day. A file is only tagged once it has stopped growing, and new files are collected
+ * into batches, so a burst of files is tagged together instead of one song at a time.
+ * <p>
+ * Every file that was tagged, or failed, is remembered together with its modification time in a
+ * state file. Files are only tagged again once they change, which also keeps the tags written by
+ * this watcher from being mistaken for new files. When the watcher starts, and whenever the
+ * operating system drops events, the folders are scanned for files that are not remembered yet.
+ * Files found this way that already have the tags Noqturne writes are remembered without tagging them.
+ */
+public class FolderWatcher implements AutoCloseable {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final int FORMAT_VERSION = 1;
+    private static final long MIN_TICK_MILLIS = 100;
+    private static final long MAX_TICK_MILLIS = 1000;
+
+    /**
+     * How a watcher batches new files.
+     *
+     * @param settleTime how long the size and modification time of a file must stay the same before it
+     *                   is considered completely written
+     * @param batchSize number of files after which a batch is started right away
+     * @param maxLatency longest time a completely written file waits for more files before its batch
+     *                   is started anyway
+     */
+    public record Settings(Duration settleTime, int batchSize, Duration maxLatency) {
+
+        /**
+         * @return settings that suit files being copied into a folder on the same machine
+         */
+        public static Settings defaults() {
+            return new Settings(Duration.ofSeconds(5), 50, Duration.ofSeconds(30));
+        }
+    }
+
+    /**
+     * Tags a batch of new files.
+     */
+    @FunctionalInterface
+    interface BatchTagger {
+        /**
+         * @param songs the mp3 files to tag
+         * @param listener must be told the outcome of every song
+         * @return {@link TaggingPipeline.BatchResult} summarizing which songs could not be tagged
+         * @throws InterruptedException if the current Thread is interrupted while tagging
+         */
+        TaggingPipeline.BatchResult tag(List<File> songs, TaggingPipeline.SongListener listener) throws InterruptedException;
+    }
+
+    /**
+     * A file that appeared or changed, which is tagged once it has stopped changing.
+     */
+    private static class Candidate {
+        private final boolean checkTags;
+        private long size = -1;
+        private long lastModified = -1;
+        private long stableSince;
+
+        private Candidate(boolean checkTags) {
+            this.checkTags = checkTags;
+        }
+    }
+
+    private final List<Path> folders;
+    private final Settings settings;
+    private final BatchTagger tagger;
+    private final TaggingPipeline.SongListener listener;
+    private final Path stateFile;
+    private final Logger logger;
+    private final ConcurrentHashMap<Path, Long> processed = new ConcurrentHashMap<>();
+    private final Map<Path, Candidate> candidates = new HashMap<>();
+    private final List<File> pending = new ArrayList<>();
+    private final Set<Path> inFlight = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler;
+    // Batches are tagged one after another, the pipeline already tags the songs of a batch concurrently
+    private final ExecutorService batchRunner;
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private long pendingSince;
+    private WatchService watchService;
+
+    /**
+     * @param folders the folders to watch, not including their subfolders
+     * @param settings how new files are batched
+     * @param tagger tags the batches
+     * @param listener is told the outcome of every song that is tagged
+     * @param stateFile file the files that have been processed are remembered in
+     */
+    public FolderWatcher(List<Path> folders, Settings settings, Tagger tagger,
+                         TaggingPipeline.SongListener listener, Path stateFile) {
+        this(folders, settings, (songs, batchListener) -> {
+            TaggingPipeline.Batch batch = tagger.startBatch(null, batchListener);
+            for (File song : songs) {
+                batch.submit(song);
+            }
+            return tagger.finishBatch(batch);
+        }, listener, stateFile);
+    }
+
+    /**
+     * @param folders the folders to watch, not including their subfolders
+     * @param settings how new files are batched
+     * @param tagger tags the batches
+     * @param listener is told the outcome of every song that is tagged
+     * @param stateFile file the files that have been processed are remembered in
+     */
+    FolderWatcher(List<Path> folders, Settings settings, BatchTagger tagger,
+                  TaggingPipeline.SongListener listener, Path stateFile) {
+        this.folders = folders.stream().map(Path::toAbsolutePath).toList();
+        this.settings = settings;
+        this.tagger = tagger;
+        this.listener = listener;
+        this.stateFile = stateFile;
+        this.logger = Logger.getLogger();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> newThread(runnable, "noqturne-watch-folder"));
+        this.batchRunner = Executors.newSingleThreadExecutor(runnable -> newThread(runnable, "noqturne-watch-batch"));
+    }
+
+    private static Thread newThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Starts watching the folders and queues the files in them that have not been processed before.
+     *
+     * @throws IOException if a folder cannot be watched
+     */
+    public void start() throws IOException {
+        loadState();
+        WatchService service = FileSystems.getDefault().newWatchService();
+        for (Path folder : folders) {
+            folder.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+        watchService = service;
+        newThread(() -> watch(service), "noqturne-watch-events").start();
+        scanFolders();
+        long tick = Math.max(MIN_TICK_MILLIS, Math.min(MAX_TICK_MILLIS, settings.settleTime().toMillis() / 2));
+        scheduler.scheduleWithFixedDelay(this::tick, tick, tick, TimeUnit.MILLISECONDS);
+        logger.println("Watching " + folders.size() + " folder(s) for new songs...");
+    }
+
+    /**
+     * Blocks until this watcher is closed.
+     *
+     * @throws InterruptedException if the current Thread is interrupted while waiting
+     */
+    public void awaitClose() throws InterruptedException {
+        closed.await();
+    }
+
+    /**
+     * Stops watching. The batch that is being tagged is finished first, files that were still waiting
+     * are tagged the next time the folders are watched.
+     */
+    @Override
+    public void close() {
+        if (closed.getCount() == 0) {
+            return;
+        }
+        scheduler.shutdownNow();
+        try {
+            if (watchService != null) {
+                watchService.close();
+            }
+            batchRunner.shutdown();
+            if (!batchRunner.awaitTermination(1, TimeUnit.MINUTES)) {
+                batchRunner.shutdownNow();
+            }
+            // Also keeps the files that turned out to be tagged already, which no batch saved
+            saveState();
+        } catch (IOException e) {
+            ErrorLogger.runtimeExceptionOccurred(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closed.countDown();
+        }
+    }
+
+    private void watch(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Path folder = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        logger.printError("Missed changes in the watched folders, scanning them again...");
+                        scanFolders();
+                    } else if (event.context() instanceof Path name && name.toString().endsWith(".mp3")) {
+                        changed(folder.resolve(name), false);
+                    }
+                }
+                if (!key.reset()) {
+                    logger.printError("Stopped watching " + folder + ", it no longer exists");
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // The watcher was closed
+        }
+    }
+
+    private void scanFolders() {
+        for (Path folder : folders) {
+            File[] songs = folder.toFile().listFiles(file -> file.isFile() && file.getName().endsWith(".mp3"));
+            if (songs == null) {
+                logger.printError("Could not list " + folder);
+                continue;
+            }
+            for (File song : songs) {
+                if (!isProcessed(song.toPath(), song.lastModified())) {
+                    changed(song.toPath(), true);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param checkTags whether to check if the file already has the tags Noqturne writes before tagging it
+     */
+    private synchronized void changed(Path file, boolean checkTags) {
+        // Only restarts the wait if the file turns out to have changed since it was last seen
+        candidates.putIfAbsent(file, new Candidate(checkTags));
+    }
+
+    /**
+     * Moves files that stopped changing to the pending files, and starts a batch once there are enough
+     * pending files or they have waited long enough.
+     */
+    private synchronized void tick() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Path, Candidate>> iterator = candidates.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Candidate> entry = iterator.next();
+            Path path = entry.getKey();
+            Candidate candidate = entry.getValue();
+            File file = path.toFile();
+            long size = file.length();
+            long lastModified = file.lastModified();
+            if (!file.isFile()) {
+                iterator.remove();
+            } else if (size != candidate.size || lastModified != candidate.lastModified) {
+                candidate.size = size;
+                candidate.lastModified = lastModified;
+                candidate.stableSince = now;
+            } else if (now - candidate.stableSince >= settings.settleTime().toMillis()) {
+                iterator.remove();
+                if (!inFlight.contains(path) && !isProcessed(path, lastModified)
+                        && !(candidate.checkTags && isTagged(path, lastModified))) {
+                    if (pending.isEmpty()) {
+                        pendingSince = now;
+                    }
+                    pending.add(file);
+                }
+            }
+        }
+        while (pending.size() >= settings.batchSize()
+                || (!pending.isEmpty() && now - pendingSince >= settings.maxLatency().toMillis())) {
+            List<File> batch = new ArrayList<>(pending.subList(0, Math.min(pending.size(), settings.batchSize())));
+            pending.subList(0, batch.size()).clear();
+            pendingSince = now;
+            batch.forEach(file -> inFlight.add(file.toPath()));
+            batchRunner.execute(() -> tagBatch(batch));
+        }
+    }
+
+    /**
+     * Remembers files that already have the tags Noqturne writes, so they are not tagged again.
+     *
+     * @return whether the file is tagged
+     */
+    private boolean isTagged(Path path, long lastModified) {
+        try {
+            if (LibraryAuditor.missingTags(Id3TagReader.summarize(path)).isEmpty()) {
+                processed.put(path, lastModified);
+                return true;
+            }
+        } catch (IOException | InvalidDataException | UnsupportedTagException e) {
+            // Tagging overwrites the broken tag
+        }
+        return false;
+    }
+
+    private void tagBatch(List<File> songs) {
+        logger.println("Tagging " + songs.size() + " new song(s)...");
+        try {
+            TaggingPipeline.BatchResult result = tagger.tag(songs, (song, tagged) -> {
+                // Remembered whether or not tagging succeeded, a failed song is only retried once it changes
+                processed.put(song.toPath(), song.lastModified());
+                inFlight.remove(song.toPath());
+                listener.songFinished(song, tagged);
+            });
+            logger.println("Tagged " + result.tagged() + " out of " + songs.size() + " new song(s).");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            songs.forEach(song -> inFlight.remove(song.toPath()));
+            try {
+                saveState();
+            } catch (IOException e) {
+                ErrorLogger.runtimeExceptionOccurred(e, "Could not save which songs have been tagged");
+            }
+        }
+    }
+
+    private boolean isProcessed(Path path, long lastModified) {
+        Long processedAt = processed.get(path);
+        return processedAt != null && processedAt == lastModified;
+    }
+
+    /**
+     * The file is replaced atomically, so a crash while writing never leaves a corrupt state behind.
+     */
+    private synchronized void saveState() throws IOException {
+        ObjectNode root = mapper.createObjectNode().put("version", FORMAT_VERSION);
+        ObjectNode files = root.putObject("processed");
+        new TreeMap<>(processed).forEach((path, lastModified) -> files.put(path.toString(), lastModified));
+        Files.createDirectories(stateFile.getParent());
+        Path temp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+        mapper.writeValue(temp.toFile(), root);
+        Files.move(temp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void loadState() {
+        if (!Files.exists(stateFile)) {
+            return;
+        }
+        try {
+            JsonNode root = mapper.readTree(stateFile.toFile());
+            if (root.path("version").asInt() != FORMAT_VERSION) {
+                return;
+            }
+            root.path("processed").fields().forEachRemaining(entry -> {
+                Path path = Paths.get(entry.getKey());
+                // Forgets files that were removed since, so the state does not grow forever
+                if (Files.exists(path)) {
+                    processed.put(path, entry.getValue().asLong());
+                }
+            });
+        } catch (IOException e) {
+            ErrorLogger.runtimeExceptionOccurred(e, "Could not read which songs have been tagged");
+        }
+    }
+}
@@ -11,6 +11,7 @@ import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
 import javax.swing.text.Style;
 import javax.swing.text.StyleConstants;
 import javax.swing.text.StyledDocument;
@@ -23,6 +24,8 @@ import java.io.*;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.Properties;
 
@@ -56,11 +59,20 @@ public class Gui extends JFrame {
     protected final Logger logger;
     protected final Tagger tagger;
     protected final SongDownloader songDownloader;
+    protected final LibraryAuditor libraryAuditor;
+    protected SubscriptionSyncer subscriptionSyncer;
     protected boolean renameState = true;
     protected File chosenSongFile;
+    private final ConsoleBuffer consoleBuffer = new ConsoleBuffer(CONSOLE_BUFFER_SIZE);
+    private Style consoleStyle;
+    private Style consoleErrorStyle;
 
     private static final int SETTINGS_BUTTON_SIZE = 32;
     private static final float BRIGHTNESS_FACTOR = 1.2f;
+    // The console is updated at most about 30 times a second, however fast text arrives
+    private static final int CONSOLE_FRAME_MILLIS = 33;
+    private static final int CONSOLE_BUFFER_SIZE = 4096;
+    private static final int CONSOLE_MAX_LINES = 2000;
 
     /**
      * Calling this constructor will create and show the GUI of Noqturne.
@@ -74,6 +86,8 @@ public class Gui extends JFrame {
         this.logger = Logger.getLogger();
         this.tagger = new Tagger();
         this.songDownloader = new SongDownloader();
+        this.tagger.addRewriteListener(file -> this.songDownloader.fileRewritten(file.toFile()));
+        this.libraryAuditor = new LibraryAuditor(LibraryAuditor.DEFAULT_THREADS);
         instance = this;
         if (!testing) {
             initializeGUI();
@@ -96,6 +110,7 @@ public class Gui extends JFrame {
             this.setIconImage(icon.getImage());
         }
 
+        initializeConsole();
         tagAllFilesInButton.addActionListener(e -> invokeTagAllFiles(null));
         downloadAndTagSongButton.addActionListener(e -> invokeDownloadAndTag());
         tagIndividualButton.addActionListener(e -> invokeIndividualTag());
@@ -148,8 +163,12 @@ public class Gui extends JFrame {
         }
         settingsButton.addActionListener(e -> openSettings());
 
+        PlaylistSubscriptions subscriptions = ResourceManager.getPlaylistSubscriptions();
+        subscriptionSyncer = new SubscriptionSyncer(subscriptions, songDownloader, tagger);
+        subscriptionSyncer.schedule(subscriptions.getSyncIntervalHours());
+
         setVisible(true);
-        ResourceManager.ensureYtMusicApiInstallation();
+        ResourceManager.prepareDependencies();
     }
 
     /**
@@ -245,26 +264,39 @@ public class Gui extends JFrame {
         try {
             File[] songs = resolveSongs(arrayOfSongs);
             maybeRename(songs);
-            String vIdThumbnailStr = vIdThumbnail2.getText();
-            String vId = Tagger.getVideoId(vIdThumbnailStr);
-            if (vIdThumbnailStr.isEmpty() || vId == null) {
-                if (!vIdThumbnailStr.isEmpty()) {
-                    this.logger.printError("Could not extract video id, " +
-                            "reverting to finding video id automatically");
-                }
-                this.tagger.tagAllFiles(songs);
+            String vId = getThumbnailVId();
+            TaggingPipeline.BatchResult result;
+            if (vId == null) {
+                result = this.tagger.tagAllFiles(songs);
             } else {
-                tagWithThumbnail(songs, vId);
+                result = tagWithThumbnail(songs, vId);
             }
-            showMD(Gui.this, "Tagging successful!");
-        } catch (IOException |
-                 InterruptedException | NotSupportedException e) {
+            showBatchResult(result);
+        } catch (InterruptedException e) {
             ErrorLogger.runtimeExceptionOccurred(e);
         } catch (NoSongFoundException e) {
             showMD(Gui.this, "No songs found in tagging folder!");
         }
     }
 
+    /**
+     * Reads the vId the user entered for the cover art of all songs in the "tag all files" tab.
+     *
+     * @return the vId, or <code>null</code> if the cover art of each song is to be found automatically
+     */
+    private @Nullable String getThumbnailVId() {
+        String vIdThumbnailStr = vIdThumbnail2.getText();
+        if (vIdThumbnailStr.isEmpty()) {
+            return null;
+        }
+        String vId = Tagger.getVideoId(vIdThumbnailStr);
+        if (vId == null) {
+            this.logger.printError("Could not extract video id, " +
+                    "reverting to finding video id automatically");
+        }
+        return vId;
+    }
+
     private File[] resolveSongs(@Nullable File[] arrayOfSongs) throws NoSongFoundException {
         if (arrayOfSongs != null) {
             return arrayOfSongs;
@@ -288,9 +320,21 @@ public class Gui extends JFrame {
         }
     }
 
-    private void tagWithThumbnail(File[] songs, String thumbnailVId) throws IOException, NotSupportedException {
-        for (File song : songs) {
-            this.tagger.tagIndividualFile(song.getAbsolutePath(), thumbnailVId);
+    private TaggingPipeline.BatchResult tagWithThumbnail(File[] songs, String thumbnailVId) throws InterruptedException, NoSongFoundException {
+        return this.tagger.tagAllFiles(songs, thumbnailVId);
+    }
+
+    /**
+     * Informs the user of the outcome of a tagging batch.
+     *
+     * @param result the outcome of the batch
+     */
+    private void showBatchResult(TaggingPipeline.BatchResult result) {
+        if (result.isSuccessful()) {
+            showMD(Gui.this, "Tagging successful!");
+        } else {
+            showMD(Gui.this, "Tagging finished, but " + result.failed().size()
+                    + " song(s) could not be tagged. Check the console for details.");
         }
     }
 
@@ -381,33 +425,57 @@ public class Gui extends JFrame {
 
     /**
      * Method runs when the "download and tag" button is pressed. This downloads all the songs by
-     * calling the associated function, and afterward calls {@link #invokeTagAllFiles(File[])} to
-     * tag the recently downloaded files. While doing this, it will report its progress via
-     * the console on the right of the UI.
+     * calling the associated function, and hands every song to the tagging pipeline as soon as it
+     * is downloaded, so songs are tagged while the rest of a playlist is still downloading. While
+     * doing this, it will report its progress via the console on the right of the UI.
      */
     protected void invokeDownloadAndTag() {
         new AbstractWorker(this) {
-            private File[] arrayOfSongs;
             @Override
             protected void beginTask() {
                 logger.println("Starting download...");
             }
             @Override
             protected void executeTask() {
-                try {
-                    arrayOfSongs = songDownloader.downloadSongs(songPlaylistURLTextField.getText());
-                } catch (IOException | InterruptedException e) {
-                    ErrorLogger.runtimeExceptionOccurred(e);
-                }
+                downloadAndTag(songPlaylistURLTextField.getText());
             }
             @Override
             protected void taskCompleted() {
-                logger.println("Download complete.");
-                invokeTagAllFiles(arrayOfSongs);
+                logger.println("Tagging complete!");
             }
         }.execute();
     }
 
+    /**
+     * Downloads the songs indicated by the URL and tags each of them once it is downloaded.
+     *
+     * @param url the URL to the YouTube video or playlist
+     */
+    protected void downloadAndTag(String url) {
+        TaggingPipeline.Batch batch = this.tagger.startBatch(getThumbnailVId());
+        try {
+            try {
+                this.songDownloader.downloadSongs(url, song -> {
+                    File renamed = renameState ? renameSong(song) : song;
+                    batch.submit(renamed);
+                    return renamed;
+                });
+                logger.println("Download complete.");
+            } catch (IOException e) {
+                // Songs that were downloaded before the failure are still tagged
+                ErrorLogger.runtimeExceptionOccurred(e);
+            }
+            TaggingPipeline.BatchResult result = this.tagger.finishBatch(batch);
+            if (batch.size() == 0) {
+                showMD(Gui.this, "No songs were downloaded!");
+            } else {
+                showBatchResult(result);
+            }
+        } catch (InterruptedException e) {
+            ErrorLogger.runtimeExceptionOccurred(e);
+        }
+    }
+
     /**
      * Method runs when the "add cover for individual file" button is pressed. This will simply run
      * the associated functionality {@link #addCoverForIndividualFile()} and report its progress
@@ -430,6 +498,34 @@ public class Gui extends JFrame {
         }.execute();
     }
 
+    /**
+     * Method runs when the "audit tagging folder" button in the settings is pressed. Reads the tags of
+     * all mp3 files in the tagging folder and lists the ones that are missing tags in the console on
+     * the right of the UI, see {@link LibraryAuditor}.
+     */
+    protected void invokeAudit() {
+        new AbstractWorker(this) {
+            @Override
+            protected void beginTask() {
+                logger.println("Starting audit...");
+            }
+            @Override
+            protected void executeTask() {
+                try {
+                    LibraryAuditor.printReport(libraryAuditor.audit(resolveSongs(null)));
+                } catch (InterruptedException e) {
+                    ErrorLogger.runtimeExceptionOccurred(e);
+                } catch (NoSongFoundException e) {
+                    showMD(Gui.this, "No songs found in tagging folder!");
+                }
+            }
+            @Override
+            protected void taskCompleted() {
+                logger.println("Audit complete!");
+            }
+        }.execute();
+    }
+
     /**
      * Shortcut function to make code less cluttered. Simply calls {@link JOptionPane#showMessageDialog(Component, Object)}.
      */
@@ -443,26 +539,61 @@ public class Gui extends JFrame {
      * No technical details should be shared via this function for a better UX.
      * Error messages will be printed in red.
      * <p>
-     * Called in {@link Logger#println(String)}.
+     * Called in {@link Logger#println(String)}, from any thread. The text is queued in a
+     * {@link ConsoleBuffer} without blocking, and shown the next time the console is updated, see
+     * {@link #flushConsole()}.
      *
      * @param string the text to be displayed to the user.
      * @param isError determines whether the text to display is an error or not
      */
     public void displayText(String string, boolean isError) {
-        SwingUtilities.invokeLater(() -> {
-            StyledDocument doc = consoleText.getStyledDocument();
-            Style style = consoleText.addStyle("Style", null);
+        consoleBuffer.offer(string, isError);
+    }
 
-            if (isError) {
-                StyleConstants.setForeground(style, Color.RED);
-            }
+    /**
+     * Creates the styles of the console once, and starts updating it at a fixed rate.
+     */
+    private void initializeConsole() {
+        consoleStyle = consoleText.addStyle("console", null);
+        consoleErrorStyle = consoleText.addStyle("consoleError", consoleStyle);
+        StyleConstants.setForeground(consoleErrorStyle, Color.RED);
+        new Timer(CONSOLE_FRAME_MILLIS, e -> flushConsole()).start();
+    }
 
-            try {
-                doc.insertString(doc.getLength(), string, style);
-            } catch (BadLocationException e) {
-                ErrorLogger.runtimeExceptionOccurred(e);
+    /**
+     * Shows the text that was queued since the last update. Consecutive text of the same style is
+     * inserted at once, and the oldest lines are removed beyond {@link #CONSOLE_MAX_LINES}, so a
+     * large batch neither floods the event dispatch thread nor keeps growing the console.
+     */
+    private void flushConsole() {
+        List<ConsoleBuffer.Entry> entries = new ArrayList<>();
+        consoleBuffer.drain(entries::add);
+        long dropped = consoleBuffer.takeDropped();
+        if (dropped > 0) {
+            entries.add(new ConsoleBuffer.Entry(dropped + " message(s) were not shown because too many arrived at once\n", true));
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+        StyledDocument doc = consoleText.getStyledDocument();
+        try {
+            int i = 0;
+            while (i < entries.size()) {
+                boolean isError = entries.get(i).error();
+                StringBuilder text = new StringBuilder();
+                while (i < entries.size() && entries.get(i).error() == isError) {
+                    text.append(entries.get(i++).text());
+                }
+                doc.insertString(doc.getLength(), text.toString(), isError ? consoleErrorStyle : consoleStyle);
             }
-        });
+            Element root = doc.getDefaultRootElement();
+            int excess = root.getElementCount() - CONSOLE_MAX_LINES;
+            if (excess > 0) {
+                doc.remove(0, root.getElement(excess - 1).getEndOffset());
+            }
+        } catch (BadLocationException e) {
+            ErrorLogger.runtimeExceptionOccurred(e);
+        }
     }
 
     /**
@@ -473,10 +604,10 @@ public class Gui extends JFrame {
      */
     public void openSettings() {
         JDialog settingsDialog = new JDialog(this, "Settings", true);
-        settingsDialog.setSize(400, 300);
+        settingsDialog.setSize(400, 400);
 
         JPanel settingsPanel = new JPanel();
-        settingsPanel.setLayout(new GridLayout(2, 1));
+        settingsPanel.setLayout(new GridLayout(5, 1));
 
         JButton updateDependenciesButton = new JButton("Update Dependencies");
         updateDependenciesButton.addActionListener(e -> ResourceManager.updateDependencies());
@@ -485,6 +616,23 @@ public class Gui extends JFrame {
         dependenciesButtonPanel.add(updateDependenciesButton, gbc);
         settingsPanel.add(dependenciesButtonPanel);
 
+        JButton auditButton = new JButton("Audit Tagging Folder");
+        auditButton.setToolTipText("Lists songs in the tagging folder that are missing tags");
+        auditButton.addActionListener(e -> {
+            settingsDialog.dispose();
+            invokeAudit();
+        });
+        JPanel auditButtonPanel = new JPanel(new GridBagLayout());
+        auditButtonPanel.add(auditButton, gbc);
+        settingsPanel.add(auditButtonPanel);
+
+        JButton subscriptionsButton = new JButton("Playlist Subscriptions");
+        subscriptionsButton.setToolTipText("Playlists whose new songs are downloaded and tagged when syncing");
+        subscriptionsButton.addActionListener(e -> openSubscriptions(settingsDialog));
+        JPanel subscriptionsButtonPanel = new JPanel(new GridBagLayout());
+        subscriptionsButtonPanel.add(subscriptionsButton, gbc);
+        settingsPanel.add(subscriptionsButtonPanel);
+
         JPanel filePathRowPanel = new JPanel(new GridLayout(1, 2));
 
         JPanel filePathLabelPanel = new JPanel(new GridBagLayout());
@@ -554,6 +702,14 @@ public class Gui extends JFrame {
         filePathRowPanel.add(filePathPanel);
         settingsPanel.add(filePathRowPanel);
 
+        // Applied right away, also to a batch that is running
+        JPanel concurrencyPanel = new JPanel(new FlowLayout());
+        concurrencyPanel.add(new JLabel("Downloads at once:"));
+        concurrencyPanel.add(configSpinner(Config.DOWNLOAD_WORKERS, 16));
+        concurrencyPanel.add(new JLabel("Searches at once:"));
+        concurrencyPanel.add(configSpinner(Config.SEARCH_THREADS, 16));
+        settingsPanel.add(concurrencyPanel);
+
         settingsDialog.addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
@@ -570,6 +726,131 @@ public class Gui extends JFrame {
         settingsDialog.setVisible(true);
     }
 
+    /**
+     * @param key a setting that is a number of threads or processes
+     * @param maximum the highest value the user can choose
+     * @return a spinner that saves the setting whenever the user changes it
+     */
+    private JSpinner configSpinner(Config.Key<Integer> key, int maximum) {
+        Config config = ResourceManager.getConfig();
+        JSpinner spinner = new JSpinner(new SpinnerNumberModel((int) config.get(key), 1, maximum, 1));
+        spinner.addChangeListener(e -> {
+            try {
+                config.set(key, (Integer) spinner.getValue());
+            } catch (IOException ex) {
+                ErrorLogger.runtimeExceptionOccurred(ex, "Could not save settings");
+            }
+        });
+        return spinner;
+    }
+
+    /**
+     * Opens the dialog in which the user can subscribe to playlists, sync them, and choose how often
+     * they are synced in the background, see {@link SubscriptionSyncer}.
+     *
+     * @param owner the dialog this dialog is opened from
+     */
+    private void openSubscriptions(Dialog owner) {
+        PlaylistSubscriptions subscriptions = ResourceManager.getPlaylistSubscriptions();
+        JDialog subscriptionsDialog = new JDialog(owner, "Playlist Subscriptions", true);
+        subscriptionsDialog.setSize(500, 300);
+        subscriptionsDialog.setLayout(new BorderLayout(5, 5));
+
+        DefaultListModel<String> urls = new DefaultListModel<>();
+        subscriptions.list().forEach(subscription -> urls.addElement(subscription.url()));
+        JList<String> urlList = new JList<>(urls);
+        subscriptionsDialog.add(new JScrollPane(urlList), BorderLayout.CENTER);
+
+        JButton addButton = new JButton("Add");
+        addButton.addActionListener(e -> {
+            String url = (String) JOptionPane.showInputDialog(subscriptionsDialog, "Playlist URL:",
+                    "Subscribe to playlist", JOptionPane.PLAIN_MESSAGE, null, null,
+                    songPlaylistURLTextField.getText());
+            if (url == null || url.isBlank()) {
+                return;
+            }
+            try {
+                String subscribed = subscriptions.add(url).url();
+                if (!urls.contains(subscribed)) {
+                    urls.addElement(subscribed);
+                }
+            } catch (IOException ex) {
+                ErrorLogger.runtimeExceptionOccurred(ex, "Could not save playlist subscriptions");
+            }
+        });
+
+        JButton removeButton = new JButton("Remove");
+        removeButton.addActionListener(e -> {
+            String url = urlList.getSelectedValue();
+            PlaylistSubscriptions.Subscription subscription = url == null ? null : subscriptions.get(url);
+            if (subscription == null) {
+                return;
+            }
+            try {
+                subscriptions.remove(subscription);
+                urls.removeElement(url);
+            } catch (IOException ex) {
+                ErrorLogger.runtimeExceptionOccurred(ex, "Could not save playlist subscriptions");
+            }
+        });
+
+        JButton syncButton = new JButton("Sync Now");
+        syncButton.addActionListener(e -> {
+            subscriptionsDialog.dispose();
+            owner.dispose();
+            invokeSync();
+        });
+
+        JSpinner intervalSpinner = new JSpinner(
+                new SpinnerNumberModel(subscriptions.getSyncIntervalHours(), 0, 24 * 7, 1));
+        intervalSpinner.setToolTipText("Number of hours between syncs in the background, 0 to only sync on demand");
+        intervalSpinner.addChangeListener(e -> {
+            int hours = (Integer) intervalSpinner.getValue();
+            try {
+                subscriptions.setSyncIntervalHours(hours);
+            } catch (IOException ex) {
+                ErrorLogger.runtimeExceptionOccurred(ex, "Could not save playlist subscriptions");
+            }
+            subscriptionSyncer.schedule(hours);
+        });
+
+        JPanel buttonPanel = new JPanel(new FlowLayout());
+        buttonPanel.add(addButton);
+        buttonPanel.add(removeButton);
+        buttonPanel.add(syncButton);
+        buttonPanel.add(new JLabel("Sync every (hours):"));
+        buttonPanel.add(intervalSpinner);
+        subscriptionsDialog.add(buttonPanel, BorderLayout.SOUTH);
+
+        subscriptionsDialog.setLocationRelativeTo(owner);
+        subscriptionsDialog.setVisible(true);
+    }
+
+    /**
+     * Method runs when the "sync now" button in the playlist subscriptions is pressed. Downloads and
+     * tags the songs of all subscribed playlists that have not been downloaded before.
+     */
+    protected void invokeSync() {
+        new AbstractWorker(this) {
+            @Override
+            protected void beginTask() {
+                logger.println("Starting sync...");
+            }
+            @Override
+            protected void executeTask() {
+                try {
+                    subscriptionSyncer.syncAll();
+                } catch (InterruptedException e) {
+                    ErrorLogger.runtimeExceptionOccurred(e);
+                }
+            }
+            @Override
+            protected void taskCompleted() {
+                logger.println("Sync complete!");
+            }
+        }.execute();
+    }
+
     public void showProgressBar(AbstractWorker task, String progressName) {
         JDialog progressDialog = new JDialog(this, progressName);
         progressDialog.setSize(300, 100);
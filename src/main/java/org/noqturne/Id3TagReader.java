@@ -0,0 +1,208 @@
+package org.noqturne;
+
+import com.mpatric.mp3agic.*;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the ID3v2 tag of an mp3 file without touching its audio.
+ * <p>
+ * {@link Mp3File} scans every MPEG frame of a file before it gives access to the tag, which means
+ * reading the whole file. The ID3v2 tag however sits at the very start of the file and its header
+ * tells how long it is, so a few positional reads are enough to get hold of it.
+ */
+public final class Id3TagReader {
+
+    static final int HEADER_LENGTH = 10;
+    private static final int FOOTER_LENGTH = 10;
+    private static final int FRAME_HEADER_LENGTH = 10;
+    private static final int UNSYNCHRONISATION_FLAG = 0x80;
+    private static final int EXTENDED_HEADER_FLAG = 0x40;
+    private static final int FOOTER_FLAG = 0x10;
+    // Frame format flags after which the frame data cannot be read as is
+    private static final int V23_ENCODED_FRAME_FLAGS = 0xE0;
+    private static final int V24_ENCODED_FRAME_FLAGS = 0x0F;
+
+    /**
+     * The tags of an mp3 file that Noqturne cares about.
+     *
+     * @param artist the artist, or <code>null</code> if the file has none
+     * @param title the title, or <code>null</code> if the file has none
+     * @param hasAlbumImage whether the file has cover art
+     * @param coverArtVId vId of the cover art as written by Noqturne in a comment, or <code>null</code>
+     *                    if there is no such comment
+     */
+    public record Summary(@Nullable String artist, @Nullable String title, boolean hasAlbumImage,
+                          @Nullable String coverArtVId) {
+        static final Summary EMPTY = new Summary(null, null, false, null);
+    }
+
+    private Id3TagReader() {
+    }
+
+    /**
+     * Reads and parses the complete ID3v2 tag of an mp3 file.
+     *
+     * @param file the mp3 file
+     * @return the tag, or <code>null</code> if the file has no ID3v2 tag
+     * @throws IOException if an I/O error occurs
+     * @throws InvalidDataException if the tag is malformed
+     * @throws UnsupportedTagException if the tag is of an ID3v2 version mp3agic does not support
+     */
+    public static @Nullable ID3v2 read(Path file) throws IOException, InvalidDataException, UnsupportedTagException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(channel);
+        }
+    }
+
+    private static @Nullable ID3v2 read(FileChannel channel) throws IOException, InvalidDataException, UnsupportedTagException {
+        long length = tagLength(channel);
+        if (length == 0) {
+            return null;
+        }
+        try {
+            return ID3v2TagFactory.createTag(readAt(channel, 0, (int) length).array());
+        } catch (NoSuchTagException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads only the tags Noqturne writes. For ID3v2.3 and ID3v2.4 tags this walks the frame headers
+     * and reads the data of the artist, title and comment frames, skipping over everything else such
+     * as the cover art itself. Other tags are parsed completely.
+     *
+     * @param file the mp3 file
+     * @return {@link Summary} of the tags, {@link Summary#EMPTY} if the file has no ID3v2 tag
+     * @throws IOException if an I/O error occurs
+     * @throws InvalidDataException if the tag is malformed
+     * @throws UnsupportedTagException if the tag is of an ID3v2 version mp3agic does not support
+     */
+    public static Summary summarize(Path file) throws IOException, InvalidDataException, UnsupportedTagException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = tagLength(channel);
+            if (length == 0) {
+                return Summary.EMPTY;
+            }
+            ByteBuffer header = readAt(channel, 0, HEADER_LENGTH);
+            int majorVersion = header.get(3);
+            int flags = header.get(5);
+            if ((majorVersion != 3 && majorVersion != 4) || (flags & UNSYNCHRONISATION_FLAG) != 0) {
+                return summarize(read(channel));
+            }
+            long end = (flags & FOOTER_FLAG) != 0 ? length - FOOTER_LENGTH : length;
+            long position = HEADER_LENGTH;
+            if ((flags & EXTENDED_HEADER_FLAG) != 0) {
+                ByteBuffer size = readAt(channel, position, 4);
+                position += majorVersion == 4 ? unpackSynchsafe(size, 0) : size.getInt(0) + 4L;
+            }
+            Summary summary = scanFrames(channel, position, end, majorVersion);
+            return summary != null ? summary : summarize(read(channel));
+        }
+    }
+
+    /**
+     * @return the summary, or <code>null</code> if a frame that is needed is encoded in a way that
+     * requires parsing the whole tag
+     */
+    private static @Nullable Summary scanFrames(FileChannel channel, long position, long end, int majorVersion)
+            throws IOException, InvalidDataException {
+        String artist = null;
+        String title = null;
+        boolean hasAlbumImage = false;
+        String coverArtVId = null;
+        while (position + FRAME_HEADER_LENGTH <= end) {
+            ByteBuffer frameHeader = readAt(channel, position, FRAME_HEADER_LENGTH);
+            if (frameHeader.get(0) == 0) {
+                break; // Padding
+            }
+            String id = new String(frameHeader.array(), 0, 4, StandardCharsets.ISO_8859_1);
+            int size = majorVersion == 4 ? unpackSynchsafe(frameHeader, 4) : frameHeader.getInt(4);
+            long dataPosition = position + FRAME_HEADER_LENGTH;
+            if (size < 0 || dataPosition + size > end) {
+                throw new InvalidDataException("Frame " + id + " extends beyond the end of the tag");
+            }
+            position = dataPosition + size;
+            boolean needed = id.equals(AbstractID3v2Tag.ID_ARTIST) || id.equals(AbstractID3v2Tag.ID_TITLE)
+                    || id.equals(AbstractID3v2Tag.ID_COMMENT);
+            if (id.equals(AbstractID3v2Tag.ID_IMAGE)) {
+                hasAlbumImage |= size > 0;
+            } else if (needed && size > 0) {
+                int encodedFlags = majorVersion == 4 ? V24_ENCODED_FRAME_FLAGS : V23_ENCODED_FRAME_FLAGS;
+                if ((frameHeader.get(9) & encodedFlags) != 0) {
+                    return null;
+                }
+                byte[] data = readAt(channel, dataPosition, size).array();
+                switch (id) {
+                    case AbstractID3v2Tag.ID_ARTIST -> artist = text(new ID3v2TextFrameData(false, data).getText());
+                    case AbstractID3v2Tag.ID_TITLE -> title = text(new ID3v2TextFrameData(false, data).getText());
+                    default -> {
+                        String comment = text(new ID3v2CommentFrameData(false, data).getComment());
+                        if (coverArtVId == null && comment != null && comment.startsWith(Tagger.COVER_ART_COMMENT_PREFIX)) {
+                            coverArtVId = comment.substring(Tagger.COVER_ART_COMMENT_PREFIX.length());
+                        }
+                    }
+                }
+            }
+        }
+        return new Summary(artist, title, hasAlbumImage, coverArtVId);
+    }
+
+    private static Summary summarize(@Nullable ID3v2 tag) {
+        if (tag == null) {
+            return Summary.EMPTY;
+        }
+        String comment = tag.getComment();
+        String coverArtVId = comment != null && comment.startsWith(Tagger.COVER_ART_COMMENT_PREFIX)
+                ? comment.substring(Tagger.COVER_ART_COMMENT_PREFIX.length()) : null;
+        return new Summary(tag.getArtist(), tag.getTitle(), tag.getAlbumImage() != null, coverArtVId);
+    }
+
+    private static @Nullable String text(@Nullable EncodedText encodedText) {
+        return encodedText == null ? null : encodedText.toString();
+    }
+
+    /**
+     * Reads the header of the ID3v2 tag at the start of a file.
+     *
+     * @return length in bytes of the tag including its header, padding and footer according to the header,
+     * which may be more than the length of a truncated file, or 0 if there is no tag
+     */
+    static long tagLength(FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_LENGTH) {
+            return 0;
+        }
+        ByteBuffer header = readAt(channel, 0, HEADER_LENGTH);
+        if (header.get(0) != 'I' || header.get(1) != 'D' || header.get(2) != '3') {
+            return 0;
+        }
+        long length = HEADER_LENGTH + unpackSynchsafe(header, 6);
+        if ((header.get(5) & FOOTER_FLAG) != 0) {
+            length += FOOTER_LENGTH;
+        }
+        return length;
+    }
+
+    static int unpackSynchsafe(ByteBuffer buffer, int offset) {
+        return ((buffer.get(offset) & 0x7F) << 21)
+                | ((buffer.get(offset + 1) & 0x7F) << 14)
+                | ((buffer.get(offset + 2) & 0x7F) << 7)
+                | (buffer.get(offset + 3) & 0x7F);
+    }
+
+    private static ByteBuffer readAt(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file while reading ID3v2 tag");
+            }
+        }
+        return buffer;
+    }
+}
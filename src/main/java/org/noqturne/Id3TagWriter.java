@@ -0,0 +1,142 @@
+package org.noqturne;
+
+import com.mpatric.mp3agic.ID3v2;
+import com.mpatric.mp3agic.NotSupportedException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes ID3v2 tags to mp3 files without rewriting the audio whenever possible.
+ * <p>
+ * An ID3v2 tag sits at the very start of an mp3 file and may be followed by padding, zeroes that
+ * belong to the tag but contain no frames. If the new tag fits in the space of the old tag and its
+ * padding, only that region of the file is overwritten. Otherwise the file is rewritten once, next
+ * to the original so the rename that replaces it stays on the same volume, and the new tag is given
+ * padding so that later tags of the same file fit in place. The copy is moved over the original, so
+ * to anything watching the folder it looks like a new file, see {@link RewriteListener}.
+ */
+public class Id3TagWriter {
+
+    public static final int DEFAULT_PADDING = 32 * 1024;
+    private static final int HEADER_LENGTH = Id3TagReader.HEADER_LENGTH;
+
+    /**
+     * Outcome of writing a tag.
+     *
+     * @param inPlace whether only the tag region of the file was overwritten
+     * @param bytesWritten number of bytes written to disk
+     */
+    public record WriteResult(boolean inPlace, long bytesWritten) {}
+
+    /**
+     * Is told about every file that was replaced by a rewritten copy of itself.
+     */
+    @FunctionalInterface
+    public interface RewriteListener {
+        /**
+         * @param file the file that was rewritten
+         */
+        void rewritten(Path file);
+    }
+
+    private final int padding;
+    private final RewriteListener listener;
+
+    /**
+     * @param padding number of bytes of padding given to a tag when the whole file has to be rewritten
+     */
+    public Id3TagWriter(int padding) {
+        this(padding, file -> {});
+    }
+
+    /**
+     * @param padding number of bytes of padding given to a tag when the whole file has to be rewritten
+     * @param listener is told about every file that was rewritten
+     */
+    public Id3TagWriter(int padding, RewriteListener listener) {
+        this.padding = padding;
+        this.listener = listener;
+    }
+
+    /**
+     * Replaces the ID3v2 tag of an mp3 file, or adds one if it does not have one yet.
+     *
+     * @param file the mp3 file
+     * @param tag the new tag
+     * @return {@link WriteResult} describing how the tag was written
+     * @throws IOException if an I/O error occurs
+     * @throws NotSupportedException if mp3agic cannot encode the tag
+     */
+    public WriteResult write(Path file, ID3v2 tag) throws IOException, NotSupportedException {
+        tag.setPadding(false);
+        byte[] tagBytes = tag.toBytes();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long existingLength = Math.min(Id3TagReader.tagLength(channel), channel.size());
+            // Padding is not allowed in front of a footer, so such tags only fit if they are equally long
+            boolean fits = tag.hasFooter() ? tagBytes.length == existingLength : tagBytes.length <= existingLength;
+            if (existingLength > 0 && fits) {
+                ByteBuffer region = ByteBuffer.allocate((int) existingLength);
+                region.put(tagBytes);
+                if (!tag.hasFooter()) {
+                    setTagSize(region, (int) existingLength - HEADER_LENGTH);
+                }
+                region.rewind();
+                writeFully(channel, region, 0);
+                return new WriteResult(true, existingLength);
+            }
+            return rewrite(file, channel, existingLength, tagBytes, tag.hasFooter() ? 0 : padding);
+        }
+    }
+
+    private WriteResult rewrite(Path file, FileChannel original, long existingLength, byte[] tagBytes,
+                                int tagPadding) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tagging");
+        long audioLength = original.size() - existingLength;
+        ByteBuffer tagRegion = ByteBuffer.allocate(tagBytes.length + tagPadding);
+        tagRegion.put(tagBytes);
+        if (tagPadding > 0) {
+            setTagSize(tagRegion, tagRegion.capacity() - HEADER_LENGTH);
+        }
+        tagRegion.rewind();
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (tagRegion.hasRemaining()) {
+                out.write(tagRegion);
+            }
+            long copied = 0;
+            while (copied < audioLength) {
+                copied += original.transferTo(existingLength + copied, audioLength - copied, out);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        original.close();
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.listener.rewritten(file);
+        return new WriteResult(false, tagRegion.capacity() + audioLength);
+    }
+
+    /**
+     * Sets the size field of an encoded tag without footer, which counts all bytes of the tag after
+     * its header, padding included.
+     */
+    private static void setTagSize(ByteBuffer tag, int size) {
+        tag.put(6, (byte) ((size >> 21) & 0x7F));
+        tag.put(7, (byte) ((size >> 14) & 0x7F));
+        tag.put(8, (byte) ((size >> 7) & 0x7F));
+        tag.put(9, (byte) (size & 0x7F));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+    }
+}
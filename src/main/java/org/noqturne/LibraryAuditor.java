@@ -0,0 +1,164 @@
+package org.noqturne;
+
+import com.mpatric.mp3agic.InvalidDataException;
+import com.mpatric.mp3agic.UnsupportedTagException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Checks which mp3 files in a library are missing tags that Noqturne would have written. Only the
+ * ID3v2 tags of the files are read, see {@link Id3TagReader#summarize(java.nio.file.Path)}, and many
+ * files are read at the same time, so even large libraries are audited in seconds.
+ */
+public class LibraryAuditor {
+
+    public static final int DEFAULT_THREADS = 16;
+    // Number of files read by a single task, so that tasks are not much cheaper than scheduling them
+    private static final int FILES_PER_TASK = 64;
+    private static final int MAX_FILES_LISTED = 100;
+
+    /**
+     * A tag that an mp3 file tagged by Noqturne has.
+     */
+    public enum Tag {
+        ARTIST("artist"),
+        TITLE("title"),
+        COVER_ART("cover art"),
+        COVER_ART_VID("vId of cover art");
+
+        private final String description;
+
+        Tag(String description) {
+            this.description = description;
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+
+    /**
+     * An mp3 file that is missing one or more tags.
+     *
+     * @param file the mp3 file
+     * @param missing the tags the file does not have
+     */
+    public record Finding(File file, Set<Tag> missing) {}
+
+    /**
+     * Outcome of an audit.
+     *
+     * @param audited number of files audited
+     * @param incomplete files that are missing tags, in the order they were given
+     * @param unreadable files whose tags could not be read
+     */
+    public record AuditReport(int audited, List<Finding> incomplete, List<File> unreadable) {
+
+        public boolean isComplete() {
+            return incomplete.isEmpty() && unreadable.isEmpty();
+        }
+    }
+
+    private final ExecutorService pool;
+
+    /**
+     * @param threads number of files read at the same time
+     */
+    public LibraryAuditor(int threads) {
+        this.pool = TaggingPipeline.newPool("audit", threads);
+    }
+
+    /**
+     * Audits the given mp3 files and waits until all of them have been read.
+     *
+     * @param songs the mp3 files to audit
+     * @return {@link AuditReport} listing the files that are missing tags
+     * @throws InterruptedException if the current Thread is interrupted while waiting
+     */
+    public AuditReport audit(File[] songs) throws InterruptedException {
+        List<Callable<AuditReport>> tasks = new ArrayList<>();
+        for (int from = 0; from < songs.length; from += FILES_PER_TASK) {
+            File[] chunk = Arrays.copyOfRange(songs, from, Math.min(from + FILES_PER_TASK, songs.length));
+            tasks.add(() -> auditChunk(chunk));
+        }
+        List<Finding> incomplete = new ArrayList<>();
+        List<File> unreadable = new ArrayList<>();
+        for (Future<AuditReport> future : this.pool.invokeAll(tasks)) {
+            try {
+                incomplete.addAll(future.get().incomplete());
+                unreadable.addAll(future.get().unreadable());
+            } catch (ExecutionException e) {
+                // auditChunk does not throw, so this only happens on bugs
+                ErrorLogger.runtimeExceptionOccurred(e);
+            }
+        }
+        return new AuditReport(songs.length, incomplete, unreadable);
+    }
+
+    private static AuditReport auditChunk(File[] songs) {
+        List<Finding> incomplete = new ArrayList<>();
+        List<File> unreadable = new ArrayList<>();
+        for (File song : songs) {
+            try {
+                Set<Tag> missing = missingTags(Id3TagReader.summarize(song.toPath()));
+                if (!missing.isEmpty()) {
+                    incomplete.add(new Finding(song, missing));
+                }
+            } catch (IOException | InvalidDataException | UnsupportedTagException e) {
+                unreadable.add(song);
+            }
+        }
+        return new AuditReport(songs.length, incomplete, unreadable);
+    }
+
+    static Set<Tag> missingTags(Id3TagReader.Summary summary) {
+        Set<Tag> missing = EnumSet.noneOf(Tag.class);
+        if (isBlank(summary.artist())) {
+            missing.add(Tag.ARTIST);
+        }
+        if (isBlank(summary.title())) {
+            missing.add(Tag.TITLE);
+        }
+        if (!summary.hasAlbumImage()) {
+            missing.add(Tag.COVER_ART);
+        }
+        if (isBlank(summary.coverArtVId())) {
+            missing.add(Tag.COVER_ART_VID);
+        }
+        return missing;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    /**
+     * Informs the user of the outcome of an audit via the console. Only the first files are listed,
+     * as listing thousands of files would make the console unusable.
+     *
+     * @param report the outcome of the audit
+     */
+    public static void printReport(AuditReport report) {
+        Logger logger = Logger.getLogger();
+        logger.println("Audited " + report.audited() + " song(s), " + report.incomplete().size()
+                + " are missing tags and " + report.unreadable().size() + " could not be read.");
+        List<String> problems = new ArrayList<>();
+        for (Finding finding : report.incomplete()) {
+            problems.add(finding.file().getName() + " is missing: " + finding.missing());
+        }
+        for (File file : report.unreadable()) {
+            problems.add("Could not read tags of " + file.getName());
+        }
+        problems.stream().limit(MAX_FILES_LISTED).forEach(logger::printError);
+        if (problems.size() > MAX_FILES_LISTED) {
+            logger.printError("...and " + (problems.size() - MAX_FILES_LISTED) + " more.");
+        }
+    }
+}
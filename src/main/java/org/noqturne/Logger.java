@@ -1,7 +1,5 @@
 package org.noqturne;
 
-import javax.swing.*;
-
 /**
  * Singleton class for handling all status updates in the program.
  */
@@ -10,8 +8,8 @@ public class Logger {
     private static Logger logger;
 
     /**
-     * This constructor is never called except for the initialization of the GUI.
-     * Keep it like that.
+     * This constructor is never called except for the initialization of the GUI, or by
+     * {@link ConsoleLogger} when running without one. Keep it like that.
      *
      * @param gui the GUI for the logger to attach to
      */
@@ -31,23 +29,25 @@ public class Logger {
      * Prints a string to the GUI for the user to see. Only meant for user-friendly
      * language, no technical specifics.
      * <p>
-     * Simply calls {@link Gui#displayText(String, boolean)}.
+     * Simply calls {@link Gui#displayText(String, boolean)}, which never blocks, so this can be
+     * called from any thread as often as needed.
      *
      * @param string the string to be displayed to the user via the GUI textbox
      */
     public void println(String string) {
-        SwingUtilities.invokeLater(() -> gui.displayText(string + "\n", false));
+        gui.displayText(string + "\n", false);
     }
 
     /**
      * Prints an error string to the GUI for the user to see. Only meant for user-friendly
      * language, no technical specifics. Will display the text in red.
      * <p>
-     * Simply calls {@link Gui#displayText(String, boolean)}.
+     * Simply calls {@link Gui#displayText(String, boolean)}, which never blocks, so this can be
+     * called from any thread as often as needed.
      *
      * @param string the string to be displayed to the user via the GUI textbox
      */
     public void printError(String string) {
-        SwingUtilities.invokeLater(() -> gui.displayText(string + "\n", true));
+        gui.displayText(string + "\n", true);
     }
 }
@@ -2,8 +2,14 @@ package org.noqturne;
 
 import com.formdev.flatlaf.FlatDarkLaf;
 
+import java.awt.*;
+
 public class Main {
     public static void main(String[] args) {
+        // Without a display the GUI cannot start, which the command line then reports as usage error
+        if (args.length > 0 || GraphicsEnvironment.isHeadless()) {
+            System.exit(Cli.run(args));
+        }
         FlatDarkLaf.setup();
         new Gui(false);
     }
@@ -0,0 +1,488 @@
+package org.noqturne;
+
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how long songs spend in each stage of downloading and tagging, how many songs are waiting
+ * for a stage, and how often the caches save a search or a download. This shows whether a slow
+ * batch is waiting on the search, thumbnail downloads, cropping, disk writes or yt-dlp.
+ * <p>
+ * The metrics can be read in three ways: as a summary table at the end of every batch, as JMX MBeans
+ * in the <code>org.noqturne</code> domain, and in Prometheus text format from a local HTTP endpoint,
+ * see {@link #serve(int)}. Recording is lock-free, so it can be done from every thread of the pipeline.
+ */
+public class Metrics {
+
+    private static final String DOMAIN = "org.noqturne";
+    // Upper bounds of the latency buckets in milliseconds, from a cached search to a long download
+    private static final long[] BUCKET_BOUNDS_MILLIS = {1, 5, 10, 25, 50, 100, 250, 500, 1_000, 2_500, 5_000,
+            10_000, 30_000, 60_000, 300_000};
+
+    /**
+     * The stages a song goes through. Download and convert are both done by yt-dlp, the others are
+     * the stages of the {@link TaggingPipeline}.
+     */
+    public enum Stage {
+        DOWNLOAD, CONVERT, SEARCH, FETCH, CROP, SAVE;
+
+        public String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * The caches that are looked in before doing the work of a stage.
+     */
+    public enum Cache {
+        SEARCH("search"), COVER_ART("cover_art");
+
+        private final String label;
+
+        Cache(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    /**
+     * Attributes of a stage as shown by JMX clients such as JConsole.
+     */
+    public interface StageMXBean {
+        long getCount();
+
+        long getErrors();
+
+        long getQueued();
+
+        double getMeanMillis();
+
+        double getP95Millis();
+    }
+
+    /**
+     * Attributes of a cache as shown by JMX clients such as JConsole.
+     */
+    public interface CacheMXBean {
+        long getHits();
+
+        long getMisses();
+
+        double getHitRate();
+    }
+
+    private final Map<Stage, StageMetrics> stages = new EnumMap<>(Stage.class);
+    private final Map<Cache, CacheMetrics> caches = new EnumMap<>(Cache.class);
+    private final LongAdder songsTagged = new LongAdder();
+    private final LongAdder songsFailed = new LongAdder();
+
+    public Metrics() {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new StageMetrics());
+        }
+        for (Cache cache : Cache.values()) {
+            caches.put(cache, new CacheMetrics());
+        }
+    }
+
+    /**
+     * @param stage the stage
+     * @return the metrics of the stage
+     */
+    public StageMetrics stage(Stage stage) {
+        return stages.get(stage);
+    }
+
+    /**
+     * Starts timing a piece of work of a stage, which is recorded once the returned timer is closed.
+     *
+     * @param stage the stage the work belongs to
+     * @return the timer, which counts the work as failed unless {@link Timer#succeeded()} is called before closing it
+     */
+    public Timer startTimer(Stage stage) {
+        return new Timer(stage(stage));
+    }
+
+    /**
+     * @param cache the cache that was looked in
+     * @param hit whether the cache had what was looked for
+     */
+    public void recordCacheLookup(Cache cache, boolean hit) {
+        CacheMetrics metrics = caches.get(cache);
+        (hit ? metrics.hits : metrics.misses).increment();
+    }
+
+    /**
+     * @param tagged whether the song was tagged, <code>false</code> if it failed
+     */
+    public void recordSong(boolean tagged) {
+        (tagged ? songsTagged : songsFailed).increment();
+    }
+
+    /**
+     * Counts and latencies of a single stage. Latencies are kept in fixed buckets, so percentiles are
+     * estimates: the upper bound of the bucket the percentile falls in.
+     */
+    public static class StageMetrics implements StageMXBean {
+        private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_MILLIS.length + 1];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong queued = new AtomicLong();
+
+        private StageMetrics() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * @param nanos how long the work took
+         * @param failed whether the work failed
+         */
+        public void record(long nanos, boolean failed) {
+            long millis = nanos / 1_000_000;
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_MILLIS.length && millis >= BUCKET_BOUNDS_MILLIS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            count.increment();
+            totalNanos.add(nanos);
+            if (failed) {
+                errors.increment();
+            }
+        }
+
+        /**
+         * Counts an error of the stage that was not timed, for instance one reported by yt-dlp.
+         */
+        public void recordError() {
+            errors.increment();
+        }
+
+        /**
+         * Wraps the pool of a stage, so the songs waiting in its queue are counted.
+         *
+         * @param pool the pool performing the work of the stage
+         * @return an Executor that submits to the pool
+         */
+        public Executor queueing(Executor pool) {
+            return work -> {
+                queued.incrementAndGet();
+                try {
+                    pool.execute(() -> {
+                        queued.decrementAndGet();
+                        work.run();
+                    });
+                } catch (RuntimeException e) {
+                    queued.decrementAndGet();
+                    throw e;
+                }
+            };
+        }
+
+        /**
+         * @param change number of songs that started waiting for the stage, negative if they stopped waiting
+         */
+        public void addQueued(long change) {
+            queued.addAndGet(change);
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        @Override
+        public long getQueued() {
+            return queued.get();
+        }
+
+        @Override
+        public double getMeanMillis() {
+            return snapshot().meanMillis();
+        }
+
+        @Override
+        public double getP95Millis() {
+            return snapshot().percentileMillis(0.95);
+        }
+
+        private StageSnapshot snapshot() {
+            long[] counts = new long[buckets.length];
+            for (int i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+            }
+            return new StageSnapshot(count.sum(), errors.sum(), totalNanos.sum(), counts);
+        }
+    }
+
+    private static class CacheMetrics implements CacheMXBean {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        @Override
+        public long getHits() {
+            return hits.sum();
+        }
+
+        @Override
+        public long getMisses() {
+            return misses.sum();
+        }
+
+        @Override
+        public double getHitRate() {
+            long hits = getHits();
+            long lookups = hits + getMisses();
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+    }
+
+    /**
+     * Times a piece of work of a stage, see {@link #startTimer(Stage)}.
+     */
+    public static class Timer implements AutoCloseable {
+        private final StageMetrics stage;
+        private final long start = System.nanoTime();
+        private boolean succeeded;
+
+        private Timer(StageMetrics stage) {
+            this.stage = stage;
+        }
+
+        public void succeeded() {
+            this.succeeded = true;
+        }
+
+        @Override
+        public void close() {
+            stage.record(System.nanoTime() - start, !succeeded);
+        }
+    }
+
+    /**
+     * Counts of a stage at one moment.
+     *
+     * @param count number of times the work of the stage was done
+     * @param errors number of times it failed
+     * @param totalNanos time spent on the work altogether
+     * @param buckets number of times the work took as long as each of the buckets
+     */
+    record StageSnapshot(long count, long errors, long totalNanos, long[] buckets) {
+
+        StageSnapshot minus(StageSnapshot earlier) {
+            long[] difference = new long[buckets.length];
+            for (int i = 0; i < buckets.length; i++) {
+                difference[i] = buckets[i] - earlier.buckets[i];
+            }
+            return new StageSnapshot(count - earlier.count, errors - earlier.errors, totalNanos - earlier.totalNanos, difference);
+        }
+
+        double meanMillis() {
+            return count == 0 ? 0 : totalNanos / 1e6 / count;
+        }
+
+        /**
+         * @return the upper bound of the bucket the percentile falls in, or {@link Double#POSITIVE_INFINITY}
+         * if it is in the last, unbounded bucket
+         */
+        double percentileMillis(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return BUCKET_BOUNDS_MILLIS[i];
+                }
+            }
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * All counts at one moment, so the work done in between two moments can be summarized.
+     */
+    public static class Snapshot {
+        private final Map<Stage, StageSnapshot> stages = new EnumMap<>(Stage.class);
+        private final Map<Cache, long[]> caches = new EnumMap<>(Cache.class);
+    }
+
+    /**
+     * @return the current counts, see {@link #summarize(Snapshot)}
+     */
+    public Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+        stages.forEach((stage, metrics) -> snapshot.stages.put(stage, metrics.snapshot()));
+        caches.forEach((cache, metrics) -> snapshot.caches.put(cache, new long[]{metrics.getHits(), metrics.getMisses()}));
+        return snapshot;
+    }
+
+    /**
+     * Formats the work done since a snapshot was taken as a table with a line per stage that did any
+     * work, followed by a line with the hit rates of the caches.
+     *
+     * @param since the snapshot taken at the start of the period to summarize
+     * @return the lines of the table, empty if no work was done at all
+     */
+    public List<String> summarize(Snapshot since) {
+        Snapshot now = snapshot();
+        List<String> lines = new ArrayList<>();
+        for (Stage stage : Stage.values()) {
+            StageSnapshot done = now.stages.get(stage).minus(since.stages.get(stage));
+            if (done.count() == 0 && done.errors() == 0) {
+                continue;
+            }
+            if (lines.isEmpty()) {
+                lines.add(String.format("%-9s %6s %6s %10s %10s %10s", "Stage", "Count", "Errors", "Total", "Mean", "p95"));
+            }
+            lines.add(String.format("%-9s %6d %6d %10s %10s %10s", stage.label(), done.count(), done.errors(),
+                    formatMillis(done.totalNanos() / 1e6), formatMillis(done.meanMillis()),
+                    "<" + formatMillis(done.percentileMillis(0.95))));
+        }
+        StringJoiner cacheLine = new StringJoiner(", ", "Cache hits: ", "");
+        for (Cache cache : Cache.values()) {
+            long hits = now.caches.get(cache)[0] - since.caches.get(cache)[0];
+            long lookups = hits + now.caches.get(cache)[1] - since.caches.get(cache)[1];
+            if (lookups > 0) {
+                cacheLine.add(cache.label() + " " + hits + "/" + lookups);
+            }
+        }
+        if (cacheLine.length() > "Cache hits: ".length()) {
+            lines.add(cacheLine.toString());
+        }
+        return lines;
+    }
+
+    private static String formatMillis(double millis) {
+        if (Double.isInfinite(millis)) {
+            return "inf";
+        }
+        return millis < 1_000 ? String.format("%.0f ms", millis) : String.format("%.1f s", millis / 1_000);
+    }
+
+    /**
+     * Registers an MBean for every stage and cache with the platform MBean server, under
+     * <code>org.noqturne:type=Stage,name=&lt;stage&gt;</code> and <code>org.noqturne:type=Cache,name=&lt;cache&gt;</code>.
+     *
+     * @throws JMException if the MBeans could not be registered, for instance because another
+     * instance already registered them
+     */
+    public void registerMBeans() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Stage stage : Stage.values()) {
+            server.registerMBean(stages.get(stage), new ObjectName(DOMAIN + ":type=Stage,name=" + stage.label()));
+        }
+        for (Cache cache : Cache.values()) {
+            server.registerMBean(caches.get(cache), new ObjectName(DOMAIN + ":type=Cache,name=" + cache.label()));
+        }
+    }
+
+    /**
+     * Serves the metrics in Prometheus text format on <code>http://127.0.0.1:&lt;port&gt;/metrics</code>.
+     * Only local connections are accepted, other machines should scrape through an agent or tunnel.
+     *
+     * @param port the port to listen on, 0 for any free port
+     * @return the server, which must be stopped when it is no longer needed
+     * @throws IOException if the port could not be opened
+     */
+    public HttpServer serve(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            try (exchange) {
+                if (!exchange.getRequestMethod().equals("GET")) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                byte[] body = toPrometheusText().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "noqturne-metrics");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+        return server;
+    }
+
+    /**
+     * @return the metrics in the Prometheus text exposition format
+     */
+    public String toPrometheusText() {
+        StringBuilder text = new StringBuilder();
+        header(text, "noqturne_stage_duration_seconds", "histogram", "Time the work of a stage took per song");
+        for (Stage stage : Stage.values()) {
+            StageSnapshot snapshot = stages.get(stage).snapshot();
+            String labels = "stage=\"" + stage.label() + "\"";
+            long cumulative = 0;
+            for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+                cumulative += snapshot.buckets()[i];
+                sample(text, "noqturne_stage_duration_seconds_bucket",
+                        labels + ",le=\"" + BUCKET_BOUNDS_MILLIS[i] / 1e3 + "\"", cumulative);
+            }
+            sample(text, "noqturne_stage_duration_seconds_bucket", labels + ",le=\"+Inf\"", snapshot.count());
+            text.append("noqturne_stage_duration_seconds_sum{").append(labels).append("} ")
+                    .append(snapshot.totalNanos() / 1e9).append('\n');
+            sample(text, "noqturne_stage_duration_seconds_count", labels, snapshot.count());
+        }
+        header(text, "noqturne_stage_errors_total", "counter", "Number of times the work of a stage failed");
+        for (Stage stage : Stage.values()) {
+            sample(text, "noqturne_stage_errors_total", "stage=\"" + stage.label() + "\"", stages.get(stage).getErrors());
+        }
+        header(text, "noqturne_stage_queued", "gauge", "Number of songs waiting for a stage");
+        for (Stage stage : Stage.values()) {
+            sample(text, "noqturne_stage_queued", "stage=\"" + stage.label() + "\"", stages.get(stage).getQueued());
+        }
+        header(text, "noqturne_cache_lookups_total", "counter", "Number of lookups in a cache by whether they were a hit");
+        for (Cache cache : Cache.values()) {
+            CacheMetrics metrics = caches.get(cache);
+            sample(text, "noqturne_cache_lookups_total", "cache=\"" + cache.label() + "\",result=\"hit\"", metrics.getHits());
+            sample(text, "noqturne_cache_lookups_total", "cache=\"" + cache.label() + "\",result=\"miss\"", metrics.getMisses());
+        }
+        header(text, "noqturne_songs_total", "counter", "Number of songs that finished tagging by outcome");
+        sample(text, "noqturne_songs_total", "result=\"tagged\"", songsTagged.sum());
+        sample(text, "noqturne_songs_total", "result=\"failed\"", songsFailed.sum());
+        return text.toString();
+    }
+
+    private static void header(StringBuilder text, String name, String type, String help) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder text, String name, String labels, long value) {
+        text.append(name).append('{').append(labels).append("} ").append(value).append('\n');
+    }
+}
@@ -0,0 +1,114 @@
+package org.noqturne;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Differences between the operating systems Noqturne runs on: where its files are kept, what the
+ * binaries it depends on are called, and how arguments are passed to them.
+ */
+public final class Platform {
+
+    private static final String OS_NAME = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+    // Overrides the app folder, for instance to run several instances side by side on a server
+    private static final String HOME_VARIABLE = "NOQTURNE_HOME";
+
+    private Platform() {
+    }
+
+    public static boolean isWindows() {
+        return OS_NAME.startsWith("windows");
+    }
+
+    public static boolean isMac() {
+        return OS_NAME.startsWith("mac");
+    }
+
+    /**
+     * Gets the folder Noqturne keeps its config, caches and binaries in:
+     * <ul>
+     *     <li>Windows: <code>%APPDATA%\Noqturne</code></li>
+     *     <li>macOS: <code>~/Library/Application Support/Noqturne</code></li>
+     *     <li>Linux and others: <code>$XDG_DATA_HOME/noqturne</code>, which defaults to
+     *     <code>~/.local/share/noqturne</code></li>
+     * </ul>
+     * The environment variable <code>NOQTURNE_HOME</code> takes precedence over all of these.
+     *
+     * @return Path of the app folder, which may not exist yet
+     */
+    public static Path appDirectory() {
+        String override = System.getenv(HOME_VARIABLE);
+        if (override != null && !override.isBlank()) {
+            return Paths.get(override);
+        }
+        Path home = Paths.get(System.getProperty("user.home"));
+        if (isWindows()) {
+            String appData = System.getenv("APPDATA");
+            return (appData != null ? Paths.get(appData) : home.resolve("AppData").resolve("Roaming")).resolve("Noqturne");
+        }
+        if (isMac()) {
+            return home.resolve("Library").resolve("Application Support").resolve("Noqturne");
+        }
+        String dataHome = System.getenv("XDG_DATA_HOME");
+        // Relative paths are invalid according to the XDG specification and must be ignored
+        Path base = dataHome != null && Paths.get(dataHome).isAbsolute()
+                ? Paths.get(dataHome) : home.resolve(".local").resolve("share");
+        return base.resolve("noqturne");
+    }
+
+    /**
+     * @param name name of a binary without extension, such as <code>ffmpeg</code>
+     * @return the file name of the binary on this operating system
+     */
+    public static String executableName(String name) {
+        return isWindows() ? name + ".exe" : name;
+    }
+
+    /**
+     * @return the command that starts Python 3, which is <code>python</code> on Windows and
+     * <code>python3</code> elsewhere, where <code>python</code> may be missing or be Python 2
+     */
+    public static String pythonCommand() {
+        return isWindows() ? "python" : "python3";
+    }
+
+    /**
+     * Quotes an argument of a process so it reaches the process unchanged. On Windows the arguments
+     * are joined into a single command line that the process splits again, so arguments are wrapped
+     * in quotes. Elsewhere every argument is passed separately, and quotes would become part of it.
+     *
+     * @param argument the argument
+     * @return the argument to give to {@link ProcessBuilder}
+     */
+    public static String quoteArgument(String argument) {
+        return isWindows() ? "\"" + argument.replace("\"", "\\\"") + "\"" : argument;
+    }
+
+    /**
+     * Searches the folders on the <code>PATH</code> for a binary.
+     *
+     * @param name name of the binary without extension
+     * @return the binary, or <code>null</code> if it is not on the <code>PATH</code>
+     */
+    public static @Nullable Path findOnPath(String name) {
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return null;
+        }
+        for (String directory : path.split(File.pathSeparator)) {
+            if (directory.isBlank()) {
+                continue;
+            }
+            Path candidate = Paths.get(directory).resolve(executableName(name));
+            if (Files.isRegularFile(candidate) && Files.isExecutable(candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+}
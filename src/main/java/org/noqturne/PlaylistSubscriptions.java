@@ -0,0 +1,226 @@
+package org.noqturne;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Playlists the user is subscribed to, so that new songs of these playlists can be downloaded and
+ * tagged without downloading the songs that were downloaded before, see {@link SubscriptionSyncer}.
+ * <p>
+ * The subscriptions are stored in a single file. Every subscription also has an archive: a file
+ * listing the vIds of the songs of the playlist that have been downloaded and tagged, one per line.
+ * Archives are only ever appended to, so a crash loses at most the songs being archived at that time.
+ */
+public class PlaylistSubscriptions {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * A playlist the user is subscribed to.
+     *
+     * @param id identifies the subscription and names its archive, derived from the URL
+     * @param url the URL of the playlist
+     * @param lastSyncedAt when the playlist was last synced in epoch milliseconds, 0 if never
+     */
+    public record Subscription(String id, String url, long lastSyncedAt) {}
+
+    private final Path file;
+    private final Path archiveDir;
+    private final LinkedHashMap<String, Subscription> subscriptions = new LinkedHashMap<>();
+    private int syncIntervalHours;
+
+    /**
+     * Loads the subscriptions from the given file, or starts without subscriptions if it does not exist.
+     *
+     * @param file file the subscriptions are stored in
+     * @param archiveDir folder the archives of the subscriptions are stored in
+     */
+    public PlaylistSubscriptions(Path file, Path archiveDir) {
+        this.file = file;
+        this.archiveDir = archiveDir;
+        load();
+    }
+
+    /**
+     * @return all subscriptions, in the order they were added
+     */
+    public synchronized List<Subscription> list() {
+        return List.copyOf(subscriptions.values());
+    }
+
+    /**
+     * @param url the URL of a playlist
+     * @return the subscription to the playlist, or <code>null</code> if the user is not subscribed to it
+     */
+    public synchronized @Nullable Subscription get(String url) {
+        return subscriptions.get(idOf(url));
+    }
+
+    /**
+     * Subscribes to a playlist. Subscribing to a playlist twice has no effect.
+     *
+     * @param url the URL of the playlist
+     * @return the subscription
+     * @throws IOException if the subscriptions could not be saved
+     */
+    public synchronized Subscription add(String url) throws IOException {
+        url = url.strip();
+        String id = idOf(url);
+        Subscription subscription = subscriptions.get(id);
+        if (subscription == null) {
+            subscription = new Subscription(id, url, 0);
+            subscriptions.put(id, subscription);
+            save();
+        }
+        return subscription;
+    }
+
+    /**
+     * Unsubscribes from a playlist and deletes its archive.
+     *
+     * @param subscription the subscription to remove
+     * @throws IOException if the subscriptions could not be saved
+     */
+    public synchronized void remove(Subscription subscription) throws IOException {
+        if (subscriptions.remove(subscription.id()) != null) {
+            save();
+            Files.deleteIfExists(archiveFile(subscription));
+        }
+    }
+
+    /**
+     * @param subscription the subscription
+     * @return vIds of the songs of the playlist that have already been downloaded and tagged
+     * @throws IOException if the archive exists but could not be read
+     */
+    public Set<String> getArchive(Subscription subscription) throws IOException {
+        Path archive = archiveFile(subscription);
+        if (!Files.exists(archive)) {
+            return new HashSet<>();
+        }
+        Set<String> vIds = new HashSet<>();
+        for (String line : Files.readAllLines(archive, StandardCharsets.UTF_8)) {
+            if (!line.isBlank()) {
+                vIds.add(line.strip());
+            }
+        }
+        return vIds;
+    }
+
+    /**
+     * Adds songs to the archive of a subscription, so they are not downloaded again.
+     *
+     * @param subscription the subscription
+     * @param vIds vIds of songs that have been downloaded and tagged
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized void archive(Subscription subscription, Collection<String> vIds) throws IOException {
+        if (vIds.isEmpty()) {
+            return;
+        }
+        Files.createDirectories(archiveDir);
+        Files.write(archiveFile(subscription), vIds, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Records that a subscription has been synced.
+     *
+     * @param subscription the subscription
+     * @param syncedAt when the sync started in epoch milliseconds
+     * @throws IOException if the subscriptions could not be saved
+     */
+    public synchronized void markSynced(Subscription subscription, long syncedAt) throws IOException {
+        if (subscriptions.containsKey(subscription.id())) {
+            subscriptions.put(subscription.id(), new Subscription(subscription.id(), subscription.url(), syncedAt));
+            save();
+        }
+    }
+
+    /**
+     * @return number of hours between automatic syncs of all subscriptions, 0 if they are not synced automatically
+     */
+    public synchronized int getSyncIntervalHours() {
+        return syncIntervalHours;
+    }
+
+    /**
+     * @param hours number of hours between automatic syncs of all subscriptions, 0 to not sync automatically
+     * @throws IOException if the subscriptions could not be saved
+     */
+    public synchronized void setSyncIntervalHours(int hours) throws IOException {
+        if (hours != syncIntervalHours) {
+            syncIntervalHours = Math.max(0, hours);
+            save();
+        }
+    }
+
+    private Path archiveFile(Subscription subscription) {
+        return archiveDir.resolve(subscription.id() + ".txt");
+    }
+
+    /**
+     * The file is replaced atomically, so a crash while writing never leaves corrupt subscriptions behind.
+     */
+    private void save() throws IOException {
+        ObjectNode root = mapper.createObjectNode()
+                .put("version", FORMAT_VERSION)
+                .put("syncIntervalHours", syncIntervalHours);
+        ArrayNode array = root.putArray("subscriptions");
+        for (Subscription subscription : subscriptions.values()) {
+            array.addObject()
+                    .put("url", subscription.url())
+                    .put("lastSyncedAt", subscription.lastSyncedAt());
+        }
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        mapper.writerWithDefaultPrettyPrinter().writeValue(temp.toFile(), root);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            JsonNode root = mapper.readTree(file.toFile());
+            if (root.path("version").asInt() != FORMAT_VERSION) {
+                return;
+            }
+            syncIntervalHours = root.path("syncIntervalHours").asInt();
+            for (JsonNode node : root.path("subscriptions")) {
+                String url = node.path("url").asText();
+                subscriptions.put(idOf(url), new Subscription(idOf(url), url, node.path("lastSyncedAt").asLong()));
+            }
+        } catch (IOException e) {
+            ErrorLogger.runtimeExceptionOccurred(e, "Could not read playlist subscriptions");
+        }
+    }
+
+    /**
+     * Derives the id of a subscription from its URL, so the same playlist always uses the same archive.
+     */
+    static String idOf(String url) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(url.strip().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
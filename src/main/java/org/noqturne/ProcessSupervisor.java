@@ -0,0 +1,123 @@
+package org.noqturne;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Starts the external processes Noqturne depends on, yt-dlp and Python, and reads their output line
+ * by line on virtual threads. Reading the output of a process mostly means waiting for it, so many
+ * processes can run at the same time without tying up a platform thread for each of their streams.
+ * <p>
+ * The output readers run with the {@link ErrorLogger.Context} of the thread that started the process,
+ * so errors found in the output are logged with the song the process is working on.
+ */
+public final class ProcessSupervisor {
+
+    private ProcessSupervisor() {
+    }
+
+    /**
+     * Receives the lines a process writes to one of its streams, on the thread reading that stream.
+     */
+    @FunctionalInterface
+    public interface LineHandler {
+        void handle(String line);
+    }
+
+    /**
+     * A started process whose output is being read.
+     */
+    public static final class Supervised {
+        private final Process process;
+        private final CompletableFuture<Void> outputRead;
+
+        private Supervised(Process process, CompletableFuture<Void> outputRead) {
+            this.process = process;
+            this.outputRead = outputRead;
+        }
+
+        /**
+         * @return the process, for instance to write to its standard input
+         */
+        public Process process() {
+            return process;
+        }
+
+        /**
+         * @return completes once both output streams have been read to the end, which happens when
+         * the process exits
+         */
+        public CompletableFuture<Void> outputRead() {
+            return outputRead;
+        }
+
+        /**
+         * Waits until the process has exited and all of its output has been handled. The process is
+         * destroyed if the current Thread is interrupted while waiting.
+         *
+         * @return the exit code of the process
+         * @throws InterruptedException if the current Thread is interrupted while waiting
+         */
+        public int waitFor() throws InterruptedException {
+            try {
+                // Unlike Process.waitFor, does not pin the carrier thread of a virtual thread
+                int exitCode = process.onExit().get().exitValue();
+                outputRead.get();
+                return exitCode;
+            } catch (InterruptedException e) {
+                process.destroy();
+                throw e;
+            } catch (ExecutionException e) {
+                // Cannot happen, the readers handle their own failures
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Starts a process and reads its standard output and standard error on two virtual threads.
+     *
+     * @param builder the process to start
+     * @param name name of the process, used for the names of the reader threads
+     * @param stdout receives every line of the standard output
+     * @param stderr receives every line of the standard error
+     * @return the started process
+     * @throws IOException if the process could not be started
+     */
+    public static Supervised start(ProcessBuilder builder, String name, LineHandler stdout, LineHandler stderr) throws IOException {
+        Process process = builder.start();
+        ErrorLogger.Context context = ErrorLogger.currentContext();
+        CompletableFuture<Void> stdoutRead = read(process.getInputStream(), name + "-stdout", stdout, context);
+        CompletableFuture<Void> stderrRead = read(process.getErrorStream(), name + "-stderr", stderr, context);
+        return new Supervised(process, CompletableFuture.allOf(stdoutRead, stderrRead));
+    }
+
+    private static CompletableFuture<Void> read(InputStream stream, String threadName, LineHandler handler,
+                                                ErrorLogger.Context context) {
+        CompletableFuture<Void> read = new CompletableFuture<>();
+        Thread.ofVirtual().name(threadName).start(() -> {
+            try (ErrorLogger.Scope ignored = ErrorLogger.enterContext(context);
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        handler.handle(line);
+                    } catch (RuntimeException e) {
+                        // Reading must go on, a process blocks once the pipe of a stream is full
+                        ErrorLogger.runtimeExceptionOccurred(e);
+                    }
+                }
+            } catch (IOException e) {
+                // The stream was closed, because the process exited or was destroyed
+            } finally {
+                read.complete(null);
+            }
+        });
+        return read;
+    }
+}
@@ -1,51 +1,72 @@
 package org.noqturne;
 
-import org.apache.commons.io.FileUtils;
 import org.noqturne.exceptions.TaggingFolderException;
 import org.jetbrains.annotations.Nullable;
 
+import javax.management.JMException;
 import java.io.*;
 import java.nio.file.*;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Stack;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
 /**
  * Class used for interfacing with runtime dependency files.
  */
 public class ResourceManager {
 
-    private static final Path appDir = Paths.get(System.getenv("APPDATA"), "Noqturne");
+    private static final Path appDir = Platform.appDirectory();
     private static final Path binDir = appDir.resolve("bin");
     private static final Logger logger = Logger.getLogger();
     private static final String PY_FILE = "/coverArt.py";
     private static final String PY_FILE_PREFIX = "coverArt";
     private static final String PY_FILE_SUFFIX = ".py";
-    private static final String TAG_FOLDER_KEY = "TAGGING_FOLDER=";
+    private static final String YT_DLP_RELEASE_URL = "https://github.com/yt-dlp/yt-dlp/releases/download/2025.03.31/";
+    private static final long COVER_ART_SEARCH_IDLE_MILLIS = 60_000;
+    private static Config config;
     private static Path tempPyFilePath;
+    private static CoverArtSearchWorker coverArtSearchWorker;
+    private static YouTubeMusicSearch youTubeMusicSearch;
+    private static long coverArtSearchLastUsed;
+    private static CoverArtCache coverArtCache;
+    private static boolean coverArtCacheUnavailable;
+    private static SearchCache searchCache;
+    private static ThumbnailFetcher thumbnailFetcher;
+    private static PlaylistSubscriptions playlistSubscriptions;
+    private static Metrics metrics;
+    private static @Nullable Path taggingDirectoryOverride;
+    private static boolean ffmpegMissingReported;
+    private static DependencyStatus dependencyStatus;
+    private static CompletableFuture<DependencyStatus.Report> dependencyReport;
+    private static final Object ytMusicApiLock = new Object();
+    private static boolean ytMusicApiInstallAttempted;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(ResourceManager::shutdown, "noqturne-shutdown"));
+    }
 
     /**
      * Gets the Path to the yt-dlp binary used for downloading songs.
-     * The binary will be located in its own folder in %APPDATA%/Roaming, but if it does not
-     * exist there yet, it will download it promptly.
+     * The binary will be located in the bin folder of this app's folder, see {@link Platform#appDirectory()},
+     * but if it does not exist there yet, it will download it promptly.
      * This method also checks whether the ffmpeg binaries needed for the functionality of yt-dlp
-     * are present.
+     * are present. On Windows these are downloaded next to yt-dlp, elsewhere ffmpeg is expected to
+     * be installed by the package manager of the system. Waits for the dependencies to be checked
+     * first, see {@link #getDependencyReport()}.
      *
      * @return Path object pointing directly to the yt-dlp binary
      * @throws IOException if an I/O errors occurs
      */
     public static Path getYtDlpPath() throws IOException {
         Files.createDirectories(binDir);
-        Path ytDlpPath = binDir.resolve("yt-dlp.exe");
+        Path ytDlpPath = binDir.resolve(Platform.executableName("yt-dlp"));
+        DependencyStatus.Report report = awaitDependencies();
 
-        // If yt-dlp has not previously been copied to %APPDATA%/Roaming
-        if (!Files.exists(ytDlpPath)) {
+        // If yt-dlp has not previously been downloaded to the app folder, or does not run
+        if (!report.isAvailable(DependencyStatus.Dependency.YT_DLP)) {
             logger.println("yt-dlp dependency not found, downloading now...");
             FileDownloader ytDlpDownloader = new FileDownloader(Gui.getInstance(),
-                    "https://github.com/yt-dlp/yt-dlp/releases/download/2025.03.31/yt-dlp.exe",
+                    YT_DLP_RELEASE_URL + ytDlpReleaseAsset(),
                     ytDlpPath,
                     "yt-dlp");
             ytDlpDownloader.execute();
@@ -54,80 +75,119 @@ public class ResourceManager {
             } catch (InterruptedException | ExecutionException e) {
                 ErrorLogger.runtimeExceptionOccurred(e);
             }
-            logger.println("yt-dlp.exe downloaded!");
+            if (!Platform.isWindows() && !ytDlpPath.toFile().setExecutable(true)) {
+                throw new IOException("Could not make yt-dlp executable: " + ytDlpPath);
+            }
+            logger.println("yt-dlp downloaded!");
             updateYtDlp(ytDlpPath);
         }
 
         // Checks whether ffmpeg dependencies are present
-        Path ffmpegDependencyPath = binDir.resolve("ffmpeg.exe");
-        if (!Files.exists(ffmpegDependencyPath)) {
-            AbstractWorker ffmpegDownloader = downloadLatestFfmpeg(binDir);
+        boolean ffmpegAvailable = report.isAvailable(DependencyStatus.Dependency.FFMPEG);
+        if (!Platform.isWindows()) {
+            if (!ffmpegAvailable && !ffmpegMissingReported) {
+                ffmpegMissingReported = true;
+                logger.printError("ffmpeg could not be found, install it to be able to download songs");
+            }
+            return ytDlpPath;
+        }
+        if (!ffmpegAvailable) {
+            AbstractWorker ffmpegInstaller = installLatestFfmpeg(binDir);
             try {
-                ffmpegDownloader.get();
+                ffmpegInstaller.get();
             } catch (InterruptedException | ExecutionException e) {
                 ErrorLogger.runtimeExceptionOccurred(e);
             }
-            onFfmpegDownloaded(binDir.resolve("ffmpeg.zip"));
+            dependenciesChanged();
         }
         return ytDlpPath;
     }
 
     /**
-     * Downloads latest ffmpeg builds and puts them in the right folder. Will replace existing builds
-     * if they already exist in that location. Be sure to call {@link ResourceManager#onFfmpegDownloaded(Path)}
-     * after the returned AbstractWorker has finished running.
+     * Gets the checker of the dependencies, which caches their versions in the cache folder of this
+     * app's folder.
      *
-     * @param binDir Path object pointing to the binary folder of this app's AppData folder
-     * @return AbstractWorker denoting the download progress
-     * @throws IOException if an I/O error occurs
+     * @return the {@link DependencyStatus} shared by the whole application
      */
-    private static AbstractWorker downloadLatestFfmpeg(Path binDir) throws IOException {
-        logger.println("Downloading ffmpeg now...");
-        Files.createDirectories(binDir);
-        Path ffmpegZipPath = binDir.resolve("ffmpeg.zip");
+    public static synchronized DependencyStatus getDependencyStatus() {
+        if (dependencyStatus == null) {
+            dependencyStatus = new DependencyStatus(appDir.resolve("cache").resolve("dependencies.json"), binDir);
+        }
+        return dependencyStatus;
+    }
 
-        FileDownloader ffmpegDownloader = new FileDownloader(Gui.getInstance(),
-                "https://github.com/yt-dlp/FFmpeg-Builds/releases/download/latest/ffmpeg-master-latest-win64-gpl.zip",
-                ffmpegZipPath,
-                "ffmpeg");
+    /**
+     * Gets the outcome of checking which dependencies are installed. The first call starts the check in
+     * the background, later calls share it until a dependency is installed or updated.
+     *
+     * @return completes once every dependency has been checked
+     */
+    public static synchronized CompletableFuture<DependencyStatus.Report> getDependencyReport() {
+        if (dependencyReport == null) {
+            dependencyReport = getDependencyStatus().check();
+        }
+        return dependencyReport;
+    }
 
-        ffmpegDownloader.execute();
-        return ffmpegDownloader;
+    /**
+     * Checks the dependencies and installs ytmusicapi in the background, so the GUI can be used in the
+     * meantime. Jobs that need a dependency wait for it themselves.
+     */
+    public static void prepareDependencies() {
+        Thread.ofVirtual().name("noqturne-dependency-preparation")
+                .start(ResourceManager::ensureYtMusicApiInstallation);
     }
 
     /**
-     * Called asynchronously after ffmpeg has been downloaded. Handles the file location and unzipping
-     * of ffmpeg binaries.
+     * Waits for {@link #getDependencyReport()}. This must not be called while holding the lock of this
+     * class, as that would block every other resource until the check is done.
      *
-     * @param ffmpegZipPath Path where the zip file of ffmpeg is located
+     * @return which dependencies are installed
+     * @throws IOException if the check failed or the current Thread was interrupted while waiting
      */
-    private static void onFfmpegDownloaded(Path ffmpegZipPath) {
+    private static DependencyStatus.Report awaitDependencies() throws IOException {
         try {
-            logger.println("ffmpeg.zip downloaded!");
-
-            // Unzips downloaded zip file
-            logger.println("Unzipping...");
-            Path ffmpegUnzippedDirectory = binDir.resolve("ffmpeg_temp");
-            unzip(ffmpegZipPath.toString(), ffmpegUnzippedDirectory.toString());
-            logger.println("Unzipped!");
-
-            // Move files from extracted zip to desired location for yt-dlp
-            logger.println("Moving files...");
-            searchAndMoveFile("ffmpeg.exe", ffmpegUnzippedDirectory, binDir.resolve("ffmpeg.exe"));
-            searchAndMoveFile("ffprobe.exe", ffmpegUnzippedDirectory, binDir.resolve("ffprobe.exe"));
-            searchAndMoveFile("ffplay.exe", ffmpegUnzippedDirectory, binDir.resolve("ffplay.exe"));
-            logger.println("Moving files successful!");
-
-            // Deleting files that will not be used anymore
-            logger.println("Removing remnants...");
-            Files.delete(ffmpegZipPath);
-            FileUtils.deleteDirectory(ffmpegUnzippedDirectory.toFile());
-            logger.println("Removed remnants! Ffmpeg successfully installed!");
-        } catch (IOException e) {
-            ErrorLogger.runtimeExceptionOccurred(e);
+            return getDependencyReport().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while checking the dependencies");
+        } catch (ExecutionException e) {
+            throw new IOException("Could not check the dependencies", e.getCause());
         }
     }
 
+    /**
+     * Makes the next {@link #getDependencyReport()} check the dependencies again, after one of them was
+     * installed or updated.
+     */
+    private static synchronized void dependenciesChanged() {
+        dependencyReport = null;
+    }
+
+    /**
+     * @return name of the yt-dlp release asset that runs on this operating system without Python
+     */
+    private static String ytDlpReleaseAsset() {
+        if (Platform.isWindows()) {
+            return "yt-dlp.exe";
+        }
+        return Platform.isMac() ? "yt-dlp_macos" : "yt-dlp_linux";
+    }
+
+    /**
+     * Downloads the latest ffmpeg build and installs its binaries in the right folder. Will replace
+     * existing binaries if they already exist in that location, see {@link FfmpegInstaller}.
+     *
+     * @param binDir Path object pointing to the binary folder of this app's AppData folder
+     * @return AbstractWorker denoting the download progress
+     */
+    private static AbstractWorker installLatestFfmpeg(Path binDir) {
+        logger.println("Downloading ffmpeg now...");
+        FfmpegInstaller ffmpegInstaller = new FfmpegInstaller(Gui.getInstance(), binDir);
+        ffmpegInstaller.execute();
+        return ffmpegInstaller;
+    }
+
     /**
      * Updates the existing yt-dlp binary with its own update command.
      *
@@ -148,100 +208,42 @@ public class ResourceManager {
         } catch (InterruptedException | IOException e) {
             ErrorLogger.runtimeExceptionOccurred(e);
         }
+        dependenciesChanged();
     }
 
     /**
-     * Slightly modified version of the unzip function found on
-     * <a href="https://www.geeksforgeeks.org/how-to-zip-and-unzip-files-in-java/">GeeksForGeeks</a>
-     * Used to unzip the ffmpeg zip folder after it is downloaded, but can be used to unzip
-     * any arbitrary zip file.
-     *
-     * @param zipFile String representing the file path to the zip file
-     * @param destFolder String representing the file path to the destination folder where the
-     *                   zip file will get unzipped to
-     * @throws IOException if an I/O error occurs
+     * Makes sure ytmusicapi is pip installed. If it isn't, it will automatically install it and log the results.
+     * Installing is only attempted once, after that a missing ytmusicapi is left to the search to report.
      */
-    @SuppressWarnings("SameParameterValue")
-    private static void unzip(String zipFile, String destFolder) throws IOException {
-        try (ZipInputStream zis = new ZipInputStream(new FileInputStream(zipFile))) {
-            ZipEntry entry;
-            byte[] buffer = new byte[1024];
-            while ((entry = zis.getNextEntry()) != null) {
-                File newFile = new File(destFolder + File.separator + entry.getName());
-                if (entry.isDirectory()) {
-                    if (!newFile.exists()) {
-                        if (!newFile.mkdirs()) {
-                            throw new IOException("Failed to create directory: " + newFile.getAbsolutePath());
-                        }
-                    }
-                } else {
-                    File parentDir = newFile.getParentFile();
-                    if (parentDir != null && !parentDir.exists() && !parentDir.mkdirs()) {
-                        throw new IOException("Failed to create directory: " + parentDir.getAbsolutePath());
-                    }
-                    try (FileOutputStream fos = new FileOutputStream(newFile)) {
-                        int length;
-                        while ((length = zis.read(buffer)) > 0) {
-                            fos.write(buffer, 0, length);
-                        }
-                    }
-                }
-            }
+    public static void ensureYtMusicApiInstallation() {
+        if (getConfig().get(Config.SEARCH_PROVIDER) != CoverArtSearch.Provider.YTMUSICAPI) {
+            // Nothing to install, but the check still finds out whether yt-dlp has to be downloaded
+            getDependencyReport();
+            return;
         }
-    }
-
-    /**
-     * Uses an iterative approach to search for a specified file in a specified folder and
-     * will move it to a specified path after finding it.
-     *
-     * @param fileName String denoting the filename of the file to be found
-     * @param pathToSearch Path object representing the folder to search in
-     * @param pathToMove After finding the file, moves it to this specified Path
-     * @throws IOException if an I/O errors occurs
-     */
-    private static void searchAndMoveFile(String fileName, Path pathToSearch, Path pathToMove) throws IOException {
-        File f = pathToSearch.toFile();
-        Stack<File> stack = new Stack<>();
-        stack.push(f);
-
-        while (!stack.empty()) {
-            f = stack.pop();
-            File[] list = f.listFiles();
-            if (list == null) {
-                continue;
-            }
-            for (File file : list) {
-                if (file.isFile() && (file.getName().equals(fileName))) {
-                    Files.move(file.toPath(), pathToMove, StandardCopyOption.REPLACE_EXISTING);
+        synchronized (ytMusicApiLock) {
+            try {
+                DependencyStatus.Report report = awaitDependencies();
+                if (report.isAvailable(DependencyStatus.Dependency.YTMUSICAPI) || ytMusicApiInstallAttempted) {
                     return;
                 }
-                if (file.isDirectory()) {
-                    stack.push(file);
+                ytMusicApiInstallAttempted = true;
+                if (!report.isAvailable(DependencyStatus.Dependency.PYTHON)) {
+                    logger.printError("Python could not be found, install it to be able to tag songs");
+                    return;
                 }
-            }
-        }
-    }
-
-    /**
-     * Makes sure ytmusicapi is pip installed. If it isn't, it will automatically install it and log the results.
-     */
-    public static void ensureYtMusicApiInstallation() {
-        try {
-            Process process = new ProcessBuilder("python", "-m", "pip", "show", "ytmusicapi").start();
-            int exitCode = process.waitFor();
-            // If pip show returns an error, ytmusicapi is not installed yet
-            if (exitCode != 0) {
                 logger.println("Couldn't find Python dependency ytmusicapi, installing now...");
-                process = new ProcessBuilder("python", "-m", "pip", "install", "ytmusicapi").start();
-                exitCode = process.waitFor();
+                Process process = new ProcessBuilder(Platform.pythonCommand(), "-m", "pip", "install", "ytmusicapi").start();
+                int exitCode = process.waitFor();
                 if (exitCode == 0) {
                     logger.println("Successfully installed ytmusicapi Python dependency!");
+                    dependenciesChanged();
                 } else {
                     logger.println("Couldn't install ytmusicapi. Tagging will not work.");
                 }
+            } catch (IOException | InterruptedException e) {
+                ErrorLogger.runtimeExceptionOccurred(e);
             }
-        } catch (IOException | InterruptedException e) {
-            ErrorLogger.runtimeExceptionOccurred(e);
         }
     }
 
@@ -252,7 +254,7 @@ public class ResourceManager {
     private static void updateYtMusicApi() {
         ensureYtMusicApiInstallation();
         try {
-            Process process = new ProcessBuilder("python", "-m", "pip", "install", "ytmusicapi", "-U").start();
+            Process process = new ProcessBuilder(Platform.pythonCommand(), "-m", "pip", "install", "ytmusicapi", "-U").start();
             int exitCode = process.waitFor();
             if (exitCode != 0) {
                 logger.println("Updating ytmusicapi failed!");
@@ -262,7 +264,7 @@ public class ResourceManager {
         } catch (IOException | InterruptedException e) {
             ErrorLogger.runtimeExceptionOccurred(e);
         }
-
+        dependenciesChanged();
     }
 
     /**
@@ -291,6 +293,207 @@ public class ResourceManager {
         return tempPyFilePath;
     }
 
+    /**
+     * Gets the search for the vIds of songs chosen with {@link Config#SEARCH_PROVIDER}.
+     *
+     * @return the {@link CoverArtSearch} shared by the whole application
+     * @throws IOException if an I/O error occurs
+     */
+    public static CoverArtSearch getCoverArtSearch() throws IOException {
+        if (getConfig().get(Config.SEARCH_PROVIDER) == CoverArtSearch.Provider.NATIVE) {
+            return getYouTubeMusicSearch();
+        }
+        return getCoverArtSearchWorker();
+    }
+
+    private static synchronized YouTubeMusicSearch getYouTubeMusicSearch() {
+        if (youTubeMusicSearch == null) {
+            youTubeMusicSearch = new YouTubeMusicSearch(YouTubeMusicSearch.YOUTUBE_MUSIC_SEARCH_URL,
+                    Duration.ofSeconds(getConfig().get(Config.SEARCH_TIMEOUT_SECONDS)));
+        }
+        return youTubeMusicSearch;
+    }
+
+    /**
+     * Gets the worker process used for searching the vIds of songs. The process itself is only started
+     * once the first search is sent to it. If the worker has not been used for a while, it is checked
+     * for being responsive first and replaced if it is not. Waits for ytmusicapi to be installed first,
+     * see {@link #ensureYtMusicApiInstallation()}.
+     *
+     * @return the {@link CoverArtSearchWorker} shared by the whole application
+     * @throws IOException if an I/O error occurs
+     */
+    public static CoverArtSearchWorker getCoverArtSearchWorker() throws IOException {
+        // Outside the lock of this class, installing can take a while
+        ensureYtMusicApiInstallation();
+        CoverArtSearchWorker worker;
+        boolean idle = false;
+        synchronized (ResourceManager.class) {
+            long now = System.currentTimeMillis();
+            if (coverArtSearchWorker == null) {
+                coverArtSearchWorker = new CoverArtSearchWorker(getCoverArtPy(),
+                        getConfig().get(Config.SEARCH_TIMEOUT_SECONDS));
+            } else {
+                idle = now - coverArtSearchLastUsed > COVER_ART_SEARCH_IDLE_MILLIS;
+            }
+            worker = coverArtSearchWorker;
+            // Also makes searches arriving during the check skip it
+            coverArtSearchLastUsed = now;
+        }
+        // A ping can take as long as the search timeout, so it must not hold the lock of this class
+        if (idle && !worker.isHealthy()) {
+            // Stopping the worker makes the next search start a fresh process
+            worker.shutdown();
+        }
+        return worker;
+    }
+
+    /**
+     * Gets the cache of cropped cover art, which is stored in the cache folder of this app's folder.
+     * The cache is opened on first use.
+     *
+     * @return the {@link CoverArtCache} shared by the whole application, or <code>null</code> if it
+     * could not be opened, in which case cover art is simply not cached
+     */
+    public static synchronized @Nullable CoverArtCache getCoverArtCache() {
+        if (coverArtCache == null && !coverArtCacheUnavailable) {
+            try {
+                coverArtCache = new CoverArtCache(appDir.resolve("cache"),
+                        getConfig().get(Config.COVER_ART_CACHE_MB) * 1024L * 1024);
+            } catch (IOException e) {
+                coverArtCacheUnavailable = true;
+                ErrorLogger.runtimeExceptionOccurred(e, "Could not open cover art cache, continuing without it");
+            }
+        }
+        return coverArtCache;
+    }
+
+    /**
+     * @return the folder this app keeps its files in, see {@link Platform#appDirectory()}
+     */
+    public static Path getAppDirectory() {
+        return appDir;
+    }
+
+    /**
+     * Gets the cache of cover art searches, which is stored in the cache folder of this app's folder.
+     * The cache is loaded on first use, and follows the offline mode in the config.
+     *
+     * @return the {@link SearchCache} shared by the whole application
+     */
+    public static synchronized SearchCache getSearchCache() {
+        if (searchCache == null) {
+            Config settings = getConfig();
+            SearchCache cache = new SearchCache(appDir.resolve("cache").resolve("searches.json"),
+                    Duration.ofDays(settings.get(Config.SEARCH_CACHE_TTL_DAYS)), settings.get(Config.SEARCH_CACHE_ENTRIES));
+            cache.setOfflineMode(settings.get(Config.OFFLINE_MODE));
+            settings.addListener(Config.OFFLINE_MODE, cache::setOfflineMode);
+            searchCache = cache;
+        }
+        return searchCache;
+    }
+
+    /**
+     * Gets the fetcher used for downloading thumbnails, whose connections are shared by the whole application.
+     *
+     * @return the {@link ThumbnailFetcher} for YouTube thumbnails
+     */
+    public static synchronized ThumbnailFetcher getThumbnailFetcher() {
+        if (thumbnailFetcher == null) {
+            Config settings = getConfig();
+            thumbnailFetcher = new ThumbnailFetcher(ThumbnailFetcher.YOUTUBE_THUMBNAIL_URL,
+                    Duration.ofSeconds(settings.get(Config.THUMBNAIL_CONNECT_TIMEOUT_SECONDS)),
+                    Duration.ofSeconds(settings.get(Config.THUMBNAIL_READ_TIMEOUT_SECONDS)));
+        }
+        return thumbnailFetcher;
+    }
+
+    /**
+     * Gets the settings of this application, which are read from the config file in this app's folder
+     * on first use and kept in memory after that.
+     *
+     * @return the {@link Config} shared by the whole application
+     */
+    public static synchronized Config getConfig() {
+        if (config == null) {
+            Path configFile = appDir.resolve("config.txt");
+            try {
+                config = Config.load(configFile);
+            } catch (IOException e) {
+                ErrorLogger.runtimeExceptionOccurred(e, "Could not read settings, using the default settings");
+                config = Config.empty(configFile);
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Gets the playlists the user is subscribed to, which are stored next to the config file in this
+     * app's folder. The subscriptions are loaded on first use.
+     *
+     * @return the {@link PlaylistSubscriptions} shared by the whole application
+     */
+    public static synchronized PlaylistSubscriptions getPlaylistSubscriptions() {
+        if (playlistSubscriptions == null) {
+            playlistSubscriptions = new PlaylistSubscriptions(appDir.resolve("subscriptions.json"),
+                    appDir.resolve("archives"));
+        }
+        return playlistSubscriptions;
+    }
+
+    /**
+     * Gets the metrics of downloading and tagging. They are registered as JMX MBeans when first used.
+     *
+     * @return the {@link Metrics} shared by the whole application
+     */
+    public static synchronized Metrics getMetrics() {
+        if (metrics == null) {
+            metrics = new Metrics();
+            try {
+                metrics.registerMBeans();
+            } catch (JMException e) {
+                ErrorLogger.runtimeExceptionOccurred(e, "Could not register metrics with JMX, continuing without them");
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Stops the processes and closes the files this class opened. Called when the application exits.
+     */
+    public static synchronized void shutdown() {
+        if (coverArtSearchWorker != null) {
+            coverArtSearchWorker.shutdown();
+        }
+        if (searchCache != null) {
+            try {
+                searchCache.flush();
+            } catch (IOException e) {
+                ErrorLogger.runtimeExceptionOccurred(e);
+            }
+        }
+        if (coverArtCache != null) {
+            try {
+                coverArtCache.close();
+            } catch (IOException e) {
+                ErrorLogger.runtimeExceptionOccurred(e);
+            }
+            coverArtCache = null;
+        }
+        // Last, so errors while shutting down are logged as well
+        ErrorLogger.flush();
+    }
+
+    /**
+     * Stops the search worker process, the next search starts a new one. Everything else keeps running,
+     * unlike with {@link #shutdown()}.
+     */
+    private static synchronized void stopCoverArtSearchWorker() {
+        if (coverArtSearchWorker != null) {
+            coverArtSearchWorker.shutdown();
+        }
+    }
+
     /**
      * Updates the runtime dependencies of this application.
      * Specifically, this method will update:
@@ -310,11 +513,16 @@ public class ResourceManager {
             protected void executeTask() {
                 try {
                     updateYtDlp(getYtDlpPath());
-                    AbstractWorker ffmpegDownloader = downloadLatestFfmpeg(appDir.resolve("bin"));
+                    // Outside of Windows, ffmpeg is updated by the package manager of the system
+                    AbstractWorker ffmpegInstaller = Platform.isWindows() ? installLatestFfmpeg(binDir) : null;
                     updateYtMusicApi();
+                    // The running search worker still has the old version of ytmusicapi loaded
+                    stopCoverArtSearchWorker();
 
-                    ffmpegDownloader.get();
-                    onFfmpegDownloaded(binDir.resolve("ffmpeg.zip"));
+                    if (ffmpegInstaller != null) {
+                        ffmpegInstaller.get();
+                        dependenciesChanged();
+                    }
                 } catch (IOException | ExecutionException | InterruptedException e) {
                     ErrorLogger.runtimeExceptionOccurred(e);
                 }
@@ -327,37 +535,37 @@ public class ResourceManager {
     }
 
     /**
-     * Gets the folder to tag mp3 files in. This is saved in a config file at %APPDATA%/Roaming.
+     * Gets the folder to tag mp3 files in. This is saved in a config file in this app's folder, unless
+     * it was overridden with {@link #overrideTaggingDirectory(Path)}.
      *
      * @return File object denoting the directory of where the tagging directory is located
      * @throws IOException if an I/O error occurs
      * @throws TaggingFolderException if the tagging folder filepath does not exist
      */
     public static File getTaggingDirectory() throws IOException, TaggingFolderException {
-        Path configFile = appDir.resolve("config.txt");
-        Files.createDirectories(appDir);
-        if (!Files.exists(configFile)) {
+        if (taggingDirectoryOverride != null) {
+            if (!Files.isDirectory(taggingDirectoryOverride)) {
+                throw new TaggingFolderException();
+            }
+            return taggingDirectoryOverride.toFile();
+        }
+        Config settings = getConfig();
+        if (!settings.contains(Config.TAGGING_FOLDER)) {
             setTaggingDirectory(null);
         }
-        List<String> lines = Files.readAllLines(configFile);
-        for (String line : lines) {
-            if (line.startsWith(TAG_FOLDER_KEY)) {
-                Path taggingFolderPath = Paths.get(line.substring(TAG_FOLDER_KEY.length()));
-                if (!Files.exists(taggingFolderPath)) {
-                    throw new TaggingFolderException();
-                }
-                return taggingFolderPath.toFile();
-            }
+        Path taggingFolderPath = settings.get(Config.TAGGING_FOLDER);
+        if (!Files.exists(taggingFolderPath)) {
+            throw new TaggingFolderException();
         }
-        throw new IOException("config file found but without expected key");
+        return taggingFolderPath.toFile();
     }
 
     /**
-     * Sets the directory of where to tag songs in. This will be saved in a config file at
-     * %APPDATA%/Roaming for future use.
+     * Sets the directory of where to tag songs in. This will be saved in a config file in this app's
+     * folder for future use.
      *
      * @param directory Path object denoting where to tag songs in. If this parameter is null,
-     *                  it will set the Windows Downloads folder as its default
+     *                  it will set the Downloads folder in the user's home as its default
      * @throws IOException if an I/O error occurs
      */
     public static void setTaggingDirectory(@Nullable Path directory) throws IOException {
@@ -365,38 +573,26 @@ public class ResourceManager {
             throw new IOException("Directory does not exist: " + directory);
         }
 
-        Path configFile = appDir.resolve("config.txt");
-        Files.createDirectories(appDir);
-        List<String> lines = new ArrayList<>();
-        if (Files.exists(configFile)) {
-            lines = Files.readAllLines(configFile);
-        }
-
         Path effectiveDir;
         if (directory == null) {
-            effectiveDir = Paths.get(System.getProperty("user.home"), "Downloads");
+            effectiveDir = Config.TAGGING_FOLDER.defaultValue();
         } else {
             effectiveDir = directory.toAbsolutePath();
         }
 
-        boolean updated = false;
-        for (int i = 0; i < lines.size(); i++) {
-            if (lines.get(i).startsWith(TAG_FOLDER_KEY)) {
-                String previousDirectory = lines.get(i).substring(TAG_FOLDER_KEY.length());
-                if (previousDirectory.equals(effectiveDir.toString())) {
-                    return;
-                }
-                lines.set(i, TAG_FOLDER_KEY + effectiveDir);
-                updated = true;
-                break;
-            }
-        }
-
-        if (!updated) {
-            lines.add(TAG_FOLDER_KEY + effectiveDir);
+        if (getConfig().set(Config.TAGGING_FOLDER, effectiveDir)) {
+            logger.println("Tagging folder set to: " + effectiveDir);
         }
+    }
 
-        Files.write(configFile, lines, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-        logger.println("Tagging folder set to: " + effectiveDir);
+    /**
+     * Makes this process tag songs in the given folder instead of the folder in the config file,
+     * without changing the config file. Used by the command line, so a batch job does not change the
+     * tagging folder of the user.
+     *
+     * @param directory the folder to tag songs in
+     */
+    public static void overrideTaggingDirectory(Path directory) {
+        taggingDirectoryOverride = directory.toAbsolutePath();
     }
 }
@@ -0,0 +1,189 @@
+package org.noqturne;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Persistent cache of cover art searches, mapping a normalized song name to the vIds the search
+ * returned. Searching for the same song again, for example when re-running a batch after a failure,
+ * then skips YouTube Music entirely.
+ * <p>
+ * Entries expire after a configurable time, after which the song is searched for again. The least
+ * recently used entries are dropped once the cache holds more than a configurable number of entries.
+ * In offline mode, nothing is searched and even expired entries are used, which is why expired
+ * entries are kept, also on disk, until a new search replaces them or they are dropped.
+ */
+public class SearchCache {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final int FORMAT_VERSION = 1;
+    // Additions to song names that do not help finding the song, like "(Official Video)" or "[Lyrics]"
+    private static final Pattern NOISE = Pattern.compile(
+            "[(\\[](?:official\\s+)?(?:music\\s+|lyrics?\\s+|audio\\s+|hd\\s+|hq\\s+)?" +
+                    "(?:video|audio|lyrics?|visuali[sz]er|mv|hd|hq|4k)[)\\]]" +
+                    "|\\b(?:hd|hq|4k)\\b");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private record Entry(List<String> vIds, long searchedAt) {}
+
+    private final Path file;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private volatile boolean offlineMode;
+    // Iterates from least to most recently used
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private boolean dirty;
+
+    /**
+     * Loads the cache from the given file, or starts with an empty cache if the file does not exist.
+     *
+     * @param file file the cache is stored in
+     * @param ttl how long the results of a search stay valid
+     * @param maxEntries maximum number of searches kept in the cache
+     */
+    public SearchCache(Path file, Duration ttl, int maxEntries) {
+        this.file = file;
+        this.ttlMillis = ttl.toMillis();
+        this.maxEntries = maxEntries;
+        load();
+    }
+
+    /**
+     * Normalizes a song name, so that names only differing in case, whitespace or additions such as
+     * "(Official Video)" share a cache entry.
+     *
+     * @param songName the song name to normalize
+     * @return the normalized song name
+     */
+    public static String normalize(String songName) {
+        String normalized = songName.toLowerCase(Locale.ROOT);
+        normalized = NOISE.matcher(normalized).replaceAll(" ");
+        return WHITESPACE.matcher(normalized).replaceAll(" ").strip();
+    }
+
+    /**
+     * Gets the vIds found by an earlier search for a song.
+     *
+     * @param songName the name of the song, does not have to be normalized
+     * @return the vIds, best match first, or <code>null</code> if the song has not been searched for
+     * recently enough
+     */
+    public synchronized @Nullable List<String> get(String songName) {
+        String key = normalize(songName);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!offlineMode && isExpired(entry, System.currentTimeMillis())) {
+            // Kept for offline mode, searching again replaces it
+            return null;
+        }
+        return entry.vIds();
+    }
+
+    /**
+     * Stores the vIds a search for a song returned.
+     *
+     * @param songName the name of the song, does not have to be normalized
+     * @param vIds the vIds, best match first
+     */
+    public synchronized void put(String songName, List<String> vIds) {
+        entries.put(normalize(songName), new Entry(List.copyOf(vIds), System.currentTimeMillis()));
+        dropLeastRecentlyUsed();
+        dirty = true;
+    }
+
+    /**
+     * @return whether only cached searches may be used
+     */
+    public boolean isOfflineMode() {
+        return offlineMode;
+    }
+
+    /**
+     * Sets whether only cached searches may be used. In offline mode, songs that have not been searched
+     * for before get no cover art, and expired entries are still used.
+     *
+     * @param offlineMode true to never search YouTube Music
+     */
+    public void setOfflineMode(boolean offlineMode) {
+        this.offlineMode = offlineMode;
+    }
+
+    /**
+     * Writes the cache to disk if it changed since it was last written. The file is replaced atomically,
+     * so a crash while writing never leaves a corrupt cache behind.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized void flush() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        ObjectNode root = mapper.createObjectNode().put("version", FORMAT_VERSION);
+        ArrayNode array = root.putArray("entries");
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            ObjectNode node = array.addObject()
+                    .put("query", e.getKey())
+                    .put("searchedAt", e.getValue().searchedAt());
+            ArrayNode vIds = node.putArray("vIds");
+            e.getValue().vIds().forEach(vIds::add);
+        }
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        mapper.writeValue(temp.toFile(), root);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dirty = false;
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            JsonNode root = mapper.readTree(file.toFile());
+            if (root.path("version").asInt() != FORMAT_VERSION) {
+                return;
+            }
+            for (JsonNode node : root.path("entries")) {
+                List<String> vIds = new ArrayList<>();
+                node.path("vIds").forEach(vId -> vIds.add(vId.asText()));
+                entries.put(node.path("query").asText(), new Entry(List.copyOf(vIds), node.path("searchedAt").asLong()));
+            }
+            // The maximum may have been lowered since the file was written
+            dropLeastRecentlyUsed();
+        } catch (IOException e) {
+            // A corrupt cache only costs searching again
+            ErrorLogger.runtimeExceptionOccurred(e, "Search cache was corrupt and has been cleared");
+            entries.clear();
+        }
+    }
+
+    private void dropLeastRecentlyUsed() {
+        Iterator<String> eldest = entries.keySet().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.searchedAt() > ttlMillis;
+    }
+}
@@ -0,0 +1,398 @@
+package org.noqturne;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads large files, such as the ffmpeg build, over several connections at once. The file is
+ * split into segments that are requested with HTTP Range requests and written straight to their place
+ * in a preallocated <code>&lt;file&gt;.part</code> file, each on its own virtual thread.
+ * <p>
+ * How far every segment got is kept in a journal next to the file, <code>&lt;file&gt;.part.json</code>.
+ * A download that failed or was interrupted continues where it stopped the next time the same URL is
+ * downloaded to the same file, as long as the server still serves the same version of the file.
+ * Servers that do not support Range requests are downloaded from over a single connection.
+ */
+public class SegmentedDownloader {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long JOURNAL_INTERVAL_NANOS = 1_000_000_000L;
+    private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("bytes \\d+-\\d+/(\\d+)");
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Settings of a downloader.
+     *
+     * @param segments maximum number of segments downloaded at the same time
+     * @param minSegmentBytes smallest size of a segment, smaller files are split into fewer segments
+     * @param retries number of times a segment is requested again after its connection failed
+     * @param progressInterval minimum time between two progress updates
+     * @param stallTimeout time after which a download that receives no bytes at all fails
+     */
+    public record Settings(int segments, long minSegmentBytes, int retries, Duration progressInterval,
+                           Duration stallTimeout) {
+
+        /**
+         * @return settings that suit the downloads of dependencies from GitHub
+         */
+        public static Settings defaults() {
+            return new Settings(4, 1024 * 1024, 3, Duration.ofMillis(250), Duration.ofSeconds(60));
+        }
+    }
+
+    /**
+     * Receives the progress of a download, on the thread calling {@link #download(String, Path, ProgressListener)}.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+
+        /**
+         * @param downloadedBytes number of bytes downloaded so far, including those of an earlier attempt
+         * @param totalBytes size of the file, or -1 if the server did not tell
+         */
+        void progressed(long downloadedBytes, long totalBytes);
+    }
+
+    /**
+     * Part of the file, from <code>start</code> up to and including <code>end</code>.
+     */
+    private static class Segment {
+        private final long start;
+        private final long end;
+        private final AtomicLong written;
+
+        Segment(long start, long end, long written) {
+            this.start = start;
+            this.end = end;
+            this.written = new AtomicLong(written);
+        }
+
+        long position() {
+            return start + written.get();
+        }
+
+        long remaining() {
+            return end + 1 - position();
+        }
+    }
+
+    private final HttpClient client;
+    private final Settings settings;
+
+    /**
+     * @param settings the settings of this downloader
+     */
+    public SegmentedDownloader(Settings settings) {
+        this.client = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+        this.settings = settings;
+    }
+
+    /**
+     * Downloads a file, continuing an earlier download of the same file if there is one. The file is
+     * only moved to its location once it is complete.
+     *
+     * @param url URL to download from. Should directly point to the file
+     * @param target Path to download the file to, replaced if it exists
+     * @param listener receives the progress, at most once per {@link Settings#progressInterval()}
+     * @throws IOException if the file could not be downloaded, in which case the next download continues
+     * where this one stopped
+     * @throws InterruptedException if the current Thread is interrupted while waiting
+     */
+    public void download(String url, Path target, ProgressListener listener) throws IOException, InterruptedException {
+        Path part = target.resolveSibling(target.getFileName() + ".part");
+        Path journal = target.resolveSibling(target.getFileName() + ".part.json");
+        // Asks for the first byte only, which also tells whether the server supports Range requests
+        HttpResponse<InputStream> probe = client.send(rangeRequest(url, 0, 0, null), HttpResponse.BodyHandlers.ofInputStream());
+        long length = totalLength(probe);
+        if (probe.statusCode() == 200) {
+            downloadWhole(probe, part, listener);
+            Files.deleteIfExists(journal);
+        } else if (probe.statusCode() == 206 && length > 0) {
+            probe.body().close();
+            String validator = validator(probe);
+            List<Segment> segments = loadJournal(journal, part, url, length, validator);
+            if (segments == null) {
+                Files.deleteIfExists(part);
+                segments = split(length);
+            }
+            downloadSegments(url, part, journal, length, validator, segments, listener);
+            Files.deleteIfExists(journal);
+        } else {
+            probe.body().close();
+            throw new IOException("Could not download " + url + ", the server responded with " + probe.statusCode());
+        }
+        Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void downloadSegments(String url, Path part, Path journal, long length, @Nullable String validator,
+                                  List<Segment> segments, ProgressListener listener) throws IOException, InterruptedException {
+        long intervalMillis = settings.progressInterval().toMillis();
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            if (channel.size() < length) {
+                // Sets the size of the file up front, so every segment can be written at its position
+                channel.write(ByteBuffer.allocate(1), length - 1);
+            }
+            List<Future<Void>> futures = new ArrayList<>();
+            for (Segment segment : segments) {
+                if (segment.remaining() > 0) {
+                    futures.add(executor.submit(() -> {
+                        downloadSegment(url, validator, segment, channel);
+                        return null;
+                    }));
+                }
+            }
+
+            IOException failure = null;
+            long journalSaved = System.nanoTime();
+            long lastDownloaded = downloaded(segments);
+            long lastChange = System.nanoTime();
+            try {
+                for (Future<Void> future : futures) {
+                    while (failure == null) {
+                        try {
+                            future.get(intervalMillis, TimeUnit.MILLISECONDS);
+                            break;
+                        } catch (TimeoutException e) {
+                            long downloaded = downloaded(segments);
+                            listener.progressed(downloaded, length);
+                            long now = System.nanoTime();
+                            if (downloaded != lastDownloaded) {
+                                lastDownloaded = downloaded;
+                                lastChange = now;
+                            } else if (now - lastChange >= settings.stallTimeout().toNanos()) {
+                                // Reading a response has no timeout of its own
+                                futures.forEach(stalled -> stalled.cancel(true));
+                                failure = new IOException("Download of " + url + " stalled for "
+                                        + settings.stallTimeout().toSeconds() + " seconds");
+                            }
+                            if (now - journalSaved >= JOURNAL_INTERVAL_NANOS) {
+                                saveJournal(journal, channel, url, length, validator, segments);
+                                journalSaved = now;
+                            }
+                        } catch (CancellationException e) {
+                            break;
+                        } catch (ExecutionException e) {
+                            // The other segments go on, so the next download has less left to do
+                            if (failure == null) {
+                                failure = e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+                            }
+                            break;
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                futures.forEach(future -> future.cancel(true));
+                throw e;
+            } finally {
+                if (downloaded(segments) < length) {
+                    saveJournal(journal, channel, url, length, validator, segments);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            listener.progressed(length, length);
+        }
+    }
+
+    /**
+     * Downloads what is left of a segment, requesting it again when the connection fails.
+     */
+    private void downloadSegment(String url, @Nullable String validator, Segment segment, FileChannel channel)
+            throws IOException, InterruptedException {
+        int attempt = 0;
+        while (true) {
+            try {
+                fetchRange(url, validator, segment, channel);
+                return;
+            } catch (IOException e) {
+                if (++attempt > settings.retries()) {
+                    throw e;
+                }
+                Thread.sleep(500L * attempt);
+            }
+        }
+    }
+
+    private void fetchRange(String url, @Nullable String validator, Segment segment, FileChannel channel)
+            throws IOException, InterruptedException {
+        HttpResponse<InputStream> response = client.send(
+                rangeRequest(url, segment.position(), segment.end, validator), HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream in = response.body()) {
+            if (response.statusCode() != 206) {
+                // With If-Range, the server sends the whole file instead when it has changed
+                throw new IOException("Could not download " + url + ", the server responded with "
+                        + response.statusCode() + " to a Range request");
+            }
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while (segment.remaining() > 0
+                    && (read = in.read(buffer, 0, (int) Math.min(buffer.length, segment.remaining()))) != -1) {
+                ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+                long position = segment.position();
+                while (bytes.hasRemaining()) {
+                    position += channel.write(bytes, position);
+                }
+                segment.written.addAndGet(read);
+            }
+        }
+        if (segment.remaining() > 0) {
+            throw new IOException("Connection closed with " + segment.remaining() + " bytes of a segment left");
+        }
+    }
+
+    /**
+     * Downloads the file over a single connection, for servers that do not support Range requests.
+     */
+    private void downloadWhole(HttpResponse<InputStream> response, Path part, ProgressListener listener) throws IOException {
+        long length = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        long intervalNanos = settings.progressInterval().toNanos();
+        long lastProgress = System.nanoTime();
+        long downloaded = 0;
+        try (InputStream in = response.body();
+             FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                downloaded += read;
+                if (System.nanoTime() - lastProgress >= intervalNanos) {
+                    listener.progressed(downloaded, length);
+                    lastProgress = System.nanoTime();
+                }
+            }
+        }
+        listener.progressed(downloaded, length);
+    }
+
+    private static HttpRequest rangeRequest(String url, long start, long end, @Nullable String validator) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .header("Range", "bytes=" + start + "-" + end);
+        if (validator != null) {
+            builder.header("If-Range", validator);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return the size of the whole file as told by the Content-Range header, or -1 if there is none
+     */
+    private static long totalLength(HttpResponse<?> response) {
+        return response.headers().firstValue("Content-Range")
+                .map(CONTENT_RANGE_PATTERN::matcher)
+                .filter(Matcher::matches)
+                .map(matcher -> Long.parseLong(matcher.group(1)))
+                .orElse(-1L);
+    }
+
+    /**
+     * @return the ETag, or otherwise the Last-Modified date, which changes when the file on the server changes
+     */
+    private static @Nullable String validator(HttpResponse<?> response) {
+        return response.headers().firstValue("ETag")
+                .or(() -> response.headers().firstValue("Last-Modified"))
+                .orElse(null);
+    }
+
+    private List<Segment> split(long length) {
+        long count = Math.max(1, Math.min(settings.segments(), length / settings.minSegmentBytes()));
+        long size = (length + count - 1) / count;
+        List<Segment> segments = new ArrayList<>();
+        for (long start = 0; start < length; start += size) {
+            segments.add(new Segment(start, Math.min(start + size, length) - 1, 0));
+        }
+        return segments;
+    }
+
+    private static long downloaded(List<Segment> segments) {
+        return segments.stream().mapToLong(segment -> segment.written.get()).sum();
+    }
+
+    /**
+     * Flushes the part file before writing the journal, so the journal never claims bytes that are not
+     * on disk. The journal is replaced atomically, so a crash while writing never leaves a corrupt one behind.
+     */
+    private static void saveJournal(Path journal, FileChannel channel, String url, long length,
+                                    @Nullable String validator, List<Segment> segments) throws IOException {
+        ObjectNode root = mapper.createObjectNode()
+                .put("version", FORMAT_VERSION)
+                .put("url", url)
+                .put("length", length)
+                .put("validator", validator);
+        ArrayNode array = root.putArray("segments");
+        for (Segment segment : segments) {
+            array.addObject()
+                    .put("start", segment.start)
+                    .put("end", segment.end)
+                    .put("written", segment.written.get());
+        }
+        // After taking the counts, bytes are only counted once they have been written
+        channel.force(false);
+        Path temp = journal.resolveSibling(journal.getFileName() + ".tmp");
+        mapper.writeValue(temp.toFile(), root);
+        Files.move(temp, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the segments of an earlier download of the same version of the file, or <code>null</code>
+     * if there is none to continue
+     */
+    private static @Nullable List<Segment> loadJournal(Path journal, Path part, String url, long length,
+                                                       @Nullable String validator) {
+        if (!Files.exists(journal) || !Files.exists(part)) {
+            return null;
+        }
+        try {
+            JsonNode root = mapper.readTree(journal.toFile());
+            if (root.path("version").asInt() != FORMAT_VERSION
+                    || !root.path("url").asText().equals(url)
+                    || root.path("length").asLong() != length
+                    || !Objects.equals(root.path("validator").textValue(), validator)
+                    || Files.size(part) != length) {
+                return null;
+            }
+            List<Segment> segments = new ArrayList<>();
+            for (JsonNode node : root.path("segments")) {
+                segments.add(new Segment(node.path("start").asLong(), node.path("end").asLong(),
+                        node.path("written").asLong()));
+            }
+            return segments;
+        } catch (IOException e) {
+            // Started over
+            return null;
+        }
+    }
+}
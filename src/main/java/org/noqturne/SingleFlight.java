@@ -0,0 +1,91 @@
+package org.noqturne;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Shares computations between requests for the same key. The first request for a key starts the
+ * computation, every request for that key arriving while it runs gets the same result instead of
+ * computing it again.
+ * <p>
+ * The results of the most recently finished computations are kept as well, so repeated requests get
+ * the same result without relying on a cache that may be missing or may have evicted it. At most a
+ * fixed number of results is kept, so the memory held stays bounded however many keys pass through.
+ * Failed computations are not kept, a later request for the key computes again.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the results
+ */
+public final class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+    private final Map<K, V> results;
+
+    /**
+     * @param retainedResults number of finished results that are kept for repeated requests
+     */
+    public SingleFlight(int retainedResults) {
+        this.results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > retainedResults;
+            }
+        };
+    }
+
+    /**
+     * Gets the result for a key, starting its computation unless it is already running or has finished
+     * recently.
+     *
+     * @param key the key
+     * @param computation starts computing the result of the key, which must not block the calling thread
+     * @return completes with the result of the key, shared by every request for the key
+     */
+    public CompletableFuture<V> get(K key, Supplier<CompletableFuture<V>> computation) {
+        V result = finished(key);
+        if (result != null) {
+            return CompletableFuture.completedFuture(result);
+        }
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = flights.putIfAbsent(key, flight);
+        if (existing != null) {
+            return existing;
+        }
+        // The computation may have finished between looking for its result and starting a new flight
+        result = finished(key);
+        if (result != null) {
+            flights.remove(key, flight);
+            flight.complete(result);
+            return flight;
+        }
+        try {
+            computation.get().whenComplete((computed, e) -> {
+                if (e == null) {
+                    // Kept before the flight ends, so a request never finds neither of them
+                    synchronized (results) {
+                        results.put(key, computed);
+                    }
+                }
+                flights.remove(key, flight);
+                if (e != null) {
+                    flight.completeExceptionally(e);
+                } else {
+                    flight.complete(computed);
+                }
+            });
+        } catch (RuntimeException e) {
+            flights.remove(key, flight);
+            flight.completeExceptionally(e);
+        }
+        return flight;
+    }
+
+    private V finished(K key) {
+        synchronized (results) {
+            return results.get(key);
+        }
+    }
+}
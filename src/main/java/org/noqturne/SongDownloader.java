@@ -1,13 +1,20 @@
 package org.noqturne;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.noqturne.exceptions.TaggingFolderException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -19,13 +26,88 @@ import java.util.regex.Pattern;
  */
 public class SongDownloader {
 
+    private static final String YOUTUBE_WATCH_URL = "https://www.youtube.com/watch?v=";
+    private static final Pattern VIDEO_ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]{11}");
+
+    /**
+     * Concurrency settings of a downloader.
+     *
+     * @param workers number of yt-dlp processes downloading songs of a playlist at the same time
+     * @param concurrentFragments number of fragments of a single song yt-dlp downloads at the same time,
+     *                            for songs that are served in fragments
+     */
+    public record Settings(int workers, int concurrentFragments) {
+
+        /**
+         * @return settings that suit a regular desktop machine and internet connection
+         */
+        public static Settings defaults() {
+            return new Settings(4, 4);
+        }
+
+        /**
+         * @param config the settings of the application
+         * @return the concurrency settings in the config
+         */
+        public static Settings fromConfig(Config config) {
+            return new Settings(config.get(Config.DOWNLOAD_WORKERS), config.get(Config.CONCURRENT_FRAGMENTS));
+        }
+    }
+
+    /**
+     * @return the settings for a download that is starting
+     */
+    private Settings settings() {
+        return this.settings != null ? this.settings : Settings.fromConfig(ResourceManager.getConfig());
+    }
+
     private final Logger logger;
+    private final @Nullable Settings settings;
+    private final ExecutorService workerPool;
+    private final Metrics metrics;
+    private final DownloadProgress progress = new DownloadProgress();
+    private DownloadTracker tracker;
 
     /**
-     * Generic constructor for Downloader. Only attaches the Logger singleton to the class instance.
+     * Generic constructor for Downloader. Attaches the Logger singleton to the class instance and uses
+     * the {@link Settings} in the config of the application, which are read again for every download.
      */
     public SongDownloader() {
+        this(null);
+    }
+
+    /**
+     * @param settings the concurrency settings of this downloader, or <code>null</code> to use the
+     *                 settings in the config of the application
+     */
+    public SongDownloader(@Nullable Settings settings) {
         this.logger = Logger.getLogger();
+        this.settings = settings;
+        // The workers mostly wait for yt-dlp, which virtual threads do without holding a platform thread
+        this.workerPool = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("noqturne-download-", 1).factory());
+        this.metrics = ResourceManager.getMetrics();
+    }
+
+    /**
+     * @return the progress of the songs this downloader is downloading, which listeners can follow
+     */
+    public DownloadProgress getProgress() {
+        return this.progress;
+    }
+
+    /**
+     * Receives songs as soon as yt-dlp has finished downloading and converting them.
+     */
+    @FunctionalInterface
+    public interface DownloadListener {
+
+        /**
+         * @param song the downloaded mp3 file
+         * @return the file the song is in after the listener is done with it, which differs from the
+         * given file if the listener renamed it
+         * @throws InterruptedException if the current Thread is interrupted while handling the song
+         */
+        File songDownloaded(File song) throws InterruptedException;
     }
 
     /**
@@ -39,96 +121,453 @@ public class SongDownloader {
      * @return an array of <code>File</code> objects that point to the downloaded songs.
      */
     public File[] downloadSongs(String url) throws IOException, InterruptedException {
-        HashSet<File> filesNotToTag = new HashSet<>(Arrays.asList(Tagger.getAllMp3Files()));
+        return downloadSongs(url, song -> song);
+    }
+
+    /**
+     * Downloads the songs indicated by the YouTube URL like {@link #downloadSongs(String)}, but hands
+     * every song to the listener as soon as it is downloaded, while later songs of a playlist are still
+     * being downloaded. The listener is called on the current Thread.
+     * <p>
+     * The entries of a playlist are listed first and then downloaded by several yt-dlp processes at
+     * once, see {@link Settings#workers()}. Each process takes the next entry when it is done with its
+     * previous one, so a slow song only holds up a single process.
+     * <p>
+     * Songs are normally reported by yt-dlp itself. Mp3 files that appear in the tagging folder during
+     * the download without being reported are handed to the listener at the end, see {@link DownloadTracker}.
+     *
+     * @param url The URL to the YouTube video or playlist.
+     * @param listener receives each song once it is downloaded
+     * @throws IOException If an I/O error occurs.
+     * @throws InterruptedException if the current Thread is interrupted while waiting.
+     * @return an array of <code>File</code> objects that point to the downloaded songs.
+     */
+    public File[] downloadSongs(String url, DownloadListener listener) throws IOException, InterruptedException {
+        // Resolved once up front, as it may download yt-dlp, which the workers must not all do at once
+        Path ytDlpPath = ResourceManager.getYtDlpPath();
+        List<String> videoIds = listVideoIds(ytDlpPath, url);
+        // A single video, or a playlist that could not be listed, is downloaded by a single process
+        List<String> items = videoIds.size() > 1 ? toWatchUrls(videoIds) : List.of(url);
+        return download(ytDlpPath, items, listener).stream().map(DownloadedSong::file).toArray(File[]::new);
+    }
+
+    /**
+     * A song downloaded by yt-dlp.
+     *
+     * @param videoId vId of the video the song was downloaded from, or <code>null</code> if the song
+     *                was not reported by yt-dlp but found in the tagging folder afterward
+     * @param file the mp3 file the song is in
+     */
+    public record DownloadedSong(@Nullable String videoId, File file) {}
 
-        Process process;
+    /**
+     * Downloads the given videos as songs like {@link #downloadSongs(String, DownloadListener)}.
+     *
+     * @param videoIds vIds of the videos to download
+     * @param listener receives each song once it is downloaded
+     * @return the downloaded songs, with the files as left by the listener
+     * @throws IOException If an I/O error occurs.
+     * @throws InterruptedException if the current Thread is interrupted while waiting.
+     */
+    public List<DownloadedSong> downloadVideos(List<String> videoIds, DownloadListener listener) throws IOException, InterruptedException {
+        if (videoIds.isEmpty()) {
+            return List.of();
+        }
+        return download(ResourceManager.getYtDlpPath(), toWatchUrls(videoIds), listener);
+    }
+
+    private List<DownloadedSong> download(Path ytDlpPath, List<String> items, DownloadListener listener)
+            throws IOException, InterruptedException {
+        DownloadTracker.Session session = openTrackerSession();
+        this.progress.clear();
+        int workerCount = Math.min(items.size(), settings().workers());
+        int total = items.size();
+        if (total > 1) {
+            this.logger.println("Downloading " + total + " songs, "
+                    + workerCount + " at a time...");
+        }
+
+        // Filled by the output readers, so reading the output of yt-dlp never waits for the listener
+        BlockingQueue<DownloadedSong> downloaded = new LinkedBlockingQueue<>();
+        Queue<String> pending = new ConcurrentLinkedQueue<>(items);
+        Metrics.StageMetrics downloadMetrics = this.metrics.stage(Metrics.Stage.DOWNLOAD);
+        downloadMetrics.addQueued(total);
+        AtomicInteger finished = new AtomicInteger();
+        List<Future<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(this.workerPool.submit(() -> {
+                String item;
+                while ((item = pending.poll()) != null) {
+                    downloadMetrics.addQueued(-1);
+                    runYtDlp(ytDlpPath, item, downloaded::add);
+                    if (total > 1) {
+                        this.logger.println("Song download progress: " + finished.incrementAndGet() + " out of " + total);
+                    }
+                }
+                return null;
+            }));
+        }
+
+        List<DownloadedSong> songs = new ArrayList<>();
         try {
-            process = getProcess(url);
+            boolean workersDone = false;
+            while (!workersDone || !downloaded.isEmpty()) {
+                workersDone = workers.stream().allMatch(Future::isDone);
+                DownloadedSong song = downloaded.poll(100, TimeUnit.MILLISECONDS);
+                if (song != null) {
+                    songs.add(handOver(song, session, listener));
+                }
+            }
+            for (Future<Void> worker : workers) {
+                worker.get();
+            }
+            if (session != null) {
+                for (File song : session.unclaimedFiles()) {
+                    songs.add(handOver(new DownloadedSong(null, song), session, listener));
+                }
+            }
+        } catch (InterruptedException e) {
+            workers.forEach(worker -> worker.cancel(true));
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            // Songs that were never started because the download failed or was interrupted
+            while (pending.poll() != null) {
+                downloadMetrics.addQueued(-1);
+            }
+            if (session != null) {
+                session.close();
+            }
+        }
+        return songs;
+    }
+
+    private static List<String> toWatchUrls(List<String> videoIds) {
+        return videoIds.stream().map(videoId -> YOUTUBE_WATCH_URL + videoId).toList();
+    }
+
+    /**
+     * Claims a downloaded song for the current download, so concurrent downloads leave it alone, and
+     * hands it to the listener.
+     *
+     * @return the file the song is in after the listener is done with it
+     */
+    private static DownloadedSong handOver(DownloadedSong song, DownloadTracker.@Nullable Session session,
+                                           DownloadListener listener) throws InterruptedException {
+        if (session != null) {
+            session.claim(song.file());
+        }
+        File handled = listener.songDownloaded(song.file());
+        if (session != null && !handled.equals(song.file())) {
+            session.claim(handled);
+        }
+        return new DownloadedSong(song.videoId(), handled);
+    }
+
+    /**
+     * Tells this downloader that a file was replaced by a rewritten copy of itself, such as when its
+     * tags were written, so a download running at the same time does not take it for a downloaded song.
+     *
+     * @param file the file that was rewritten
+     */
+    public void fileRewritten(File file) {
+        DownloadTracker current;
+        synchronized (this) {
+            current = this.tracker;
+        }
+        if (current != null) {
+            current.claim(file);
+        }
+    }
+
+    /**
+     * Starts recording the mp3 files that appear in the tagging folder.
+     *
+     * @return the session, or <code>null</code> if the tagging folder cannot be watched, in which case
+     * only the songs reported by yt-dlp are handed over
+     */
+    private DownloadTracker.@Nullable Session openTrackerSession() {
+        try {
+            return getTracker().open();
+        } catch (IOException e) {
+            ErrorLogger.runtimeExceptionOccurred(e, "Could not watch tagging folder for downloaded songs");
+            return null;
+        }
+    }
+
+    private synchronized DownloadTracker getTracker() throws IOException {
+        Path taggingDirectory;
+        try {
+            taggingDirectory = ResourceManager.getTaggingDirectory().toPath();
         } catch (TaggingFolderException e) {
             ErrorLogger.runtimeExceptionOccurred("Could not find folder to tag mp3 files in");
             throw new RuntimeException(e);
         }
+        // The tagging folder can be changed in the settings
+        if (this.tracker == null || !this.tracker.getDirectory().equals(taggingDirectory)) {
+            this.tracker = new DownloadTracker(taggingDirectory);
+        }
+        return this.tracker;
+    }
 
-        StreamGobbler outputGobbler = new StreamGobbler(process.getInputStream(), "OUTPUT", this.logger);
-        StreamGobbler errorGobbler = new StreamGobbler(process.getErrorStream(), "ERROR", this.logger);
-
-        outputGobbler.start();
-        errorGobbler.start();
+    /**
+     * Lists the videos of a playlist without downloading anything.
+     *
+     * @param url The URL to the YouTube video or playlist.
+     * @return vIds of the videos in the playlist, a single vId if the URL is a single video, or an empty
+     * list if the URL could not be listed
+     * @throws IOException If yt-dlp cannot be found or downloaded.
+     * @throws InterruptedException if the current Thread is interrupted while waiting.
+     */
+    public List<String> listVideoIds(String url) throws IOException, InterruptedException {
+        return listVideoIds(ResourceManager.getYtDlpPath(), url);
+    }
 
+    private List<String> listVideoIds(Path ytDlpPath, String url) throws InterruptedException {
+        ProcessBuilder pb = new ProcessBuilder(
+                ytDlpPath.toString(),
+                "--flat-playlist",
+                "--print", "id",
+                Platform.quoteArgument(url));
+        List<String> videoIds = new CopyOnWriteArrayList<>();
+        YtDlpOutput output = new YtDlpOutput(this.logger, this.metrics, this.progress, song -> {});
+        ProcessSupervisor.Supervised process;
+        try {
+            process = ProcessSupervisor.start(pb, "yt-dlp-list", line -> {
+                if (VIDEO_ID_PATTERN.matcher(line.trim()).matches()) {
+                    videoIds.add(line.trim());
+                }
+            }, output::errorLine);
+        } catch (IOException e) {
+            ErrorLogger.runtimeExceptionOccurred(e, "Could not list songs of playlist");
+            return List.of();
+        }
         process.waitFor();
-        ArrayList<File> filesToTag = new ArrayList<>();
-        for (File file : Tagger.getAllMp3Files()) {
-            if (!filesNotToTag.contains(file)) {
-                filesToTag.add(file);
-            }
+        output.finish();
+        return List.copyOf(videoIds);
+    }
+
+    /**
+     * Runs a single yt-dlp process and waits until it has exited and all of its output has been read.
+     *
+     * @param ytDlpPath Path object pointing to the yt-dlp binary
+     * @param url The URL to the YouTube video or playlist to download.
+     * @param downloadedSongs receives every song the process reports as downloaded
+     * @throws IOException If an I/O error occurs.
+     * @throws InterruptedException if the current Thread is interrupted while waiting.
+     */
+    private void runYtDlp(Path ytDlpPath, String url, Consumer<DownloadedSong> downloadedSongs) throws IOException, InterruptedException {
+        try (ErrorLogger.Scope ignored = ErrorLogger.enterContext(
+                new ErrorLogger.Context(null, Metrics.Stage.DOWNLOAD.label(), Tagger.getVideoId(url)))) {
+            runYtDlpProcess(ytDlpPath, url, downloadedSongs);
         }
-        File[] output = new File[0];
-        return filesToTag.toArray(output);
     }
 
-    private static @NotNull Process getProcess(String url) throws IOException, TaggingFolderException {
-        Path ytDlpPath = ResourceManager.getYtDlpPath();
+    private void runYtDlpProcess(Path ytDlpPath, String url, Consumer<DownloadedSong> downloadedSongs) throws IOException, InterruptedException {
+        ProcessBuilder pb;
+        try {
+            pb = getProcessBuilder(ytDlpPath, url, settings().concurrentFragments());
+        } catch (TaggingFolderException e) {
+            ErrorLogger.runtimeExceptionOccurred("Could not find folder to tag mp3 files in");
+            throw new RuntimeException(e);
+        }
+        YtDlpOutput output = new YtDlpOutput(this.logger, this.metrics, this.progress, downloadedSongs);
+        ProcessSupervisor.Supervised process = ProcessSupervisor.start(pb, "yt-dlp", output::outputLine, output::errorLine);
+        process.waitFor();
+        output.finish();
+    }
+
+    private static @NotNull ProcessBuilder getProcessBuilder(Path ytDlpPath, String url, int concurrentFragments) throws IOException, TaggingFolderException {
         ProcessBuilder pb = new ProcessBuilder(
                 ytDlpPath.toString(),
-                "--replace-in-metadata", "\"title\"", "\"[\\\"]\"", "\"\"",
+                "--replace-in-metadata",
+                Platform.quoteArgument("title"), Platform.quoteArgument("[\"]"), Platform.quoteArgument(""),
                 "-x",
                 "--audio-format", "mp3",
+                "--concurrent-fragments", String.valueOf(concurrentFragments),
                 "-P", ResourceManager.getTaggingDirectory().toString(),
                 "-o", "%(title)s.%(ext)s",
-                "\"" + url + "\"");
-        return pb.start();
+                // Songs must get the time of download, songs that were not reported are found by it
+                "--no-mtime",
+                // Announces every song once it is converted and moved to its final location
+                "--print", YtDlpOutput.DOWNLOADED_PREFIX + "%(id)s:%(filepath)s",
+                // --print silences the progress output, which is still needed for the progress messages
+                "--no-quiet",
+                // Reports the progress as one JSON object per line instead of redrawing a progress bar
+                "--newline",
+                "--progress-template", Platform.quoteArgument(YtDlpOutput.PROGRESS_TEMPLATE),
+                Platform.quoteArgument(url));
+        // Makes yt-dlp print file paths in UTF-8 regardless of the console encoding
+        pb.environment().put("PYTHONIOENCODING", "utf-8");
+        return pb;
     }
 
     /**
-     * Simple helper class that handles a command line stream and propagates its information
-     * to the logger.
+     * Handles the output of a yt-dlp process and propagates its information to the logger and the
+     * {@link DownloadProgress}. It also times the songs yt-dlp downloads and converts, by the moments
+     * yt-dlp starts converting a song and reports it as done.
+     * <p>
+     * Standard output and standard error are read on different threads, so everything shared between
+     * them is synchronized.
      */
-    private static class StreamGobbler extends Thread {
-        private final BufferedReader reader;
-        private final String streamType;
+    private static class YtDlpOutput {
+        private static final String DOWNLOADED_PREFIX = "after_move:noqturne-file:";
+        private static final String DOWNLOADED_MARKER = "noqturne-file:";
+        private static final String PROGRESS_MARKER = "noqturne-progress:";
+        // Prints <vId>:<JSON object> for every progress update of a download
+        private static final String PROGRESS_TEMPLATE = "download:" + PROGRESS_MARKER + "%(info.id)s:"
+                + "%(progress.{status,downloaded_bytes,total_bytes,total_bytes_estimate,speed,eta})j";
+        private static final String CONVERTING_MARKER = "[ExtractAudio]";
+        private static final Pattern DOWNLOAD_PATTERN = Pattern.compile("Downloading item (\\d+) of (\\d+)");
+        private static final ObjectMapper MAPPER = new ObjectMapper();
+
         private final Logger logger;
+        private final Metrics metrics;
+        private final DownloadProgress progress;
+        private final Consumer<DownloadedSong> downloadedSongs;
+        private final StringBuilder errorText = new StringBuilder();
+        // Start of the current phase of the current song, a process downloads its songs one by one
+        private long phaseStart = System.nanoTime();
+        private boolean converting = false;
 
         /**
-         * Constructs a StreamGobbler instance with a given inputStream.
-         *
-         * @param inputStream The inputStream to be logged.
-         * @param streamType The name of the inputStream type (typically OUTPUT or ERROR).
          * @param logger The Logger instance to be used.
+         * @param metrics The Metrics the downloads and errors are recorded in.
+         * @param progress The DownloadProgress the progress of the songs is recorded in.
+         * @param downloadedSongs receives every song yt-dlp reports as downloaded.
          */
-        public StreamGobbler(InputStream inputStream, String streamType, Logger logger) {
-            this.reader = new BufferedReader(new InputStreamReader(inputStream));
-            this.streamType = streamType;
+        YtDlpOutput(Logger logger, Metrics metrics, DownloadProgress progress, Consumer<DownloadedSong> downloadedSongs) {
             this.logger = logger;
+            this.metrics = metrics;
+            this.progress = progress;
+            this.downloadedSongs = downloadedSongs;
+        }
+
+        void outputLine(String line) {
+            handleLine(line, false);
+        }
+
+        void errorLine(String line) {
+            handleLine(line, true);
+        }
+
+        private void handleLine(String line, boolean error) {
+            if (line.startsWith(PROGRESS_MARKER)) {
+                handleProgress(line.substring(PROGRESS_MARKER.length()));
+                return;
+            }
+            synchronized (this) {
+                if (line.startsWith(CONVERTING_MARKER) && !converting) {
+                    long now = System.nanoTime();
+                    this.metrics.stage(Metrics.Stage.DOWNLOAD).record(now - phaseStart, false);
+                    phaseStart = now;
+                    converting = true;
+                }
+                if (line.startsWith(DOWNLOADED_MARKER)) {
+                    long now = System.nanoTime();
+                    this.metrics.stage(converting ? Metrics.Stage.CONVERT : Metrics.Stage.DOWNLOAD)
+                            .record(now - phaseStart, false);
+                    phaseStart = now;
+                    converting = false;
+                }
+                if (error && line.contains("ERROR")) {
+                    this.metrics.stage(Metrics.Stage.DOWNLOAD).recordError();
+                    this.logger.println("yt-dlp ran into an error!!!");
+                    errorText.append(line).append("\n");
+                }
+            }
+            if (line.startsWith(DOWNLOADED_MARKER)) {
+                // Formatted as <vId>:<file path>, vIds never contain a colon
+                String reported = line.substring(DOWNLOADED_MARKER.length());
+                int separator = reported.indexOf(':');
+                File song = new File(reported.substring(separator + 1));
+                if (song.isFile()) {
+                    String videoId = separator < 0 ? null : reported.substring(0, separator);
+                    this.downloadedSongs.accept(new DownloadedSong(videoId, song));
+                } else {
+                    ErrorLogger.runtimeExceptionOccurred("yt-dlp reported a song that does not exist: " + song);
+                }
+            }
+            Matcher matcher = DOWNLOAD_PATTERN.matcher(line);
+            if (matcher.find()) {
+                String currentItem = matcher.group(1);
+                String totalItems = matcher.group(2);
+                this.logger.println("Song download progress: " + currentItem + " out of " + totalItems);
+            }
         }
 
         /**
-         * Run command to start a new Thread that performs logging on the given inputStream.
+         * @param reported the progress formatted as <code>&lt;vId&gt;:&lt;JSON object&gt;</code>
          */
-        @Override
-        public void run() {
-            try {
-                String line;
-                Pattern downloadPattern = Pattern.compile("Downloading item (\\d+) of (\\d+)");
-                StringBuilder errorText = new StringBuilder();
-                while ((line = reader.readLine()) != null) {
-                    if (streamType.equals("ERROR") && line.contains("ERROR")) {
-                        this.logger.println("yt-dlp ran into an error!!!");
-                        errorText.append(line).append("\n");
-                    }
-                    Matcher matcher = downloadPattern.matcher(line);
-                    if (matcher.find()) {
-                        String currentItem = matcher.group(1);
-                        String totalItems = matcher.group(2);
-                        this.logger.println("Song download progress: " + currentItem + " out of " + totalItems);
-                    }
-                    System.out.println(streamType + "> " + line);
-                }
-                if (!errorText.isEmpty()) {
-                    ErrorLogger.runtimeExceptionOccurred(errorText.toString());
+        private void handleProgress(String reported) {
+            DownloadProgress.Item item = parseProgress(reported);
+            if (item == null) {
+                return;
+            }
+            this.progress.update(item);
+            if (item.isFinished()) {
+                StringBuilder message = new StringBuilder("Downloaded " + item.videoId() + " (")
+                        .append(String.format(Locale.ROOT, "%.1f MB", item.downloadedBytes() / 1e6));
+                if (item.bytesPerSecond() != null) {
+                    message.append(String.format(Locale.ROOT, " at %.1f MB/s", item.bytesPerSecond() / 1e6));
                 }
-            } catch (IOException e) {
-                ErrorLogger.runtimeExceptionOccurred(e);
+                this.logger.println(message.append(")").toString());
+            }
+        }
+
+        /**
+         * Reports the errors yt-dlp ran into, once all of its output has been handled.
+         */
+        synchronized void finish() {
+            if (!errorText.isEmpty()) {
+                ErrorLogger.runtimeExceptionOccurred(errorText.toString());
             }
         }
     }
+
+    /**
+     * Parses a progress update printed by yt-dlp through the progress template.
+     *
+     * @param reported the progress formatted as <code>&lt;vId&gt;:&lt;JSON object&gt;</code>, where
+     *                 values yt-dlp does not know are <code>null</code> or missing
+     * @return the progress, or <code>null</code> if it could not be parsed
+     */
+    static @Nullable DownloadProgress.Item parseProgress(String reported) {
+        int separator = reported.indexOf(':');
+        if (separator <= 0) {
+            return null;
+        }
+        JsonNode json;
+        try {
+            json = YtDlpOutput.MAPPER.readTree(reported.substring(separator + 1));
+        } catch (IOException e) {
+            return null;
+        }
+        if (json == null || !json.isObject()) {
+            return null;
+        }
+        Long totalBytes = longOrNull(json.get("total_bytes"));
+        if (totalBytes == null) {
+            totalBytes = longOrNull(json.get("total_bytes_estimate"));
+        }
+        JsonNode speed = json.get("speed");
+        return new DownloadProgress.Item(
+                reported.substring(0, separator),
+                json.path("status").asText("downloading"),
+                json.path("downloaded_bytes").asLong(0),
+                totalBytes,
+                speed != null && speed.isNumber() ? speed.asDouble() : null,
+                longOrNull(json.get("eta")));
+    }
+
+    private static @Nullable Long longOrNull(@Nullable JsonNode node) {
+        return node != null && node.isNumber() ? Math.round(node.asDouble()) : null;
+    }
 }
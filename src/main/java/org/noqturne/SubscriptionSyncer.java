@@ -0,0 +1,168 @@
+package org.noqturne;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads and tags the songs of subscribed playlists that have not been downloaded before, see
+ * {@link PlaylistSubscriptions}. Syncing can be done on demand or every few hours in the background.
+ */
+public class SubscriptionSyncer {
+
+    /**
+     * Outcome of syncing a playlist.
+     *
+     * @param newSongs number of songs in the playlist that were not in its archive
+     * @param archived number of songs that were downloaded, tagged and archived
+     */
+    public record SyncResult(int newSongs, int archived) {}
+
+    private final PlaylistSubscriptions subscriptions;
+    private final SongDownloader songDownloader;
+    private final Tagger tagger;
+    private final Logger logger;
+    private final ScheduledExecutorService scheduler;
+    private final Object syncLock = new Object();
+    private @Nullable ScheduledFuture<?> scheduledSync;
+
+    /**
+     * @param subscriptions the playlists to sync
+     * @param songDownloader downloads the new songs
+     * @param tagger tags the new songs
+     */
+    public SubscriptionSyncer(PlaylistSubscriptions subscriptions, SongDownloader songDownloader, Tagger tagger) {
+        this.subscriptions = subscriptions;
+        this.songDownloader = songDownloader;
+        this.tagger = tagger;
+        this.logger = Logger.getLogger();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "noqturne-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Syncs all subscriptions one after another. Only one sync runs at a time, a sync that is started
+     * while another is running waits for it.
+     *
+     * @throws InterruptedException if the current Thread is interrupted while syncing
+     */
+    public void syncAll() throws InterruptedException {
+        synchronized (syncLock) {
+            List<PlaylistSubscriptions.Subscription> all = subscriptions.list();
+            if (all.isEmpty()) {
+                logger.println("You are not subscribed to any playlists.");
+                return;
+            }
+            for (PlaylistSubscriptions.Subscription subscription : all) {
+                try {
+                    SyncResult result = sync(subscription);
+                    logger.println("Synced " + subscription.url() + ", " + result.archived() + " out of "
+                            + result.newSongs() + " new song(s) downloaded and tagged.");
+                } catch (IOException e) {
+                    ErrorLogger.runtimeExceptionOccurred(e, "Could not sync playlist " + subscription.url());
+                }
+            }
+        }
+    }
+
+    /**
+     * Downloads and tags the songs of a playlist that are not in its archive yet, and archives the
+     * songs that were tagged successfully. Songs that failed are tried again on the next sync.
+     *
+     * @param subscription the playlist to sync
+     * @return {@link SyncResult} of the sync
+     * @throws IOException if an I/O error occurs
+     * @throws InterruptedException if the current Thread is interrupted while syncing
+     */
+    public SyncResult sync(PlaylistSubscriptions.Subscription subscription) throws IOException, InterruptedException {
+        synchronized (syncLock) {
+            long startedAt = System.currentTimeMillis();
+            logger.println("Syncing " + subscription.url() + "...");
+            List<String> videoIds = songDownloader.listVideoIds(subscription.url());
+            if (videoIds.isEmpty()) {
+                logger.printError("Could not find any songs in " + subscription.url());
+                return new SyncResult(0, 0);
+            }
+            Set<String> archive = subscriptions.getArchive(subscription);
+            List<String> newVideoIds = videoIds.stream().filter(vId -> !archive.contains(vId)).distinct().toList();
+            logger.println(newVideoIds.size() + " new song(s) out of " + videoIds.size());
+
+            TaggingPipeline.Batch batch = tagger.startBatch(null);
+            List<SongDownloader.DownloadedSong> downloaded;
+            try {
+                downloaded = songDownloader.downloadVideos(newVideoIds, song -> {
+                    batch.submit(song);
+                    return song;
+                });
+            } catch (IOException e) {
+                // Songs downloaded before the failure are still tagged, but only archived by the next sync
+                tagger.finishBatch(batch);
+                throw e;
+            }
+            Set<File> failed = new HashSet<>(tagger.finishBatch(batch).failed());
+            List<String> tagged = downloaded.stream()
+                    .filter(song -> song.videoId() != null && !failed.contains(song.file()))
+                    .map(SongDownloader.DownloadedSong::videoId)
+                    .distinct()
+                    .toList();
+            subscriptions.archive(subscription, tagged);
+            subscriptions.markSynced(subscription, startedAt);
+            return new SyncResult(newVideoIds.size(), tagged.size());
+        }
+    }
+
+    /**
+     * Syncs all subscriptions every few hours in the background, replacing any earlier schedule. The
+     * first sync happens once the interval has passed since the least recently synced subscription was
+     * synced, so closing the app does not postpone syncing.
+     *
+     * @param hours number of hours between syncs, 0 to stop syncing in the background
+     */
+    public synchronized void schedule(int hours) {
+        if (scheduledSync != null) {
+            // Does not interrupt a sync that is already running
+            scheduledSync.cancel(false);
+            scheduledSync = null;
+        }
+        if (hours <= 0) {
+            return;
+        }
+        long interval = TimeUnit.HOURS.toMillis(hours);
+        long leastRecentSync = subscriptions.list().stream()
+                .mapToLong(PlaylistSubscriptions.Subscription::lastSyncedAt)
+                .min()
+                .orElse(System.currentTimeMillis());
+        long initialDelay = Math.max(0, leastRecentSync + interval - System.currentTimeMillis());
+        scheduledSync = scheduler.scheduleWithFixedDelay(this::syncInBackground,
+                initialDelay, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void syncInBackground() {
+        try {
+            syncAll();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // An exception would cancel all later syncs
+            ErrorLogger.runtimeExceptionOccurred(e);
+        }
+    }
+
+    /**
+     * Stops syncing in the background.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -8,16 +8,14 @@ import org.noqturne.exceptions.VIdException;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -29,10 +27,43 @@ public class Tagger {
     // File filter for sorting mp3 files
     private final static FileFilter filter = file -> file.getName().endsWith(".mp3");
     public static final String MIME_TYPE = "image/jpeg";
+    // Written in front of the vId in the comment tag, so it can later be seen where the cover art came from
+    static final String COVER_ART_COMMENT_PREFIX = "vId of cover art:";
     private final Logger logger;
+    private final TaggingPipeline pipeline;
+    private final CoverArtProcessor coverArtProcessor;
+    private final Id3TagWriter tagWriter;
+    private final Metrics metrics;
+    private final List<Id3TagWriter.RewriteListener> rewriteListeners = new CopyOnWriteArrayList<>();
 
+    /**
+     * Creates a Tagger whose pipeline follows the concurrency settings in the config of the application,
+     * see {@link TaggingPipeline#followConfig(Config)}.
+     */
     public Tagger() {
+        this(TaggingPipeline.Settings.fromConfig(ResourceManager.getConfig()));
+        this.pipeline.followConfig(ResourceManager.getConfig());
+    }
+
+    /**
+     * @param settings the concurrency settings of the pipeline tagging multiple songs at once
+     */
+    public Tagger(TaggingPipeline.Settings settings) {
+        this(settings, new CoverArtProcessor(ResourceManager.getConfig().get(Config.JPEG_QUALITY)),
+                ResourceManager.getConfig().get(Config.TAG_PADDING_KB) * 1024);
+    }
+
+    /**
+     * @param settings the concurrency settings of the pipeline tagging multiple songs at once
+     * @param coverArtProcessor crops thumbnails into cover art
+     * @param tagPadding number of bytes of padding given to a tag when the whole file has to be rewritten
+     */
+    Tagger(TaggingPipeline.Settings settings, CoverArtProcessor coverArtProcessor, int tagPadding) {
         this.logger = Logger.getLogger();
+        this.coverArtProcessor = coverArtProcessor;
+        this.tagWriter = new Id3TagWriter(tagPadding, file -> this.rewriteListeners.forEach(listener -> listener.rewritten(file)));
+        this.metrics = ResourceManager.getMetrics();
+        this.pipeline = new TaggingPipeline(this, settings);
     }
 
     /**
@@ -57,29 +88,112 @@ public class Tagger {
     /**
      * When this function is called, it iterates over all mp3 files in the tagging folder and tags them with
      * an artist tag, title tag, and cover art, of which the last is always performed automatically.
+     * The songs are tagged concurrently by the {@link TaggingPipeline} of this Tagger.
      *
      * @param arrayOfSongs <code>null</code> in case you simply want all files in the tagging folder to
      *                     be tagged, otherwise they can be specified as a <code>File</code> array and
      *                     then only those files will be tagged
-     * @throws IOException if an I/O error occurs
+     * @return {@link TaggingPipeline.BatchResult} summarizing which songs could not be tagged
+     * @throws InterruptedException if the current Thread is interrupted while waiting for the batch
      * @throws NoSongFoundException if there is no mp3 file in the tagging folder
      */
-    public void tagAllFiles(@Nullable File[] arrayOfSongs) throws IOException, InterruptedException, NotSupportedException, NoSongFoundException {
+    public TaggingPipeline.BatchResult tagAllFiles(@Nullable File[] arrayOfSongs) throws InterruptedException, NoSongFoundException {
+        return tagAllFiles(arrayOfSongs, null);
+    }
 
+    /**
+     * Tags all given mp3 files with an artist tag and title tag. If a vId is given, every song gets the
+     * cover art of that vId, otherwise the cover art of each song is searched for automatically.
+     *
+     * @param arrayOfSongs <code>null</code> to tag all files in the tagging folder, otherwise the
+     *                     <code>File</code> objects to tag
+     * @param vId vId of the cover art all songs are to be tagged with, or <code>null</code> to search
+     *            for the cover art of every song separately
+     * @return {@link TaggingPipeline.BatchResult} summarizing which songs could not be tagged
+     * @throws InterruptedException if the current Thread is interrupted while waiting for the batch
+     * @throws NoSongFoundException if there are no mp3 files to tag
+     */
+    public TaggingPipeline.BatchResult tagAllFiles(@Nullable File[] arrayOfSongs, @Nullable String vId) throws InterruptedException, NoSongFoundException {
         File[] songs;
         if (arrayOfSongs != null) {
             songs = arrayOfSongs;
         } else {
             songs = getAllMp3Files();
         }
-        if (songs != null && songs.length != 0) {
-            for (File mp3 : songs) {
-                genericTagFile(mp3.getAbsolutePath());
-            }
-        } else {
+        if (songs == null || songs.length == 0) {
             this.logger.println("There are no songs in your tagging folder!");
             throw new NoSongFoundException();
         }
+        try {
+            return this.pipeline.tagAll(songs, vId);
+        } finally {
+            flushSearchCache();
+        }
+    }
+
+    /**
+     * Starts a batch of songs that are tagged while more songs are still being added to it, see
+     * {@link TaggingPipeline#startBatch(String)}. Must be finished with {@link #finishBatch(TaggingPipeline.Batch)}.
+     *
+     * @param vId vId of the cover art all songs are to be tagged with, or <code>null</code> to search
+     *            for the cover art of every song separately
+     * @return the new, empty batch
+     */
+    public TaggingPipeline.Batch startBatch(@Nullable String vId) {
+        return this.pipeline.startBatch(vId);
+    }
+
+    /**
+     * Starts a batch like {@link #startBatch(String)} that tells the given listener the outcome of
+     * every song as soon as it is known.
+     *
+     * @param vId vId of the cover art all songs are to be tagged with, or <code>null</code> to search
+     *            for the cover art of every song separately
+     * @param listener is told the outcome of every song
+     * @return the new, empty batch
+     */
+    public TaggingPipeline.Batch startBatch(@Nullable String vId, TaggingPipeline.SongListener listener) {
+        return this.pipeline.startBatch(vId, listener);
+    }
+
+    /**
+     * Waits until all songs of a batch started with {@link #startBatch(String)} have been tagged.
+     *
+     * @param batch the batch to finish
+     * @return {@link TaggingPipeline.BatchResult} summarizing which songs could not be tagged
+     * @throws InterruptedException if the current Thread is interrupted while waiting for the batch
+     */
+    public TaggingPipeline.BatchResult finishBatch(TaggingPipeline.Batch batch) throws InterruptedException {
+        try {
+            return batch.await();
+        } finally {
+            flushSearchCache();
+        }
+    }
+
+    private static void flushSearchCache() {
+        try {
+            ResourceManager.getSearchCache().flush();
+        } catch (IOException e) {
+            ErrorLogger.runtimeExceptionOccurred(e, "Could not save search cache");
+        }
+    }
+
+    /**
+     * Tells the given listener about every mp3 file this Tagger replaces with a rewritten copy of itself,
+     * see {@link Id3TagWriter}.
+     *
+     * @param listener is told about every file that was rewritten
+     */
+    public void addRewriteListener(Id3TagWriter.RewriteListener listener) {
+        this.rewriteListeners.add(listener);
+    }
+
+    /**
+     * @return the pipeline this Tagger uses for tagging multiple songs at once
+     */
+    public TaggingPipeline getPipeline() {
+        return this.pipeline;
     }
 
     /**
@@ -90,27 +204,21 @@ public class Tagger {
      * @throws IOException if an I/O error occurs
      */
     public void genericTagFile(String filePath) throws IOException, InterruptedException, NotSupportedException {
-        Mp3File mp3file;
-        try {
-            mp3file = loadMp3File(filePath);
-        } catch (Exception e) {
-            this.logger.printError("Couldn't find valid cover art, skipping cover art for this file.");
-            return;
-        }
-
-        ID3v2 id3v2Tag = getId3v2Tag(filePath, mp3file);
         String songName = getSongName(filePath);
-        try {
-            CoverArtResult coverArtResult = getCoverArt(songName);
-            byte[] img = coverArtResult.coverArt();
-            id3v2Tag.setAlbumImage(img, MIME_TYPE);
-            String vId = coverArtResult.vId();
-            id3v2Tag.setComment("vId of cover art:" + vId);
-        } catch (VIdException | CoverArtSearchEmptyException e) {
-            this.logger.printError("Couldn't find valid cover art, skipping cover art for " + songName);
-        }
+        this.logger.println("Tagging " + songName + " now...");
+        byte[] img = null;
+        String vId = null;
+        try (ErrorLogger.Scope ignored = ErrorLogger.enterContext(new ErrorLogger.Context(filePath, null, null))) {
+            try {
+                CoverArtResult coverArtResult = getCoverArt(songName);
+                img = coverArtResult.coverArt();
+                vId = coverArtResult.vId();
+            } catch (VIdException | CoverArtSearchEmptyException e) {
+                this.logger.printError("Couldn't find valid cover art, skipping cover art for " + songName);
+            }
 
-        saveMP3FileWithCover(filePath, mp3file);
+            writeTags(filePath, img, vId);
+        }
     }
 
     /**
@@ -122,57 +230,75 @@ public class Tagger {
      * @throws IOException if an I/O error occurs
      */
     public void tagIndividualFile(String filePath, String vId) throws IOException, NotSupportedException {
-        Mp3File mp3file = loadMp3File(filePath);
-        ID3v2 id3v2Tag = getId3v2Tag(filePath, mp3file);
-
-        byte[] img = getCroppedImageFromVID(vId);
-        id3v2Tag.setAlbumImage(img, MIME_TYPE);
-        id3v2Tag.setComment("vId of cover art:" + vId);
-
-        saveMP3FileWithCover(filePath, mp3file);
-    }
-
-    private static void saveMP3FileWithCover(String filePath, Mp3File mp3file) throws IOException, NotSupportedException {
-        File tempMp3File = File.createTempFile("temp", ".mp3");
-        mp3file.save(tempMp3File.getAbsolutePath()); // Save to temporary file
-
-        // Replace original file with the temporary file
-        Files.move(tempMp3File.toPath(), new File(filePath).toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        this.logger.println("Tagging " + getSongName(filePath) + " now...");
+        try (ErrorLogger.Scope ignored = ErrorLogger.enterContext(new ErrorLogger.Context(filePath, null, vId))) {
+            byte[] img = getCroppedImageFromVID(vId);
+            writeTags(filePath, img, vId);
+        }
     }
 
-    private static ID3v2 getId3v2Tag(String filePath, Mp3File mp3file) {
-        String songName = getSongName(filePath);
-
-        Logger.getLogger().println("Tagging " + songName + " now...");
-        String[] splitSong = songName.split(" - ");
-        ID3v2 id3v2Tag = addArtistAndSongname(splitSong, mp3file);
-        if (id3v2Tag == null) {
-            if (mp3file.hasId3v2Tag()) {
-                id3v2Tag = mp3file.getId3v2Tag();
-            } else {
-                // Mp3 does not have an ID3v2 tag, let's create one
-                id3v2Tag = new ID3v24Tag();
-                mp3file.setId3v2Tag(id3v2Tag);
+    /**
+     * Writes the artist, title and, if present, the cover art tags to an mp3 file. This is the
+     * last stage of tagging a song and the only one that touches the mp3 file itself.
+     *
+     * @param filePath file path to the mp3 file to be tagged
+     * @param coverArt cropped cover art (mimeType jpeg), or <code>null</code> to leave the cover art as is
+     * @param vId vId of the cover art, only used when <code>coverArt</code> is not <code>null</code>
+     * @throws IOException if an I/O error occurs
+     */
+    void writeTags(String filePath, @Nullable byte[] coverArt, @Nullable String vId) throws IOException, NotSupportedException {
+        try (Metrics.Timer timer = this.metrics.startTimer(Metrics.Stage.SAVE)) {
+            Path file = Paths.get(filePath);
+            ID3v2 id3v2Tag = loadId3v2Tag(file);
+            addArtistAndSongname(getSongName(filePath).split(" - "), id3v2Tag, filePath);
+            if (coverArt != null) {
+                id3v2Tag.setAlbumImage(coverArt, MIME_TYPE);
+                id3v2Tag.setComment(COVER_ART_COMMENT_PREFIX + vId);
             }
+            saveMP3FileWithCover(file, id3v2Tag);
+            timer.succeeded();
         }
-        return id3v2Tag;
     }
 
-    private static @NotNull String getSongName(String filePath) {
+    /**
+     * Writes the ID3v2 tag of an mp3 file to disk. When the tag fits in the space the file already has
+     * for it, only that space is overwritten, see {@link Id3TagWriter}.
+     *
+     * @param file the mp3 file
+     * @param id3v2Tag the tag to write
+     * @return {@link Id3TagWriter.WriteResult} describing how the tag was written
+     * @throws IOException if an I/O error occurs
+     */
+    Id3TagWriter.WriteResult saveMP3FileWithCover(Path file, ID3v2 id3v2Tag) throws IOException, NotSupportedException {
+        return this.tagWriter.write(file, id3v2Tag);
+    }
+
+    static @NotNull String getSongName(String filePath) {
         String fullSongName = Paths.get(filePath).getFileName().toString();
         return fullSongName.substring(0, fullSongName.length() - 4);
     }
 
-    private static @NotNull Mp3File loadMp3File(String filePath) throws IOException {
-        Mp3File mp3file;
+    /**
+     * Reads the ID3v2 tag of an mp3 file, without reading the audio of the file, see {@link Id3TagReader}.
+     *
+     * @param file the mp3 file
+     * @return the ID3v2 tag of the file, or a new empty tag if it does not have one yet
+     * @throws IOException if an I/O error occurs
+     */
+    static @NotNull ID3v2 loadId3v2Tag(Path file) throws IOException {
+        ID3v2 id3v2Tag;
         try {
-            mp3file = new Mp3File(filePath);
+            id3v2Tag = Id3TagReader.read(file);
         } catch (InvalidDataException | UnsupportedTagException e) {
             // This should never happen, as this function is only ever called with MP3 files.
             ErrorLogger.runtimeExceptionOccurred(e);
             throw new RuntimeException();
         }
-        return mp3file;
+        if (id3v2Tag == null) {
+            // Mp3 does not have an ID3v2 tag, let's create one
+            id3v2Tag = new ID3v24Tag();
+        }
+        return id3v2Tag;
     }
 
     /**
@@ -180,28 +306,18 @@ public class Tagger {
      *
      * @param splitSong array of 2 (or more) elements. First element is the artist, second
      *                  element is the song title
-     * @param mp3file Mp3File object of the mp3 file to be tagged
-     * @return ID3v2 tag of the associated mp3 file, ready for more tags to be added
-     * to it
+     * @param id3v2Tag ID3v2 tag of the mp3 file to be tagged
+     * @param filePath file path to the mp3 file, used to inform the user when tagging fails
      */
-    private static ID3v2 addArtistAndSongname(String[] splitSong, Mp3File mp3file) {
-        ID3v2 id3v2Tag = null;
+    static void addArtistAndSongname(String[] splitSong, ID3v2 id3v2Tag, String filePath) {
         if (splitSong.length >= 2) {
-            if (mp3file.hasId3v2Tag()) {
-                id3v2Tag = mp3file.getId3v2Tag();
-            } else {
-                // mp3 does not have an ID3v2 tag, let's create one
-                id3v2Tag = new ID3v24Tag();
-                mp3file.setId3v2Tag(id3v2Tag);
-            }
             id3v2Tag.setArtist(splitSong[0]);
             id3v2Tag.setTitle(String.join("", Arrays.copyOfRange(splitSong, 1, splitSong.length)));
         } else {
             Logger.getLogger().printError("Could not tag artist and song fields of "
-                    + mp3file.getFilename()
+                    + filePath
                     + " because filename is not in the format of artist - songname");
         }
-        return id3v2Tag;
     }
 
     /**
@@ -221,26 +337,10 @@ public class Tagger {
      * @throws VIdException if the cover art finder would error on a cover art instance
      */
     private CoverArtResult getCoverArt(String songName) throws IOException, InterruptedException, CoverArtSearchEmptyException, VIdException {
-        Path filePath = ResourceManager.getCoverArtPy();
-        ProcessBuilder pb = new ProcessBuilder()
-                .command("python", "-u", filePath.toString(), songName);
-        Process p = pb.start();
-        BufferedReader in = new BufferedReader(
-                new InputStreamReader(p.getInputStream()));
-        String buffer;
-        ArrayList<String> fullOutput = new ArrayList<>();
-        while ((buffer = in.readLine()) != null){
-            fullOutput.add(buffer);
-        }
-        p.waitFor();
-        if (fullOutput.isEmpty()) {
-            ErrorLogger.runtimeExceptionOccurred("Cover art searching failed with the Python script returning no stdout output, " +
-                    "have you pip installed ytmusicapi?");
-            throw new CoverArtSearchEmptyException();
-        }
-        in.close();
-        for (String vId : fullOutput) {
-            try {
+        List<String> vIds = getCachedVIds(songName);
+        for (String vId : vIds != null ? vIds : searchVIds(songName)) {
+            try (ErrorLogger.Scope ignored = ErrorLogger.enterContext(
+                    new ErrorLogger.Context(ErrorLogger.currentContext().file(), null, vId))) {
                 byte[] coverArt = getCroppedImageFromVID(vId);
                 return new CoverArtResult(coverArt, vId);
             } catch (IOException e) {
@@ -251,6 +351,49 @@ public class Tagger {
         throw new VIdException();
     }
 
+    /**
+     * Searches YouTube Music for a song and returns the vIds of the results, best match first. The
+     * results are stored in the {@link SearchCache}, which callers look in first with
+     * {@link #getCachedVIds(String)}, so this method always searches.
+     *
+     * @param songName the name of the song to search for
+     * @return list of vIds, never empty
+     * @throws CoverArtSearchEmptyException if the cover art finder finds no video IDs at all
+     */
+    List<String> searchVIds(String songName) throws InterruptedException, CoverArtSearchEmptyException {
+        SearchCache searchCache = ResourceManager.getSearchCache();
+        if (searchCache.isOfflineMode()) {
+            throw new CoverArtSearchEmptyException();
+        }
+        List<String> vIds;
+        try (Metrics.Timer timer = this.metrics.startTimer(Metrics.Stage.SEARCH)) {
+            vIds = ResourceManager.getCoverArtSearch().search(songName);
+            timer.succeeded();
+        } catch (IOException e) {
+            boolean ytMusicApi = ResourceManager.getConfig().get(Config.SEARCH_PROVIDER) == CoverArtSearch.Provider.YTMUSICAPI;
+            ErrorLogger.runtimeExceptionOccurred(e, ytMusicApi
+                    ? "Cover art searching failed, have you pip installed ytmusicapi?" : "Cover art searching failed");
+            throw new CoverArtSearchEmptyException();
+        }
+        if (vIds.isEmpty()) {
+            throw new CoverArtSearchEmptyException();
+        }
+        searchCache.put(songName, vIds);
+        return vIds;
+    }
+
+    /**
+     * Looks up the vIds of an earlier search for a song, so the song does not have to be searched for again.
+     *
+     * @param songName the name of the song
+     * @return the vIds, best match first, or <code>null</code> if the song has not been searched for recently
+     */
+    @Nullable List<String> getCachedVIds(String songName) {
+        List<String> vIds = ResourceManager.getSearchCache().get(songName);
+        this.metrics.recordCacheLookup(Metrics.Cache.SEARCH, vIds != null);
+        return vIds;
+    }
+
     /**
      * Given a vId, returns the cropped cover art corresponding to it.
      *
@@ -258,36 +401,83 @@ public class Tagger {
      * @return byte[] with the cropped cover art (mimeType jpeg)
      * @throws IOException if an I/O error occurs
      */
-    private byte[] getCroppedImageFromVID(String vId) throws IOException {
-        final String BASE_URL = "https://i.ytimg.com/vi/" + vId;
-        String[] urls = {
-                BASE_URL + "/maxresdefault.jpg",
-                BASE_URL + "/hq720.jpg",
-                BASE_URL + "/hqdefault.jpg"
-        };
-
-        IOException last = null;
-        BufferedImage img = null;
-        for (String u : urls) {
-            try {
-                img = ImageIO.read(new URL(u));
-                break;
-            } catch (IOException e) {
-                last = e;
-            }
+    byte[] getCroppedImageFromVID(String vId) throws IOException {
+        byte[] coverArt = getCachedCoverArt(vId);
+        if (coverArt == null) {
+            coverArt = cropCoverArt(fetchThumbnail(vId));
+            cacheCoverArt(vId, coverArt);
         }
+        return coverArt;
+    }
 
-        if (img == null) {
-            ErrorLogger.runtimeExceptionOccurred(last, "Could not get image from YouTube URL");
-            throw new IOException(last);
+    /**
+     * Looks up cover art made from a vId earlier, so it does not have to be downloaded and cropped again.
+     *
+     * @param vId the vId of the cover art
+     * @return byte[] with the cropped cover art (mimeType jpeg), or <code>null</code> if it is not cached
+     */
+    @Nullable byte[] getCachedCoverArt(String vId) {
+        CoverArtCache cache = ResourceManager.getCoverArtCache();
+        if (cache == null) {
+            return null;
         }
+        byte[] coverArt = cache.get(vId);
+        this.metrics.recordCacheLookup(Metrics.Cache.COVER_ART, coverArt != null);
+        return coverArt;
+    }
 
-        int targetWidth = img.getHeight();
-        int startX = (img.getWidth() / 2) - (targetWidth / 2);
-        BufferedImage croppedImg = img.getSubimage(startX, 0, targetWidth, targetWidth);
-        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        ImageIO.write(croppedImg, "jpg", byteStream);
-        return byteStream.toByteArray();
+    /**
+     * Stores cropped cover art in the cover art cache. Failing to do so does not fail tagging.
+     *
+     * @param vId the vId the cover art was made from
+     * @param coverArt byte[] with the cropped cover art (mimeType jpeg)
+     */
+    void cacheCoverArt(String vId, byte[] coverArt) {
+        CoverArtCache cache = ResourceManager.getCoverArtCache();
+        if (cache == null) {
+            return;
+        }
+        try {
+            cache.put(vId, coverArt);
+        } catch (IOException e) {
+            ErrorLogger.runtimeExceptionOccurred(e, "Could not store cover art in the cache");
+        }
+    }
+
+    /**
+     * Downloads the thumbnail of a YouTube video in the highest resolution available.
+     *
+     * @param vId the vId of the video whose thumbnail is to be downloaded
+     * @return byte[] with the encoded thumbnail as served by YouTube
+     * @throws IOException if none of the resolutions could be downloaded
+     */
+    byte[] fetchThumbnail(String vId) throws IOException {
+        try (Metrics.Timer timer = this.metrics.startTimer(Metrics.Stage.FETCH)) {
+            byte[] thumbnail = ResourceManager.getThumbnailFetcher().fetch(vId);
+            timer.succeeded();
+            return thumbnail;
+        } catch (IOException e) {
+            ErrorLogger.runtimeExceptionOccurred(e, "Could not get image from YouTube URL");
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while downloading thumbnail of " + vId);
+        }
+    }
+
+    /**
+     * Crops a thumbnail to a centered square, which is the shape cover art is expected to have.
+     *
+     * @param thumbnail byte[] with the encoded thumbnail
+     * @return byte[] with the cropped cover art (mimeType jpeg)
+     * @throws IOException if the thumbnail could not be decoded or the cover art could not be encoded
+     */
+    byte[] cropCoverArt(byte[] thumbnail) throws IOException {
+        try (Metrics.Timer timer = this.metrics.startTimer(Metrics.Stage.CROP)) {
+            byte[] coverArt = this.coverArtProcessor.cropToSquare(thumbnail);
+            timer.succeeded();
+            return coverArt;
+        }
     }
 
     public static String getVideoId(String videoId)  {
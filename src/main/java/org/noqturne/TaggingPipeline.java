@@ -0,0 +1,515 @@
+package org.noqturne;
+
+import org.noqturne.exceptions.CoverArtSearchEmptyException;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Tags many songs at once by splitting the tagging of a song into stages, each of which runs on its
+ * own bounded pool of threads:
+ * <ol>
+ *     <li>search: finding the vIds of a song on YouTube Music (network)</li>
+ *     <li>fetch: downloading the thumbnail of a vId (network), unless its cover art is cached</li>
+ *     <li>crop: cropping the thumbnail into cover art (CPU)</li>
+ *     <li>save: writing the tags to the mp3 file (disk)</li>
+ * </ol>
+ * The stages are connected by the work queues of these pools, so while one song is being written
+ * to disk, the next songs are already being searched for and downloaded. A song that fails in any
+ * stage is reported and skipped, the rest of the batch continues.
+ * <p>
+ * Songs of a batch with the same name share a single search, and songs whose cover art comes from the
+ * same vId share a single download and crop, see {@link SingleFlight}. A batch keeps as many recent
+ * results as it holds songs, older results are found in the {@link SearchCache} or the
+ * {@link CoverArtCache}. Tagging an album with the vId of its cover art therefore makes the cover art
+ * once, even without a cover art cache.
+ * <p>
+ * The number of songs waiting in each queue is counted in the {@link Metrics}, and a summary of the
+ * time spent in each stage is printed at the end of every batch.
+ */
+public class TaggingPipeline {
+
+    /**
+     * Concurrency settings of a pipeline.
+     *
+     * @param searchThreads number of songs searched for at the same time
+     * @param fetchThreads number of thumbnails downloaded at the same time
+     * @param cropThreads number of thumbnails cropped at the same time
+     * @param saveThreads number of mp3 files written at the same time
+     * @param maxInFlight maximum number of songs in the pipeline at once, which bounds the queues
+     *                    between the stages and thereby the memory held by thumbnails
+     */
+    public record Settings(int searchThreads, int fetchThreads, int cropThreads, int saveThreads, int maxInFlight) {
+
+        /**
+         * @return settings that suit a regular desktop machine and internet connection
+         */
+        public static Settings defaults() {
+            return new Settings(4, 8, Runtime.getRuntime().availableProcessors(), 2, 32);
+        }
+
+        /**
+         * @param songs maximum number of songs being tagged at the same time
+         * @return the default settings, scaled down so no stage has more threads than there are songs
+         */
+        public static Settings forConcurrency(int songs) {
+            Settings defaults = defaults();
+            return new Settings(Math.min(songs, defaults.searchThreads()), Math.min(songs, defaults.fetchThreads()),
+                    Math.min(songs, defaults.cropThreads()), Math.min(songs, defaults.saveThreads()), songs);
+        }
+
+        /**
+         * @param config the settings of the application
+         * @return the concurrency settings in the config
+         */
+        public static Settings fromConfig(Config config) {
+            return new Settings(config.get(Config.SEARCH_THREADS), config.get(Config.FETCH_THREADS),
+                    config.get(Config.CROP_THREADS), config.get(Config.SAVE_THREADS),
+                    config.get(Config.MAX_SONGS_IN_FLIGHT));
+        }
+    }
+
+    /**
+     * Outcome of tagging a batch of songs.
+     *
+     * @param tagged number of songs that were tagged
+     * @param failed songs that could not be tagged
+     */
+    public record BatchResult(int tagged, List<File> failed) {
+
+        public boolean isSuccessful() {
+            return failed.isEmpty();
+        }
+    }
+
+    /**
+     * Is told the outcome of every song of a batch as soon as it is known.
+     */
+    @FunctionalInterface
+    public interface SongListener {
+        /**
+         * Called on the thread that finished the song, so it must not block.
+         *
+         * @param song the mp3 file
+         * @param tagged whether the song was tagged, <code>false</code> if it failed
+         */
+        void songFinished(File song, boolean tagged);
+    }
+
+    private final Tagger tagger;
+    private final Logger logger;
+    private final ThreadPoolExecutor searchPool;
+    private final ThreadPoolExecutor fetchPool;
+    private final ThreadPoolExecutor cropPool;
+    private final ThreadPoolExecutor savePool;
+    private final Executor searchQueue;
+    private final Executor fetchQueue;
+    private final Executor cropQueue;
+    private final Executor saveQueue;
+    private final Metrics metrics;
+    private final List<Runnable> configUnsubscribers = new ArrayList<>();
+    private volatile int maxInFlight;
+
+    /**
+     * Creates a pipeline whose stages are performed by the given Tagger. Threads are only started
+     * once there is work for them and stop again after being idle for a while.
+     *
+     * @param tagger the Tagger performing the work of each stage
+     * @param settings the concurrency settings of this pipeline
+     */
+    public TaggingPipeline(Tagger tagger, Settings settings) {
+        this.tagger = tagger;
+        this.logger = Logger.getLogger();
+        this.searchPool = newPool("search", settings.searchThreads());
+        this.fetchPool = newPool("fetch", settings.fetchThreads());
+        this.cropPool = newPool("crop", settings.cropThreads());
+        this.savePool = newPool("save", settings.saveThreads());
+        this.metrics = ResourceManager.getMetrics();
+        this.searchQueue = metrics.stage(Metrics.Stage.SEARCH).queueing(searchPool);
+        this.fetchQueue = metrics.stage(Metrics.Stage.FETCH).queueing(fetchPool);
+        this.cropQueue = metrics.stage(Metrics.Stage.CROP).queueing(cropPool);
+        this.saveQueue = metrics.stage(Metrics.Stage.SAVE).queueing(savePool);
+        this.maxInFlight = settings.maxInFlight();
+    }
+
+    /**
+     * Makes this pipeline follow the concurrency settings in the config. When one of them changes, the
+     * pool of its stage is resized right away, also while songs are being tagged. A new maximum number
+     * of songs in flight applies to the batches started after the change.
+     *
+     * @param config the settings of the application
+     */
+    public void followConfig(Config config) {
+        follow(config, Config.SEARCH_THREADS, threads -> resize(searchPool, threads));
+        follow(config, Config.FETCH_THREADS, threads -> resize(fetchPool, threads));
+        follow(config, Config.CROP_THREADS, threads -> resize(cropPool, threads));
+        follow(config, Config.SAVE_THREADS, threads -> resize(savePool, threads));
+        follow(config, Config.MAX_SONGS_IN_FLIGHT, songs -> maxInFlight = songs);
+    }
+
+    private <T> void follow(Config config, Config.Key<T> key, Config.Listener<T> listener) {
+        config.addListener(key, listener);
+        synchronized (configUnsubscribers) {
+            configUnsubscribers.add(() -> config.removeListener(key, listener));
+        }
+    }
+
+    private static void resize(ThreadPoolExecutor pool, int threads) {
+        // The core size may never exceed the maximum size, so the order depends on the direction
+        if (threads > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(threads);
+            pool.setCorePoolSize(threads);
+        } else {
+            pool.setCorePoolSize(threads);
+            pool.setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * Tags all given songs and waits until every one of them has either been tagged or has failed.
+     *
+     * @param songs the mp3 files to tag
+     * @param vId vId of the cover art every song is to be tagged with, or <code>null</code> to search
+     *            for the cover art of each song based on its name
+     * @return {@link BatchResult} summarizing which songs could not be tagged
+     * @throws InterruptedException if the current Thread is interrupted while waiting
+     */
+    public BatchResult tagAll(File[] songs, @Nullable String vId) throws InterruptedException {
+        Batch batch = startBatch(vId);
+        try {
+            for (File song : songs) {
+                batch.submit(song);
+            }
+        } catch (InterruptedException e) {
+            batch.cancel();
+            throw e;
+        }
+        return batch.await();
+    }
+
+    /**
+     * Starts a batch to which songs can be added while earlier songs are already being tagged, for
+     * when the songs to tag are not all known yet, such as while they are still being downloaded.
+     *
+     * @param vId vId of the cover art every song is to be tagged with, or <code>null</code> to search
+     *            for the cover art of each song based on its name
+     * @return the new, empty batch
+     */
+    public Batch startBatch(@Nullable String vId) {
+        return startBatch(vId, (song, tagged) -> {});
+    }
+
+    /**
+     * Starts a batch like {@link #startBatch(String)} that tells the given listener the outcome of
+     * every song as soon as it is known.
+     *
+     * @param vId vId of the cover art every song is to be tagged with, or <code>null</code> to search
+     *            for the cover art of each song based on its name
+     * @param listener is told the outcome of every song
+     * @return the new, empty batch
+     */
+    public Batch startBatch(@Nullable String vId, SongListener listener) {
+        return new Batch(vId, listener);
+    }
+
+    /**
+     * Songs being tagged by this pipeline that are awaited together. Songs are submitted from a single
+     * thread, which is also the thread that awaits the batch.
+     */
+    public class Batch {
+        private final @Nullable String vId;
+        private final SongListener listener;
+        private final Semaphore inFlight;
+        private final List<File> failed = Collections.synchronizedList(new ArrayList<>());
+        private final List<CompletableFuture<Void>> songFutures = new ArrayList<>();
+        private final Metrics.Snapshot startMetrics = metrics.snapshot();
+        // Keep no more results than there are songs in flight, so the memory held stays bounded
+        private final SingleFlight<String, List<String>> searches;
+        private final SingleFlight<String, byte[]> coverArt;
+
+        private Batch(@Nullable String vId, SongListener listener) {
+            int songs = maxInFlight;
+            this.vId = vId;
+            this.listener = listener;
+            this.inFlight = new Semaphore(songs);
+            this.searches = new SingleFlight<>(songs);
+            this.coverArt = new SingleFlight<>(songs);
+        }
+
+        /**
+         * Starts tagging a song. Blocks while the pipeline already holds the maximum number of songs.
+         *
+         * @param song the mp3 file to tag
+         * @throws InterruptedException if the current Thread is interrupted while waiting for room
+         */
+        public void submit(File song) throws InterruptedException {
+            // Blocks when the stages are saturated, so the queues between them stay bounded
+            inFlight.acquire();
+            SongJob job = new SongJob(song, vId);
+            songFutures.add(tagSong(job, this).handle((ignored, e) -> {
+                try {
+                    if (e != null) {
+                        failed.add(song);
+                        reportFailure(job, e);
+                    }
+                    metrics.recordSong(e == null);
+                    listener.songFinished(song, e == null);
+                } catch (RuntimeException listenerFailure) {
+                    // The song itself is done, so the batch carries on
+                    ErrorLogger.runtimeExceptionOccurred(listenerFailure, "Could not report the outcome of " + job.songName);
+                } finally {
+                    // Otherwise a failing listener would leave the batch waiting for room forever
+                    inFlight.release();
+                }
+                return null;
+            }));
+        }
+
+        /**
+         * Waits until every submitted song has either been tagged or has failed, and prints how long the
+         * stages took. If the current Thread is interrupted, the songs that are still being tagged are abandoned.
+         *
+         * @return {@link BatchResult} summarizing which songs could not be tagged
+         * @throws InterruptedException if the current Thread is interrupted while waiting
+         */
+        public BatchResult await() throws InterruptedException {
+            try {
+                CompletableFuture.allOf(songFutures.toArray(new CompletableFuture<?>[0])).get();
+            } catch (InterruptedException e) {
+                cancel();
+                throw e;
+            } catch (ExecutionException e) {
+                // Cannot happen, failures of individual songs are handled in submit
+                throw new IllegalStateException(e);
+            }
+            // Includes the work of other batches running at the same time, and the downloads of this batch
+            metrics.summarize(startMetrics).forEach(logger::println);
+            return new BatchResult(songFutures.size() - failed.size(), List.copyOf(failed));
+        }
+
+        /**
+         * @return number of songs submitted to this batch so far
+         */
+        public int size() {
+            return songFutures.size();
+        }
+
+        private void cancel() {
+            songFutures.forEach(f -> f.cancel(true));
+        }
+    }
+
+    /**
+     * Stops all threads of this pipeline. Songs that are still being tagged are abandoned.
+     */
+    public void shutdown() {
+        synchronized (configUnsubscribers) {
+            configUnsubscribers.forEach(Runnable::run);
+            configUnsubscribers.clear();
+        }
+        searchPool.shutdownNow();
+        fetchPool.shutdownNow();
+        cropPool.shutdownNow();
+        savePool.shutdownNow();
+    }
+
+    private CompletableFuture<Void> tagSong(SongJob job, Batch batch) {
+        logger.println("Tagging " + job.songName + " now...");
+        CompletableFuture<SongJob> searched;
+        List<String> cachedVIds = job.fixedVId ? null : tagger.getCachedVIds(job.songName);
+        if (job.fixedVId || cachedVIds != null) {
+            // Nothing to search for, so the song skips the search stage
+            if (cachedVIds != null) {
+                job.candidates = cachedVIds;
+            }
+            searched = CompletableFuture.completedFuture(job);
+        } else {
+            // Songs with the same name wait for the search of the first one
+            searched = batch.searches.get(job.songName, () -> CompletableFuture.supplyAsync(
+                            () -> inContext(Metrics.Stage.SEARCH, this::search).apply(job), searchQueue))
+                    .thenApply(candidates -> {
+                        job.candidates = candidates;
+                        return job;
+                    });
+        }
+        return searched
+                .thenCompose(searchedJob -> findCoverArt(searchedJob, batch, 0))
+                .thenApplyAsync(inContext(Metrics.Stage.SAVE, this::save), saveQueue);
+    }
+
+    /**
+     * Makes the errors a stage runs into tell which song, stage and vId they are about, see {@link ErrorLogger}.
+     */
+    private static <T> Function<SongJob, T> inContext(Metrics.Stage stage, Function<SongJob, T> work) {
+        return job -> {
+            try (ErrorLogger.Scope ignored = ErrorLogger.enterContext(job.context(stage.label()))) {
+                return work.apply(job);
+            }
+        };
+    }
+
+    private List<String> search(SongJob job) {
+        try {
+            return tagger.searchVIds(job.songName);
+        } catch (CoverArtSearchEmptyException e) {
+            return List.of();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StageFailure("searching", e);
+        }
+    }
+
+    /**
+     * Gets the cover art of the first candidate of a song that has cover art, trying the next candidate
+     * if a candidate fails. The cover art of a candidate is shared with the other songs of the batch.
+     *
+     * @param candidate index of the candidate to try
+     */
+    private CompletableFuture<SongJob> findCoverArt(SongJob job, Batch batch, int candidate) {
+        if (job.candidates.isEmpty()) {
+            logger.printError("Couldn't find valid cover art, skipping cover art for " + job.songName);
+        }
+        if (candidate >= job.candidates.size()) {
+            return CompletableFuture.completedFuture(job);
+        }
+        String vId = job.candidates.get(candidate);
+        return batch.coverArt.get(vId, () -> makeCoverArt(job, vId))
+                .thenApply(coverArt -> {
+                    job.vId = vId;
+                    job.coverArt = coverArt;
+                    return CompletableFuture.completedFuture(job);
+                })
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (job.fixedVId) {
+                        throw cause instanceof StageFailure failure ? failure : new StageFailure("fetching cover art", cause);
+                    }
+                    if (candidate + 1 == job.candidates.size()) {
+                        job.coverArt = null;
+                        logger.printError("Couldn't find valid cover art, skipping cover art for " + job.songName);
+                    }
+                    return findCoverArt(job, batch, candidate + 1);
+                })
+                .thenCompose(Function.identity());
+    }
+
+    /**
+     * Downloads and crops the thumbnail of a vId, unless its cover art is cached.
+     */
+    private CompletableFuture<byte[]> makeCoverArt(SongJob job, String vId) {
+        return CompletableFuture.supplyAsync(() -> inContext(job, Metrics.Stage.FETCH, vId, "fetching cover art", () -> {
+                    byte[] cached = tagger.getCachedCoverArt(vId);
+                    // Skips both downloading and cropping
+                    return cached != null ? new Artwork(null, cached) : new Artwork(tagger.fetchThumbnail(vId), null);
+                }), fetchQueue)
+                .thenCompose(artwork -> artwork.coverArt() != null ? CompletableFuture.completedFuture(artwork.coverArt())
+                        : CompletableFuture.supplyAsync(() -> inContext(job, Metrics.Stage.CROP, vId, "cropping cover art", () -> {
+                            byte[] coverArt = tagger.cropCoverArt(artwork.thumbnail());
+                            tagger.cacheCoverArt(vId, coverArt);
+                            return coverArt;
+                        }), cropQueue));
+    }
+
+    /**
+     * Runs the work of a stage on a candidate vId of a song, failing the stage if the work throws an IOException.
+     */
+    private static <T> T inContext(SongJob job, Metrics.Stage stage, String vId, String description, CoverArtStep<T> work) {
+        try (ErrorLogger.Scope ignored = ErrorLogger.enterContext(
+                new ErrorLogger.Context(job.song.getPath(), stage.label(), vId))) {
+            return work.run();
+        } catch (IOException e) {
+            throw new StageFailure(description, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface CoverArtStep<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * A downloaded thumbnail, or the cached cover art that makes downloading it unnecessary.
+     */
+    private record Artwork(@Nullable byte[] thumbnail, @Nullable byte[] coverArt) {}
+
+    private Void save(SongJob job) {
+        try {
+            tagger.writeTags(job.song.getAbsolutePath(), job.coverArt, job.vId);
+        } catch (Exception e) {
+            throw new StageFailure("saving", e);
+        }
+        return null;
+    }
+
+    private void reportFailure(SongJob job, Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof StageFailure failure) {
+            try (ErrorLogger.Scope ignored = ErrorLogger.enterContext(job.context(failure.stage))) {
+                ErrorLogger.runtimeExceptionOccurred(failure.getCause(),
+                        "Tagging " + job.songName + " failed while " + failure.stage);
+            }
+        } else if (!(cause instanceof CancellationException)) {
+            try (ErrorLogger.Scope ignored = ErrorLogger.enterContext(job.context(null))) {
+                ErrorLogger.runtimeExceptionOccurred(cause, "Tagging " + job.songName + " failed");
+            }
+        }
+    }
+
+    static ThreadPoolExecutor newPool(String stage, int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "noqturne-" + stage + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), factory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * State of a single song as it moves through the stages.
+     */
+    private static class SongJob {
+        private final File song;
+        private final String songName;
+        private final boolean fixedVId;
+        private List<String> candidates = List.of();
+        private String vId;
+        private byte[] coverArt;
+
+        private SongJob(File song, @Nullable String vId) {
+            this.song = song;
+            this.songName = Tagger.getSongName(song.getAbsolutePath());
+            this.fixedVId = vId != null;
+            if (vId != null) {
+                this.candidates = List.of(vId);
+                this.vId = vId;
+            }
+        }
+
+        private ErrorLogger.Context context(@Nullable String stage) {
+            return new ErrorLogger.Context(song.getPath(), stage, vId);
+        }
+    }
+
+    /**
+     * Thrown inside a stage to fail the song it is working on.
+     */
+    private static class StageFailure extends RuntimeException {
+        private final String stage;
+
+        private StageFailure(String stage, Throwable cause) {
+            super(cause);
+            this.stage = stage;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.noqturne;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Downloads YouTube thumbnails over a shared {@link HttpClient}, which keeps connections alive between
+ * downloads and uses HTTP/2 when the server supports it.
+ * <p>
+ * Not every video has a thumbnail in every resolution, so which resolutions exist is asked for all
+ * resolutions at the same time, with <code>HEAD</code> requests that return no image. Only the
+ * highest resolution that exists is then downloaded. This costs two round trips no matter how many
+ * resolutions are missing, and only a single image is downloaded.
+ */
+public class ThumbnailFetcher {
+
+    public static final String YOUTUBE_THUMBNAIL_URL = "https://i.ytimg.com/vi/";
+    // Best resolution first
+    private static final String[] RESOLUTIONS = {"maxresdefault", "hq720", "hqdefault"};
+
+    private final HttpClient client;
+    private final String baseUrl;
+    private final Duration readTimeout;
+
+    /**
+     * Creates a fetcher for thumbnails located at <code>baseUrl + vId + "/" + resolution + ".jpg"</code>.
+     *
+     * @param baseUrl URL the thumbnails are located at, normally {@link #YOUTUBE_THUMBNAIL_URL}
+     * @param connectTimeout how long to wait for a connection to be made
+     * @param readTimeout how long to wait for a response once a request has been sent
+     */
+    public ThumbnailFetcher(String baseUrl, Duration connectTimeout, Duration readTimeout) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(connectTimeout)
+                .build();
+        this.baseUrl = baseUrl;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Downloads the thumbnail of a YouTube video in the highest resolution available.
+     *
+     * @param vId the vId of the video whose thumbnail is to be downloaded
+     * @return byte[] with the encoded thumbnail as served by YouTube
+     * @throws IOException if no resolution could be downloaded
+     * @throws InterruptedException if the current Thread is interrupted while waiting
+     */
+    public byte[] fetch(String vId) throws IOException, InterruptedException {
+        List<CompletableFuture<HttpResponse<Void>>> probes = new ArrayList<>(RESOLUTIONS.length);
+        for (String resolution : RESOLUTIONS) {
+            HttpRequest request = HttpRequest.newBuilder(thumbnailUri(vId, resolution))
+                    .timeout(readTimeout)
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                    .build();
+            probes.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding()));
+        }
+
+        IOException last = null;
+        try {
+            for (int i = 0; i < probes.size(); i++) {
+                try {
+                    HttpResponse<Void> probe = probes.get(i).get();
+                    if (probe.statusCode() == 200) {
+                        return download(thumbnailUri(vId, RESOLUTIONS[i]));
+                    }
+                    last = new IOException("Thumbnail " + probe.uri() + " returned status " + probe.statusCode());
+                } catch (ExecutionException e) {
+                    last = e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+                }
+            }
+        } finally {
+            // The probes for lower resolutions are not needed anymore
+            probes.forEach(probe -> probe.cancel(true));
+        }
+        throw last;
+    }
+
+    private byte[] download(URI thumbnail) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(thumbnail)
+                .timeout(readTimeout)
+                .GET()
+                .build();
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IOException("Thumbnail " + thumbnail + " returned status " + response.statusCode());
+        }
+        return response.body();
+    }
+
+    private URI thumbnailUri(String vId, String resolution) {
+        return URI.create(baseUrl + vId + "/" + resolution + ".jpg");
+    }
+}
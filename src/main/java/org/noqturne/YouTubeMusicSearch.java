@@ -0,0 +1,148 @@
+package org.noqturne;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Searches YouTube Music by calling its search backend directly, the same one ytmusicapi calls, so
+ * no Python is needed. Searches share the connections of a single {@link HttpClient}.
+ * <p>
+ * Responses are large and deeply nested, while only the vIds are needed. They are therefore read
+ * with a streaming parser that picks the <code>videoId</code> of every
+ * <code>playlistItemData</code> in order, and stops reading once enough results have been found.
+ */
+public class YouTubeMusicSearch implements CoverArtSearch {
+
+    public static final URI YOUTUBE_MUSIC_SEARCH_URL =
+            URI.create("https://music.youtube.com/youtubei/v1/search?prettyPrint=false");
+    private static final String ORIGIN = "https://music.youtube.com";
+    private static final String CLIENT_NAME = "WEB_REMIX";
+    // Filters the results to songs, like searching with the "songs" filter of ytmusicapi
+    private static final String SONGS_FILTER = "EgWKAQIIAWoMEA4QChADEAQQCRAF";
+    private static final String USER_AGENT =
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:88.0) Gecko/20100101 Firefox/88.0";
+    private static final int MAX_RESULTS = 11;
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final JsonFactory jsonFactory = mapper.getFactory();
+
+    private final URI endpoint;
+    private final Duration timeout;
+    private final HttpClient client;
+
+    /**
+     * @param endpoint URL of the search backend, see {@link #YOUTUBE_MUSIC_SEARCH_URL}
+     * @param timeout how long to wait for a connection and for a search to be answered
+     */
+    public YouTubeMusicSearch(URI endpoint, Duration timeout) {
+        this.endpoint = endpoint;
+        this.timeout = timeout;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    @Override
+    public List<String> search(String query) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(endpoint)
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .header("Origin", ORIGIN)
+                .header("User-Agent", USER_AGENT)
+                .POST(HttpRequest.BodyPublishers.ofString(requestBody(query)))
+                .build();
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new IOException("YouTube Music search failed with status " + response.statusCode());
+            }
+            return parseVIds(body);
+        }
+    }
+
+    /**
+     * @return the body of a search request, as the YouTube Music website sends it
+     */
+    static String requestBody(String query) throws IOException {
+        ObjectNode body = mapper.createObjectNode();
+        body.putObject("context").putObject("client")
+                .put("clientName", CLIENT_NAME)
+                .put("clientVersion", clientVersion())
+                .put("hl", "en");
+        body.put("query", query);
+        body.put("params", SONGS_FILTER);
+        return mapper.writeValueAsString(body);
+    }
+
+    /**
+     * @return a version of the website client, which the backend only accepts if it is recent
+     */
+    private static String clientVersion() {
+        return "1." + LocalDate.now(ZoneOffset.UTC).format(DateTimeFormatter.BASIC_ISO_DATE) + ".01.00";
+    }
+
+    /**
+     * Reads the vIds of the results from a search response.
+     *
+     * @param body the search response
+     * @return the vIds in the order of the results, without duplicates and at most {@value MAX_RESULTS}
+     * @throws IOException if the response is not valid JSON
+     */
+    static List<String> parseVIds(InputStream body) throws IOException {
+        Set<String> vIds = new LinkedHashSet<>();
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            JsonToken token;
+            while (vIds.size() < MAX_RESULTS && (token = parser.nextToken()) != null) {
+                if (token == JsonToken.FIELD_NAME && parser.currentName().equals("playlistItemData")
+                        && parser.nextToken() == JsonToken.START_OBJECT) {
+                    String vId = readVideoId(parser);
+                    if (vId != null) {
+                        vIds.add(vId);
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(vIds);
+    }
+
+    /**
+     * Reads a <code>playlistItemData</code> object, the parser being at its start.
+     *
+     * @return the <code>videoId</code> in the object, or <code>null</code> if it has none
+     */
+    private static @Nullable String readVideoId(JsonParser parser) throws IOException {
+        String vId = null;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_OBJECT && token != null) {
+            if (token == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                token = parser.nextToken();
+                if (name.equals("videoId") && token == JsonToken.VALUE_STRING) {
+                    vId = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return vId;
+    }
+}
@@ -1,14 +1,68 @@
+from concurrent.futures import ThreadPoolExecutor
 from ytmusicapi import YTMusic
+import json
 import sys
+import threading
 
-ytmusic = YTMusic()
-search_results = ytmusic.search(sys.argv[1], "songs")
-videoId = ""
-i = 0
-
-for result in search_results:
-    if i > 10:
-        break
-    videoId = result.get("videoId")
-    print(videoId)
-    i = i + 1
\ No newline at end of file
+MAX_RESULTS = 11
+MAX_CONCURRENT_SEARCHES = 4
+
+local = threading.local()
+output_lock = threading.Lock()
+
+
+def search(query):
+    # YTMusic keeps a requests session, so every thread gets its own instance
+    if not hasattr(local, "ytmusic"):
+        local.ytmusic = YTMusic()
+    search_results = local.ytmusic.search(query, "songs")
+    video_ids = []
+    for result in search_results:
+        if len(video_ids) >= MAX_RESULTS:
+            break
+        video_id = result.get("videoId")
+        if video_id:
+            video_ids.append(video_id)
+    return video_ids
+
+
+def respond(response):
+    with output_lock:
+        sys.stdout.write(json.dumps(response) + "\n")
+        sys.stdout.flush()
+
+
+def handle(request):
+    request_id = request.get("id")
+    try:
+        if request.get("op") == "ping":
+            respond({"id": request_id, "pong": True})
+        else:
+            respond({"id": request_id, "vIds": search(request["query"])})
+    except Exception as e:
+        respond({"id": request_id, "error": repr(e)})
+
+
+def run_worker():
+    # Answers newline-delimited JSON requests on stdin until stdin is closed
+    YTMusic()
+    respond({"ready": True})
+    with ThreadPoolExecutor(max_workers=MAX_CONCURRENT_SEARCHES) as executor:
+        for line in sys.stdin:
+            line = line.strip()
+            if not line:
+                continue
+            try:
+                request = json.loads(line)
+            except ValueError as e:
+                respond({"id": None, "error": repr(e)})
+                continue
+            executor.submit(handle, request)
+
+
+if __name__ == "__main__":
+    if len(sys.argv) > 1 and sys.argv[1] != "--worker":
+        for videoId in search(sys.argv[1]):
+            print(videoId)
+    else:
+        run_worker()
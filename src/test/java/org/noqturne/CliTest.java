@@ -0,0 +1,64 @@
+package org.noqturne;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+class CliTest {
+
+    @TempDir
+    Path dir;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    @Test
+    void invalidCommandLinesAreUsageErrors() {
+        Assertions.assertEquals(Cli.EXIT_USAGE, run());
+        Assertions.assertEquals(Cli.EXIT_USAGE, run("retag"));
+        Assertions.assertEquals(Cli.EXIT_USAGE, run("tag-file"));
+        Assertions.assertEquals(Cli.EXIT_USAGE, run("audit", "a", "b"));
+        Assertions.assertEquals(Cli.EXIT_USAGE, run("tag-folder", "--vid"));
+        Assertions.assertEquals(Cli.EXIT_USAGE, run("tag-folder", "--verbose"));
+        Assertions.assertEquals(Cli.EXIT_OK, run("--help"));
+        Assertions.assertTrue(Cli.Arguments.parse(new String[] {"--offline", "tag-folder"}).offline());
+    }
+
+    @Test
+    void auditWritesResultAsJson() throws Exception {
+        SyntheticMp3.create(dir.resolve("untagged.mp3"), 4096);
+
+        Assertions.assertEquals(Cli.EXIT_INCOMPLETE, run("--json", "audit", dir.toString()));
+
+        List<JsonNode> events = new ArrayList<>();
+        ObjectMapper mapper = new ObjectMapper();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\\R")) {
+            events.add(mapper.readTree(line));
+        }
+        JsonNode result = events.get(events.size() - 2);
+        Assertions.assertEquals("result", result.path("event").asText());
+        Assertions.assertEquals(1, result.path("audited").asInt());
+        Assertions.assertEquals(4, result.path("incomplete").get(0).path("missing").size());
+        JsonNode exit = events.get(events.size() - 1);
+        Assertions.assertEquals("exit", exit.path("event").asText());
+        Assertions.assertEquals(Cli.EXIT_INCOMPLETE, exit.path("code").asInt());
+    }
+
+    @Test
+    void missingFolderCannotBeAudited() {
+        Assertions.assertEquals(Cli.EXIT_ERROR, run("audit", dir.resolve("missing").toString()));
+    }
+
+    private int run(String... args) {
+        return Cli.run(args, new PrintStream(out, true, StandardCharsets.UTF_8), new PrintStream(err, true, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,54 @@
+package org.noqturne;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+class ConfigTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void valuesAreTypedAndUnknownLinesAreKept() throws Exception {
+        Path file = dir.resolve("config.txt");
+        Files.write(file, List.of("TAGGING_FOLDER=" + dir, "SEARCH_THREADS=0", "JPEG_QUALITY=1.5", "FUTURE_SETTING=yes"));
+        Config config = Config.load(file);
+
+        Assertions.assertEquals(dir, config.get(Config.TAGGING_FOLDER));
+        // Invalid and missing values fall back to their defaults
+        Assertions.assertEquals(Config.SEARCH_THREADS.defaultValue(), config.get(Config.SEARCH_THREADS));
+        Assertions.assertEquals(Config.DOWNLOAD_WORKERS.defaultValue(), config.get(Config.DOWNLOAD_WORKERS));
+        Assertions.assertEquals(Config.JPEG_QUALITY.defaultValue(), config.get(Config.JPEG_QUALITY));
+        Assertions.assertTrue(config.set(Config.JPEG_QUALITY, 0.9f));
+        Assertions.assertEquals(0.9f, Config.load(file).get(Config.JPEG_QUALITY));
+
+        Assertions.assertTrue(config.set(Config.DOWNLOAD_WORKERS, 7));
+        Assertions.assertFalse(config.set(Config.DOWNLOAD_WORKERS, 7));
+        Assertions.assertEquals(7, Config.load(file).get(Config.DOWNLOAD_WORKERS));
+        Assertions.assertTrue(Files.readAllLines(file).contains("FUTURE_SETTING=yes"));
+        Assertions.assertFalse(Files.exists(dir.resolve("config.txt.tmp")));
+    }
+
+    @Test
+    void listenersAreToldAboutChangesOfTheirSetting() throws Exception {
+        Config config = Config.load(dir.resolve("config.txt"));
+        List<Integer> searchThreads = new ArrayList<>();
+        Config.Listener<Integer> listener = searchThreads::add;
+        config.addListener(Config.SEARCH_THREADS, listener);
+
+        config.set(Config.SEARCH_THREADS, 2);
+        config.set(Config.FETCH_THREADS, 3);
+        config.set(Config.SEARCH_THREADS, 2);
+        config.removeListener(Config.SEARCH_THREADS, listener);
+        config.set(Config.SEARCH_THREADS, 5);
+
+        Assertions.assertEquals(List.of(2), searchThreads);
+        Assertions.assertEquals(5, config.get(Config.SEARCH_THREADS));
+    }
+}
@@ -0,0 +1,71 @@
+package org.noqturne;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+class ConsoleBufferTest {
+
+    @Test
+    void fullBufferDropsNewText() {
+        ConsoleBuffer buffer = new ConsoleBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertTrue(buffer.offer("line " + i + "\n", false));
+        }
+        Assertions.assertFalse(buffer.offer("dropped\n", true));
+        Assertions.assertEquals(1, buffer.takeDropped());
+        Assertions.assertEquals(0, buffer.takeDropped());
+
+        List<ConsoleBuffer.Entry> entries = new ArrayList<>();
+        Assertions.assertEquals(4, buffer.drain(entries::add));
+        Assertions.assertEquals(new ConsoleBuffer.Entry("line 0\n", false), entries.get(0));
+        Assertions.assertTrue(buffer.offer("after drain\n", true));
+        Assertions.assertEquals(1, buffer.drain(entries::add));
+        Assertions.assertEquals(new ConsoleBuffer.Entry("after drain\n", true), entries.get(4));
+    }
+
+    @Test
+    void concurrentProducersKeepTheirOrder() throws Exception {
+        int producers = 4;
+        int linesPerProducer = 20_000;
+        ConsoleBuffer buffer = new ConsoleBuffer(256);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < linesPerProducer; i++) {
+                    // Waits for room instead of dropping, so every line must arrive
+                    while (!buffer.offer(producer + ":" + i, false)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        int[] next = new int[producers];
+        int received = 0;
+        start.countDown();
+        while (received < producers * linesPerProducer) {
+            received += buffer.drain(entry -> {
+                String[] parts = entry.text().split(":");
+                int producer = Integer.parseInt(parts[0]);
+                Assertions.assertEquals(next[producer]++, Integer.parseInt(parts[1]));
+            });
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertEquals(0, buffer.drain(entry -> Assertions.fail("Unexpected " + entry)));
+    }
+}
@@ -0,0 +1,123 @@
+package org.noqturne;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+class CoverArtCacheTest {
+
+    @TempDir
+    Path cacheDir;
+
+    @Test
+    void cachedCoverArtSurvivesReopening() throws IOException {
+        byte[] coverArt = filled(1000, 7);
+        try (CoverArtCache cache = new CoverArtCache(cacheDir, 10_000)) {
+            Assertions.assertNull(cache.get("vId1"));
+            cache.put("vId1", coverArt);
+            Assertions.assertArrayEquals(coverArt, cache.get("vId1"));
+        }
+        try (CoverArtCache cache = new CoverArtCache(cacheDir, 10_000)) {
+            Assertions.assertArrayEquals(coverArt, cache.get("vId1"));
+            CoverArtCache.Stats stats = cache.stats();
+            Assertions.assertEquals(1, stats.hits());
+            Assertions.assertEquals(0, stats.misses());
+            Assertions.assertEquals(1, stats.entries());
+        }
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() throws IOException {
+        try (CoverArtCache cache = new CoverArtCache(cacheDir, 2500)) {
+            cache.put("a", filled(1000, 1));
+            cache.put("b", filled(1000, 2));
+            cache.get("a");
+            cache.put("c", filled(1000, 3));
+
+            Assertions.assertNull(cache.get("b"));
+            Assertions.assertArrayEquals(filled(1000, 1), cache.get("a"));
+            Assertions.assertArrayEquals(filled(1000, 3), cache.get("c"));
+            Assertions.assertEquals(1, cache.stats().evictions());
+        }
+        try (CoverArtCache cache = new CoverArtCache(cacheDir, 2500)) {
+            Assertions.assertNull(cache.get("b"));
+            Assertions.assertEquals(2, cache.stats().entries());
+        }
+    }
+
+    @Test
+    void recencySurvivesReopening() throws IOException {
+        try (CoverArtCache cache = new CoverArtCache(cacheDir, 2500)) {
+            cache.put("a", filled(1000, 1));
+            cache.put("b", filled(1000, 2));
+            cache.get("a");
+        }
+        try (CoverArtCache cache = new CoverArtCache(cacheDir, 2500)) {
+            // b was added after a, but a was used after b
+            cache.put("c", filled(1000, 3));
+            Assertions.assertNull(cache.get("b"));
+            Assertions.assertArrayEquals(filled(1000, 1), cache.get("a"));
+        }
+    }
+
+    @Test
+    void indexIsRewrittenOnceUsesMakeUpMostOfIt() throws IOException {
+        try (CoverArtCache cache = new CoverArtCache(cacheDir, 10_000)) {
+            cache.put("a", filled(1000, 1));
+            for (int i = 0; i < 10_000; i++) {
+                cache.get("a");
+            }
+        }
+        Assertions.assertTrue(Files.size(cacheDir.resolve("covers.idx")) < 4096 * 26);
+        try (CoverArtCache cache = new CoverArtCache(cacheDir, 10_000)) {
+            Assertions.assertArrayEquals(filled(1000, 1), cache.get("a"));
+        }
+    }
+
+    @Test
+    void maximumSizeIsLimited() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new CoverArtCache(cacheDir, CoverArtCache.MAX_BYTES + 1));
+    }
+
+    @Test
+    void configuredSizeAboveTheLimitFallsBackToTheDefault() throws IOException {
+        Path file = cacheDir.resolve("config.txt");
+        Files.write(file, List.of("COVER_ART_CACHE_MB=4096"));
+        Assertions.assertEquals(Config.COVER_ART_CACHE_MB.defaultValue(), Config.load(file).get(Config.COVER_ART_CACHE_MB));
+    }
+
+    @Test
+    void compactionKeepsLiveEntries() throws IOException {
+        try (CoverArtCache cache = new CoverArtCache(cacheDir, 2500)) {
+            for (int i = 0; i < 10; i++) {
+                cache.put("vId" + i, filled(1000, i));
+            }
+            Assertions.assertEquals(10_000, cache.stats().packBytes());
+            cache.compact();
+
+            CoverArtCache.Stats stats = cache.stats();
+            Assertions.assertEquals(2000, stats.packBytes());
+            Assertions.assertEquals(stats.liveBytes(), stats.packBytes());
+            Assertions.assertArrayEquals(filled(1000, 9), cache.get("vId9"));
+            cache.put("vId10", filled(1000, 10));
+        }
+        try (CoverArtCache cache = new CoverArtCache(cacheDir, 2500)) {
+            Assertions.assertArrayEquals(filled(1000, 9), cache.get("vId9"));
+            Assertions.assertArrayEquals(filled(1000, 10), cache.get("vId10"));
+            Assertions.assertNull(cache.get("vId0"));
+        }
+    }
+
+    private static byte[] filled(int length, int value) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) value);
+        return bytes;
+    }
+}
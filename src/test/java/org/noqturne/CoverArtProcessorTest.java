@@ -0,0 +1,70 @@
+package org.noqturne;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+class CoverArtProcessorTest {
+
+    @Test
+    void thumbnailIsCroppedToCenteredSquare() throws IOException {
+        byte[] thumbnail = thumbnail(1280, 720, "jpg");
+        BufferedImage coverArt = ImageIO.read(new ByteArrayInputStream(
+                new CoverArtProcessor(CoverArtProcessor.DEFAULT_JPEG_QUALITY).cropToSquare(thumbnail)));
+
+        Assertions.assertEquals(720, coverArt.getWidth());
+        Assertions.assertEquals(720, coverArt.getHeight());
+        // The thumbnail is red left and right of the centered square and blue inside it
+        Color corner = new Color(coverArt.getRGB(5, 5));
+        Assertions.assertTrue(corner.getBlue() > 200 && corner.getRed() < 50);
+    }
+
+    @Test
+    void outputMatchesImageIoAtDefaultQuality() throws IOException {
+        byte[] thumbnail = thumbnail(480, 360, "jpg");
+        BufferedImage img = ImageIO.read(new ByteArrayInputStream(thumbnail));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ImageIO.write(img.getSubimage(60, 0, 360, 360), "jpg", expected);
+
+        CoverArtProcessor processor = new CoverArtProcessor(CoverArtProcessor.DEFAULT_JPEG_QUALITY);
+        Assertions.assertArrayEquals(expected.toByteArray(), processor.cropToSquare(thumbnail));
+        // Buffers are reused between calls, which must not affect the output
+        Assertions.assertArrayEquals(expected.toByteArray(), processor.cropToSquare(thumbnail));
+    }
+
+    @Test
+    void lowerQualityGivesSmallerCoverArt() throws IOException {
+        byte[] thumbnail = thumbnail(1280, 720, "jpg");
+        int high = new CoverArtProcessor(0.95f).cropToSquare(thumbnail).length;
+        int low = new CoverArtProcessor(0.3f).cropToSquare(thumbnail).length;
+        Assertions.assertTrue(low < high);
+    }
+
+    @Test
+    void nonJpegThumbnailIsCropped() throws IOException {
+        byte[] coverArt = new CoverArtProcessor(CoverArtProcessor.DEFAULT_JPEG_QUALITY)
+                .cropToSquare(thumbnail(400, 300, "png"));
+        Assertions.assertEquals(300, ImageIO.read(new ByteArrayInputStream(coverArt)).getWidth());
+    }
+
+    private static byte[] thumbnail(int width, int height, String format) throws IOException {
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g = img.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, width, height);
+        g.setColor(Color.BLUE);
+        g.fillRect(width / 2 - height / 2, 0, height, height);
+        g.setColor(Color.WHITE);
+        g.drawString("Noqturne", width / 2, height / 2);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(img, format, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,47 @@
+package org.noqturne;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class DependencyStatusTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void versionsAreReusedFromTheCacheUntilTheBinaryChanges() throws Exception {
+        Path cacheFile = dir.resolve("dependencies.json");
+        DependencyStatus.Report first = new DependencyStatus(cacheFile, dir.resolve("bin")).check().get();
+        Assumptions.assumeTrue(first.isAvailable(DependencyStatus.Dependency.PYTHON), "Python is not installed");
+
+        DependencyStatus.Probe probed = first.probes().get(DependencyStatus.Dependency.PYTHON);
+        Assertions.assertFalse(probed.cached());
+        Assertions.assertTrue(Files.exists(cacheFile));
+
+        DependencyStatus.Probe cached = new DependencyStatus(cacheFile, dir.resolve("bin")).check().get()
+                .probes().get(DependencyStatus.Dependency.PYTHON);
+        Assertions.assertTrue(cached.cached());
+        Assertions.assertEquals(probed.version(), cached.version());
+    }
+
+    @Test
+    void missingBinariesAreNotAvailable() throws Exception {
+        DependencyStatus.Report report = new DependencyStatus(dir.resolve("dependencies.json"), dir.resolve("bin"))
+                .check().get();
+        // yt-dlp is only ever looked for in the bin folder, which is empty
+        Assertions.assertFalse(report.isAvailable(DependencyStatus.Dependency.YT_DLP));
+    }
+
+    @Test
+    void versionsAreParsedFromTheFirstLine() {
+        Assertions.assertEquals("3.11.4",
+                DependencyStatus.parseVersion(DependencyStatus.Dependency.PYTHON, "Python 3.11.4"));
+        Assertions.assertEquals("7.1-full_build-www.gyan.dev", DependencyStatus.parseVersion(
+                DependencyStatus.Dependency.FFMPEG, "ffmpeg version 7.1-full_build-www.gyan.dev Copyright (c) 2000-2024"));
+    }
+}
@@ -0,0 +1,84 @@
+package org.noqturne;
+
+import com.mpatric.mp3agic.ID3v2;
+import com.mpatric.mp3agic.ID3v24Tag;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+class DownloadTrackerTest {
+
+    // Time the operating system gets to deliver file events
+    private static final long EVENT_DELAY_MILLIS = 1000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void sessionCollectsNewUnclaimedSongsOnly() throws Exception {
+        create("existing.mp3");
+        DownloadTracker tracker = new DownloadTracker(dir);
+        DownloadTracker.Session session = tracker.open();
+
+        File reported = create("reported.mp3");
+        session.claim(reported);
+        File unreported = create("unreported.mp3");
+        create("cover.jpg");
+        Thread.sleep(EVENT_DELAY_MILLIS);
+
+        Assertions.assertEquals(List.of(unreported), session.unclaimedFiles());
+    }
+
+    @Test
+    void concurrentSessionsLeaveClaimedSongsAlone() throws Exception {
+        DownloadTracker tracker = new DownloadTracker(dir);
+        DownloadTracker.Session first = tracker.open();
+        DownloadTracker.Session second = tracker.open();
+
+        first.claim(create("first.mp3"));
+        File unreported = create("unreported.mp3");
+        Thread.sleep(EVENT_DELAY_MILLIS);
+        // The second job could still claim the unreported song, so the first job does not get it
+        Assertions.assertEquals(List.of(), first.unclaimedFiles());
+
+        File late = create("late.mp3");
+        second.claim(create("second.mp3"));
+        Thread.sleep(EVENT_DELAY_MILLIS);
+        Assertions.assertEquals(List.of(unreported, late), second.unclaimedFiles());
+
+        // Watching starts over for the next session
+        DownloadTracker.Session third = tracker.open();
+        File next = create("next.mp3");
+        Thread.sleep(EVENT_DELAY_MILLIS);
+        Assertions.assertEquals(List.of(next), third.unclaimedFiles());
+    }
+
+    @Test
+    void songsRewrittenByTaggingAreNotNewSongs() throws Exception {
+        Path existing = SyntheticMp3.create(dir.resolve("existing.mp3"), 64 * 1024);
+        DownloadTracker tracker = new DownloadTracker(dir);
+        DownloadTracker.Session session = tracker.open();
+
+        ID3v2 tag = new ID3v24Tag();
+        tag.setArtist("Artist");
+        tag.setTitle("Title");
+        Id3TagWriter writer = new Id3TagWriter(Id3TagWriter.DEFAULT_PADDING, file -> tracker.claim(file.toFile()));
+        // The song has no tag yet, so it is rewritten and moved over the original
+        Assertions.assertFalse(writer.write(existing, tag).inPlace());
+        File unreported = create("unreported.mp3");
+        Thread.sleep(EVENT_DELAY_MILLIS);
+        // Touching the song later does not make it a download either
+        Assertions.assertTrue(existing.toFile().setLastModified(System.currentTimeMillis() + 60_000));
+
+        Assertions.assertEquals(List.of(unreported), session.unclaimedFiles());
+    }
+
+    private File create(String name) throws Exception {
+        return Files.write(dir.resolve(name), new byte[] {1, 2, 3}).toFile();
+    }
+}
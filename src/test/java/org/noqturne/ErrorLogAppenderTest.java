@@ -0,0 +1,71 @@
+package org.noqturne;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+class ErrorLogAppenderTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void concurrentEntriesAreAllWrittenAcrossRotatedFiles() throws Exception {
+        Path log = dir.resolve("errorLog.log");
+        ErrorLogAppender appender = new ErrorLogAppender(log, 16 * 1024, 1000);
+        int threads = 8;
+        int entriesPerThread = 500;
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            producers.add(new Thread(() -> {
+                for (int i = 0; i < entriesPerThread; i++) {
+                    appender.append("entry " + thread + "-" + i + "\n");
+                }
+            }));
+        }
+        producers.forEach(Thread::start);
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        appender.close();
+        // Written on the appending thread once closed
+        appender.append("late\n");
+
+        Set<String> lines = new HashSet<>();
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.toList();
+        }
+        for (Path file : files) {
+            Assertions.assertTrue(Files.size(file) <= 16 * 1024, file + " was not rotated");
+            lines.addAll(Files.readAllLines(file));
+        }
+        Assertions.assertTrue(files.size() > 1);
+        Assertions.assertEquals(threads * entriesPerThread + 1, lines.size());
+        Assertions.assertTrue(lines.contains("late"));
+    }
+
+    @Test
+    void oldestRotatedFileIsDeleted() throws Exception {
+        Path log = dir.resolve("errorLog.log");
+        ErrorLogAppender appender = new ErrorLogAppender(log, 10, 2);
+        for (int i = 0; i < 5; i++) {
+            appender.append("entry " + i + "\n");
+        }
+        appender.close();
+
+        Assertions.assertEquals(List.of("entry 4"), Files.readAllLines(log));
+        Assertions.assertEquals(List.of("entry 3"), Files.readAllLines(dir.resolve("errorLog.log.1")));
+        Assertions.assertEquals(List.of("entry 2"), Files.readAllLines(dir.resolve("errorLog.log.2")));
+        Assertions.assertFalse(Files.exists(dir.resolve("errorLog.log.3")));
+    }
+}
@@ -0,0 +1,67 @@
+package org.noqturne;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+class FfmpegInstallerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void onlyTheBinariesAreWritten() throws IOException {
+        byte[] ffmpeg = new byte[3 * 1024 * 1024];
+        new Random(7).nextBytes(ffmpeg);
+        byte[] zip = zip("ffmpeg-master/bin/ffplay.exe", "ffplay".getBytes(StandardCharsets.UTF_8),
+                "ffmpeg-master/bin/ffmpeg.exe", ffmpeg,
+                "ffmpeg-master/bin/ffprobe.exe", "ffprobe".getBytes(StandardCharsets.UTF_8),
+                "ffmpeg-master/doc/index.html", "docs".getBytes(StandardCharsets.UTF_8));
+        Files.writeString(dir.resolve("ffmpeg.exe"), "old version");
+
+        FfmpegInstaller.extract(new ByteArrayInputStream(zip), dir, Set.of("ffmpeg.exe", "ffprobe.exe"), read -> {});
+
+        Assertions.assertArrayEquals(ffmpeg, Files.readAllBytes(dir.resolve("ffmpeg.exe")));
+        Assertions.assertEquals("ffprobe", Files.readString(dir.resolve("ffprobe.exe")));
+        try (Stream<Path> files = Files.list(dir)) {
+            Assertions.assertEquals(List.of("ffmpeg.exe", "ffprobe.exe"),
+                    files.map(file -> file.getFileName().toString()).sorted().toList());
+        }
+    }
+
+    @Test
+    void missingBinaryFailsTheInstall() throws IOException {
+        byte[] zip = zip("bin/ffmpeg.exe", new byte[10]);
+
+        Assertions.assertThrows(IOException.class, () -> FfmpegInstaller.extract(new ByteArrayInputStream(zip), dir,
+                Set.of("ffmpeg.exe", "ffprobe.exe"), read -> {}));
+    }
+
+    /**
+     * @param entries alternating names and contents of the entries
+     */
+    private static byte[] zip(Object... entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < entries.length; i += 2) {
+                out.putNextEntry(new ZipEntry((String) entries[i]));
+                out.write((byte[]) entries[i + 1]);
+                out.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,146 @@
+package org.noqturne;
+
+import com.mpatric.mp3agic.ID3v2;
+import com.mpatric.mp3agic.ID3v24Tag;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+class FolderWatcherTest {
+
+    private static final FolderWatcher.Settings SETTINGS =
+            new FolderWatcher.Settings(Duration.ofMillis(300), 10, Duration.ofMillis(200));
+    // Longest time a test waits for a batch that is expected to be tagged
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @TempDir
+    Path dir;
+
+    private Path folder;
+    private Path state;
+    private final BlockingQueue<List<File>> batches = new LinkedBlockingQueue<>();
+    // Size of every song at the moment it was tagged
+    private final Map<File, Long> taggedSizes = new ConcurrentHashMap<>();
+    private FolderWatcher watcher;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        new ConsoleLogger(System.out, System.err, false);
+        folder = Files.createDirectory(dir.resolve("folder"));
+        state = dir.resolve("watched.json");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+
+    /**
+     * Starts a watcher whose batches are recorded instead of tagged. Tagging a song appends to it, like
+     * writing tags to it would.
+     */
+    private void startWatcher(FolderWatcher.Settings settings) throws IOException {
+        watcher = new FolderWatcher(List.of(folder), settings, (songs, listener) -> {
+            for (File song : songs) {
+                taggedSizes.put(song, song.length());
+                try {
+                    Files.write(song.toPath(), new byte[16], StandardOpenOption.APPEND);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                listener.songFinished(song, true);
+            }
+            batches.add(songs);
+            return new TaggingPipeline.BatchResult(songs.size(), List.of());
+        }, (song, tagged) -> {}, state);
+        watcher.start();
+    }
+
+    private List<File> nextBatch() throws InterruptedException {
+        List<File> batch = batches.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        Assertions.assertNotNull(batch, "No batch was tagged in time");
+        return batch;
+    }
+
+    @Test
+    void songsThatAreAlreadyTaggedAreRememberedWithoutTagging() throws Exception {
+        Path song = SyntheticMp3.create(folder.resolve("Artist - Title.mp3"), 4096);
+        ID3v2 tag = new ID3v24Tag();
+        tag.setArtist("Artist");
+        tag.setTitle("Title");
+        tag.setAlbumImage(new byte[100], Tagger.MIME_TYPE);
+        tag.setComment(Tagger.COVER_ART_COMMENT_PREFIX + "abcdefghijk");
+        new Id3TagWriter(0).write(song, tag);
+        Path untagged = SyntheticMp3.create(folder.resolve("Artist - Other.mp3"), 4096);
+
+        startWatcher(SETTINGS);
+        // Both songs were found by the same scan, so by now the tagged song has been checked as well
+        Assertions.assertEquals(List.of(untagged.toFile()), nextBatch());
+        watcher.close();
+
+        Assertions.assertTrue(batches.isEmpty());
+        Assertions.assertTrue(Files.readString(state).contains(song.getFileName().toString()));
+    }
+
+    @Test
+    void songsAreOnlyTaggedOnceTheyStoppedGrowing() throws Exception {
+        startWatcher(SETTINGS);
+        Path song = folder.resolve("Artist - Title.mp3");
+        Files.write(song, new byte[1024]);
+        // Grows more often than the settle time, like a song that is still being copied
+        for (int i = 0; i < 8; i++) {
+            Thread.sleep(100);
+            Files.write(song, new byte[1024], StandardOpenOption.APPEND);
+        }
+        long finalSize = Files.size(song);
+
+        Assertions.assertEquals(List.of(song.toFile()), nextBatch());
+        Assertions.assertEquals(finalSize, taggedSizes.get(song.toFile()));
+    }
+
+    @Test
+    void fullBatchesStartRightAwayAndTheRestAfterTheMaximumLatency() throws Exception {
+        startWatcher(new FolderWatcher.Settings(Duration.ofMillis(100), 3, Duration.ofSeconds(1)));
+        for (int i = 0; i < 4; i++) {
+            Files.write(folder.resolve("Artist - Song " + i + ".mp3"), new byte[1024]);
+        }
+
+        Assertions.assertEquals(3, nextBatch().size());
+        long fullBatchTagged = System.nanoTime();
+        Assertions.assertEquals(1, nextBatch().size());
+        Assertions.assertTrue(System.nanoTime() - fullBatchTagged >= TimeUnit.MILLISECONDS.toNanos(500),
+                "The last song did not wait for more songs");
+    }
+
+    @Test
+    void songsAreOnlyTaggedAgainOnceTheyAreModified() throws Exception {
+        startWatcher(SETTINGS);
+        Path song = folder.resolve("Artist - Title.mp3");
+        Files.write(song, new byte[1024]);
+        Assertions.assertEquals(List.of(song.toFile()), nextBatch());
+
+        // Writing the tags modified the song, which must not make it a new song
+        Assertions.assertNull(batches.poll(1500, TimeUnit.MILLISECONDS));
+
+        Files.write(song, new byte[1024], StandardOpenOption.APPEND);
+        Assertions.assertEquals(List.of(song.toFile()), nextBatch());
+    }
+}
@@ -0,0 +1,52 @@
+package org.noqturne;
+
+import com.mpatric.mp3agic.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+class Id3TagReaderTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsTagWrittenByTagWriter() throws Exception {
+        Path file = SyntheticMp3.create(dir.resolve("song.mp3"), 64 * 1024);
+        new Id3TagWriter(Id3TagWriter.DEFAULT_PADDING).write(file, tag(new ID3v24Tag()));
+
+        ID3v2 tag = Id3TagReader.read(file);
+        Assertions.assertNotNull(tag);
+        Assertions.assertEquals("Artist", tag.getArtist());
+        Assertions.assertEquals("Titlé", tag.getTitle());
+        Assertions.assertEquals(2000, tag.getAlbumImage().length);
+    }
+
+    @Test
+    void summarySkipsCoverArtButFindsOtherTags() throws Exception {
+        for (ID3v2 tag : new ID3v2[] {new ID3v23Tag(), new ID3v24Tag()}) {
+            Path file = SyntheticMp3.create(dir.resolve("song" + tag.getVersion() + ".mp3"), 64 * 1024);
+            new Id3TagWriter(Id3TagWriter.DEFAULT_PADDING).write(file, tag(tag));
+
+            Id3TagReader.Summary summary = Id3TagReader.summarize(file);
+            Assertions.assertEquals(new Id3TagReader.Summary("Artist", "Titlé", true, "abcdefghijk"), summary);
+        }
+    }
+
+    @Test
+    void fileWithoutTagHasEmptySummary() throws Exception {
+        Path file = SyntheticMp3.create(dir.resolve("song.mp3"), 64 * 1024);
+        Assertions.assertNull(Id3TagReader.read(file));
+        Assertions.assertEquals(Id3TagReader.Summary.EMPTY, Id3TagReader.summarize(file));
+    }
+
+    private static ID3v2 tag(ID3v2 tag) {
+        tag.setArtist("Artist");
+        tag.setTitle("Titlé");
+        tag.setAlbumImage(new byte[2000], Tagger.MIME_TYPE);
+        tag.setComment(Tagger.COVER_ART_COMMENT_PREFIX + "abcdefghijk");
+        return tag;
+    }
+}
@@ -0,0 +1,68 @@
+package org.noqturne;
+
+import com.mpatric.mp3agic.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+class Id3TagWriterTest {
+
+    private static final int PADDING = 16 * 1024;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void firstTagRewritesFileWithPaddingAndLaterTagsFitInPlace() throws Exception {
+        Path file = SyntheticMp3.create(dir.resolve("song.mp3"), 1024 * 1024);
+        long audioLength = Files.size(file);
+        Id3TagWriter writer = new Id3TagWriter(PADDING);
+
+        Id3TagWriter.WriteResult first = writer.write(file, tag("Artist", "Title", 5000));
+        Assertions.assertFalse(first.inPlace());
+        long taggedLength = Files.size(file);
+        Assertions.assertEquals(first.bytesWritten(), taggedLength);
+        Assertions.assertTrue(taggedLength > audioLength + PADDING);
+
+        Id3TagWriter.WriteResult second = writer.write(file, tag("Other artist", "Other title", 9000));
+        Assertions.assertTrue(second.inPlace());
+        Assertions.assertEquals(taggedLength, Files.size(file));
+        Assertions.assertEquals(taggedLength - audioLength, second.bytesWritten());
+
+        Mp3File mp3 = new Mp3File(file);
+        Assertions.assertEquals("Other artist", mp3.getId3v2Tag().getArtist());
+        Assertions.assertEquals("Other title", mp3.getId3v2Tag().getTitle());
+        Assertions.assertArrayEquals(image(9000), mp3.getId3v2Tag().getAlbumImage());
+        Assertions.assertEquals(audioLength / 417, mp3.getFrameCount());
+    }
+
+    @Test
+    void tagTooBigForPaddingRewritesFile() throws Exception {
+        Path file = SyntheticMp3.create(dir.resolve("song.mp3"), 256 * 1024);
+        Id3TagWriter writer = new Id3TagWriter(PADDING);
+        writer.write(file, tag("Artist", "Title", 1000));
+
+        Id3TagWriter.WriteResult result = writer.write(file, tag("Artist", "Title", 2 * PADDING));
+        Assertions.assertFalse(result.inPlace());
+        Assertions.assertArrayEquals(image(2 * PADDING), new Mp3File(file).getId3v2Tag().getAlbumImage());
+        Assertions.assertFalse(Files.exists(dir.resolve("song.mp3.tagging")));
+    }
+
+    private static ID3v2 tag(String artist, String title, int imageSize) {
+        ID3v2 tag = new ID3v24Tag();
+        tag.setArtist(artist);
+        tag.setTitle(title);
+        tag.setAlbumImage(image(imageSize), Tagger.MIME_TYPE);
+        return tag;
+    }
+
+    private static byte[] image(int size) {
+        byte[] image = new byte[size];
+        Arrays.fill(image, (byte) 0x42);
+        return image;
+    }
+}
@@ -0,0 +1,56 @@
+package org.noqturne;
+
+import com.mpatric.mp3agic.ID3v2;
+import com.mpatric.mp3agic.ID3v24Tag;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+class LibraryAuditorTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void auditListsFilesMissingTags() throws Exception {
+        Id3TagWriter writer = new Id3TagWriter(0);
+        List<File> songs = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            Path file = SyntheticMp3.create(dir.resolve("song" + i + ".mp3"), 4096);
+            ID3v2 tag = new ID3v24Tag();
+            tag.setArtist("Artist");
+            tag.setTitle("Title " + i);
+            if (i % 50 != 0) {
+                tag.setAlbumImage(new byte[100], Tagger.MIME_TYPE);
+                tag.setComment(Tagger.COVER_ART_COMMENT_PREFIX + "abcdefghijk");
+            }
+            writer.write(file, tag);
+            songs.add(file.toFile());
+        }
+        Path untagged = SyntheticMp3.create(dir.resolve("untagged.mp3"), 4096);
+        songs.add(untagged.toFile());
+        Path notAnMp3 = Files.write(dir.resolve("broken.mp3"), "ID3\u0004\u0000\u0000\u0000\u0000\u0010\u0000".getBytes());
+        songs.add(notAnMp3.toFile());
+
+        LibraryAuditor.AuditReport report = new LibraryAuditor(4).audit(songs.toArray(new File[0]));
+
+        Assertions.assertEquals(152, report.audited());
+        Assertions.assertEquals(List.of(
+                new LibraryAuditor.Finding(songs.get(0),
+                        EnumSet.of(LibraryAuditor.Tag.COVER_ART, LibraryAuditor.Tag.COVER_ART_VID)),
+                new LibraryAuditor.Finding(songs.get(50),
+                        EnumSet.of(LibraryAuditor.Tag.COVER_ART, LibraryAuditor.Tag.COVER_ART_VID)),
+                new LibraryAuditor.Finding(songs.get(100),
+                        EnumSet.of(LibraryAuditor.Tag.COVER_ART, LibraryAuditor.Tag.COVER_ART_VID)),
+                new LibraryAuditor.Finding(untagged.toFile(), EnumSet.allOf(LibraryAuditor.Tag.class))),
+                report.incomplete());
+        Assertions.assertEquals(List.of(notAnMp3.toFile()), report.unreadable());
+    }
+}
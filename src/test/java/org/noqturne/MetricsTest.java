@@ -0,0 +1,57 @@
+package org.noqturne;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+class MetricsTest {
+
+    @Test
+    void summaryOnlyCoversWorkSinceSnapshot() {
+        Metrics metrics = new Metrics();
+        metrics.stage(Metrics.Stage.SEARCH).record(TimeUnit.MILLISECONDS.toNanos(300), false);
+        Metrics.Snapshot start = metrics.snapshot();
+
+        metrics.stage(Metrics.Stage.FETCH).record(TimeUnit.MILLISECONDS.toNanos(40), false);
+        metrics.stage(Metrics.Stage.FETCH).record(TimeUnit.MILLISECONDS.toNanos(60), true);
+        metrics.recordCacheLookup(Metrics.Cache.COVER_ART, true);
+        metrics.recordCacheLookup(Metrics.Cache.COVER_ART, false);
+
+        List<String> summary = metrics.summarize(start);
+        Assertions.assertEquals(3, summary.size(), String.join("\n", summary));
+        Assertions.assertTrue(summary.get(1).matches("fetch\\s+2\\s+1\\s+100 ms\\s+50 ms\\s+<100 ms"), summary.get(1));
+        Assertions.assertEquals("Cache hits: cover_art 1/2", summary.get(2));
+        Assertions.assertEquals(List.of(), metrics.summarize(metrics.snapshot()));
+    }
+
+    @Test
+    void servesPrometheusText() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.stage(Metrics.Stage.SAVE).record(TimeUnit.MILLISECONDS.toNanos(3), false);
+        metrics.stage(Metrics.Stage.CROP).addQueued(2);
+        metrics.recordSong(true);
+
+        HttpServer server = metrics.serve(0);
+        try {
+            HttpResponse<String> response = HttpClient.newHttpClient().send(HttpRequest.newBuilder(
+                    URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/metrics")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            Assertions.assertEquals(200, response.statusCode());
+            String body = response.body();
+            Assertions.assertTrue(body.contains("noqturne_stage_duration_seconds_bucket{stage=\"save\",le=\"0.001\"} 0\n"), body);
+            Assertions.assertTrue(body.contains("noqturne_stage_duration_seconds_bucket{stage=\"save\",le=\"0.005\"} 1\n"), body);
+            Assertions.assertTrue(body.contains("noqturne_stage_duration_seconds_count{stage=\"save\"} 1\n"), body);
+            Assertions.assertTrue(body.contains("noqturne_stage_queued{stage=\"crop\"} 2\n"), body);
+            Assertions.assertTrue(body.contains("noqturne_songs_total{result=\"tagged\"} 1\n"), body);
+        } finally {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.noqturne;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+class PlaylistSubscriptionsTest {
+
+    private static final String URL = "https://www.youtube.com/playlist?list=PLtest";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void subscriptionsAndArchivesSurviveReload() throws Exception {
+        PlaylistSubscriptions subscriptions = open();
+        PlaylistSubscriptions.Subscription subscription = subscriptions.add(URL);
+        Assertions.assertEquals(subscription, subscriptions.add(" " + URL + " "));
+        subscriptions.archive(subscription, List.of("aaaaaaaaaa1", "aaaaaaaaaa2"));
+        subscriptions.archive(subscription, List.of("aaaaaaaaaa3"));
+        subscriptions.markSynced(subscription, 1234);
+        subscriptions.setSyncIntervalHours(6);
+
+        PlaylistSubscriptions reloaded = open();
+        Assertions.assertEquals(List.of(new PlaylistSubscriptions.Subscription(subscription.id(), URL, 1234)),
+                reloaded.list());
+        Assertions.assertEquals(Set.of("aaaaaaaaaa1", "aaaaaaaaaa2", "aaaaaaaaaa3"), reloaded.getArchive(subscription));
+        Assertions.assertEquals(6, reloaded.getSyncIntervalHours());
+    }
+
+    @Test
+    void removingDeletesArchive() throws Exception {
+        PlaylistSubscriptions subscriptions = open();
+        PlaylistSubscriptions.Subscription subscription = subscriptions.add(URL);
+        subscriptions.archive(subscription, List.of("aaaaaaaaaa1"));
+
+        subscriptions.remove(subscription);
+
+        Assertions.assertNull(open().get(URL));
+        Assertions.assertEquals(Set.of(), subscriptions.getArchive(subscription));
+        try (var archives = Files.list(dir.resolve("archives"))) {
+            Assertions.assertEquals(0, archives.count());
+        }
+    }
+
+    private PlaylistSubscriptions open() {
+        return new PlaylistSubscriptions(dir.resolve("subscriptions.json"), dir.resolve("archives"));
+    }
+}
@@ -0,0 +1,37 @@
+package org.noqturne;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+class ProcessSupervisorTest {
+
+    @Test
+    void outputIsReadOnVirtualThreadsWithTheStartingContext() throws Exception {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        List<String> stderr = new CopyOnWriteArrayList<>();
+        List<Boolean> virtual = new CopyOnWriteArrayList<>();
+        List<ErrorLogger.Context> contexts = new CopyOnWriteArrayList<>();
+        ErrorLogger.Context context = new ErrorLogger.Context("song.mp3", "download", "abcdefghijk");
+
+        ProcessSupervisor.Supervised process;
+        try (ErrorLogger.Scope ignored = ErrorLogger.enterContext(context)) {
+            // java -version writes to standard error
+            process = ProcessSupervisor.start(new ProcessBuilder(java, "-version"), "java",
+                    line -> Assertions.fail("Unexpected output " + line),
+                    line -> {
+                        stderr.add(line);
+                        virtual.add(Thread.currentThread().isVirtual());
+                        contexts.add(ErrorLogger.currentContext());
+                    });
+        }
+
+        Assertions.assertEquals(0, process.waitFor());
+        Assertions.assertTrue(process.outputRead().isDone());
+        Assertions.assertFalse(stderr.isEmpty());
+        Assertions.assertTrue(virtual.stream().allMatch(Boolean::booleanValue));
+        Assertions.assertTrue(contexts.stream().allMatch(context::equals));
+    }
+}
@@ -0,0 +1,73 @@
+package org.noqturne;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+class SearchCacheTest {
+
+    @TempDir
+    Path cacheDir;
+
+    @Test
+    void normalizationIgnoresCaseWhitespaceAndNoise() {
+        String expected = "yugo kanno - il vento d'oro";
+        Assertions.assertEquals(expected, SearchCache.normalize("Yugo Kanno - il vento d'oro"));
+        Assertions.assertEquals(expected, SearchCache.normalize("  Yugo   Kanno - il vento d'oro (Official Video)"));
+        Assertions.assertEquals(expected, SearchCache.normalize("Yugo Kanno - il vento d'oro [Lyrics]"));
+        Assertions.assertEquals(expected, SearchCache.normalize("Yugo Kanno - il vento d'oro HD"));
+        Assertions.assertEquals(expected, SearchCache.normalize("Yugo Kanno - il vento d'oro (Official Music Video) [HD]"));
+        Assertions.assertEquals("hdmi - shadows", SearchCache.normalize("HDMI - Shadows"));
+    }
+
+    @Test
+    void searchesArePersisted() throws IOException {
+        Path file = cacheDir.resolve("searches.json");
+        SearchCache cache = new SearchCache(file, Duration.ofDays(1), 10);
+        cache.put("Artist - Song (Official Video)", List.of("vId1", "vId2"));
+        cache.flush();
+
+        SearchCache reloaded = new SearchCache(file, Duration.ofDays(1), 10);
+        Assertions.assertEquals(List.of("vId1", "vId2"), reloaded.get("artist - song"));
+        Assertions.assertNull(reloaded.get("Artist - Other song"));
+    }
+
+    @Test
+    void expiredSearchesAreOnlyUsedOffline() {
+        SearchCache cache = new SearchCache(cacheDir.resolve("searches.json"), Duration.ofMillis(-1), 10);
+        cache.put("Artist - Song", List.of("vId1"));
+        cache.setOfflineMode(true);
+        Assertions.assertEquals(List.of("vId1"), cache.get("Artist - Song"));
+        cache.setOfflineMode(false);
+        Assertions.assertNull(cache.get("Artist - Song"));
+    }
+
+    @Test
+    void expiredSearchesAreKeptForOfflineMode() throws IOException {
+        Path file = cacheDir.resolve("searches.json");
+        SearchCache cache = new SearchCache(file, Duration.ofMillis(-1), 10);
+        cache.put("Artist - Song", List.of("vId1"));
+        Assertions.assertNull(cache.get("Artist - Song"));
+        cache.flush();
+
+        SearchCache reloaded = new SearchCache(file, Duration.ofMillis(-1), 10);
+        reloaded.setOfflineMode(true);
+        Assertions.assertEquals(List.of("vId1"), reloaded.get("Artist - Song"));
+    }
+
+    @Test
+    void leastRecentlyUsedSearchIsDropped() {
+        SearchCache cache = new SearchCache(cacheDir.resolve("searches.json"), Duration.ofDays(1), 2);
+        cache.put("a", List.of("1"));
+        cache.put("b", List.of("2"));
+        cache.get("a");
+        cache.put("c", List.of("3"));
+        Assertions.assertNull(cache.get("b"));
+        Assertions.assertEquals(List.of("1"), cache.get("a"));
+    }
+}
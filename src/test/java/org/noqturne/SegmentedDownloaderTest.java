@@ -0,0 +1,129 @@
+package org.noqturne;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+class SegmentedDownloaderTest {
+
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    @TempDir
+    Path dir;
+
+    private HttpServer server;
+    private final byte[] file = new byte[1024 * 1024];
+    private volatile boolean rangesSupported = true;
+    // Responses are cut off after this many bytes, to simulate failing connections
+    private volatile long truncateAfter = Long.MAX_VALUE;
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+    private final AtomicLong bytesServed = new AtomicLong();
+    private String url;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        new Random(42).nextBytes(file);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/ffmpeg.zip", exchange -> {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            Matcher matcher = range == null ? null : RANGE_PATTERN.matcher(range);
+            int start = 0;
+            int end = file.length - 1;
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            if (rangesSupported && matcher != null && matcher.matches()) {
+                rangeRequests.incrementAndGet();
+                start = Integer.parseInt(matcher.group(1));
+                end = Math.min(Integer.parseInt(matcher.group(2)), file.length - 1);
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + file.length);
+                exchange.sendResponseHeaders(206, end - start + 1);
+            } else {
+                exchange.sendResponseHeaders(200, file.length);
+            }
+            int length = (int) Math.min(end - start + 1, start == end ? 1 : truncateAfter);
+            OutputStream out = exchange.getResponseBody();
+            out.write(file, start, length);
+            out.flush();
+            bytesServed.addAndGet(length);
+            if (length < end - start + 1) {
+                // Makes the server drop the connection instead of waiting for the rest of the response
+                throw new IOException("Response cut off");
+            }
+            out.close();
+        });
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/ffmpeg.zip";
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void segmentsAreDownloadedInParallelAndAssembled() throws Exception {
+        Path target = dir.resolve("ffmpeg.zip");
+        AtomicLong lastProgress = new AtomicLong();
+
+        downloader(0).download(url, target, (downloaded, total) -> {
+            Assertions.assertEquals(file.length, total);
+            lastProgress.set(downloaded);
+        });
+
+        Assertions.assertArrayEquals(file, Files.readAllBytes(target));
+        // The probe and one request per segment
+        Assertions.assertEquals(5, rangeRequests.get());
+        Assertions.assertEquals(file.length, lastProgress.get());
+        Assertions.assertFalse(Files.exists(dir.resolve("ffmpeg.zip.part")));
+        Assertions.assertFalse(Files.exists(dir.resolve("ffmpeg.zip.part.json")));
+    }
+
+    @Test
+    void failedDownloadIsResumedFromTheJournal() throws Exception {
+        Path target = dir.resolve("ffmpeg.zip");
+        truncateAfter = 100 * 1024;
+        Assertions.assertThrows(IOException.class, () -> downloader(0).download(url, target, (downloaded, total) -> {}));
+        Assertions.assertTrue(Files.exists(dir.resolve("ffmpeg.zip.part.json")));
+        Assertions.assertFalse(Files.exists(target));
+
+        truncateAfter = Long.MAX_VALUE;
+        bytesServed.set(0);
+        downloader(0).download(url, target, (downloaded, total) -> {});
+
+        Assertions.assertArrayEquals(file, Files.readAllBytes(target));
+        // Only what was missing is downloaded again, bytes lost with a dropped connection at most
+        Assertions.assertTrue(bytesServed.get() < file.length - 100 * 1024, bytesServed.get() + " bytes downloaded again");
+    }
+
+    @Test
+    void serverWithoutRangesIsDownloadedOverOneConnection() throws Exception {
+        rangesSupported = false;
+        Path target = dir.resolve("ffmpeg.zip");
+
+        downloader(0).download(url, target, (downloaded, total) -> {});
+
+        Assertions.assertArrayEquals(file, Files.readAllBytes(target));
+        Assertions.assertEquals(0, rangeRequests.get());
+    }
+
+    private static SegmentedDownloader downloader(int retries) {
+        return new SegmentedDownloader(new SegmentedDownloader.Settings(4, 64 * 1024, retries, Duration.ofMillis(50), Duration.ofSeconds(5)));
+    }
+}
@@ -0,0 +1,62 @@
+package org.noqturne;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class SingleFlightTest {
+
+    @Test
+    void concurrentRequestsShareOneComputation() throws Exception {
+        SingleFlight<String, byte[]> flights = new SingleFlight<>(1);
+        AtomicInteger computations = new AtomicInteger();
+        CompletableFuture<byte[]> running = new CompletableFuture<>();
+
+        CompletableFuture<byte[]> first = flights.get("vId", () -> {
+            computations.incrementAndGet();
+            return running;
+        });
+        CompletableFuture<byte[]> concurrent = flights.get("vId", () -> {
+            computations.incrementAndGet();
+            return CompletableFuture.completedFuture(new byte[0]);
+        });
+        Assertions.assertFalse(concurrent.isDone());
+
+        running.complete(new byte[] {1, 2, 3});
+        Assertions.assertEquals(1, computations.get());
+        // Every request gets the very same buffer
+        Assertions.assertSame(first.get(), concurrent.get());
+    }
+
+    @Test
+    void failedComputationsAreNotKept() throws Exception {
+        SingleFlight<String, String> flights = new SingleFlight<>(1);
+        CompletableFuture<String> running = new CompletableFuture<>();
+        CompletableFuture<String> first = flights.get("song", () -> running);
+        CompletableFuture<String> concurrent = flights.get("song", () -> CompletableFuture.completedFuture("other"));
+
+        running.completeExceptionally(new IOException("offline"));
+        Assertions.assertThrows(ExecutionException.class, first::get);
+        Assertions.assertThrows(ExecutionException.class, concurrent::get);
+
+        Assertions.assertEquals("retried", flights.get("song", () -> CompletableFuture.completedFuture("retried")).get());
+    }
+
+    @Test
+    void onlyTheMostRecentResultsAreKept() throws Exception {
+        SingleFlight<String, String> flights = new SingleFlight<>(2);
+        flights.get("a", () -> CompletableFuture.completedFuture("a1")).get();
+        flights.get("b", () -> CompletableFuture.completedFuture("b1")).get();
+        // Repeated requests get the kept result
+        Assertions.assertEquals("a1", flights.get("a", () -> CompletableFuture.completedFuture("a2")).get());
+
+        flights.get("c", () -> CompletableFuture.completedFuture("c1")).get();
+        Assertions.assertEquals("a1", flights.get("a", () -> CompletableFuture.completedFuture("a3")).get());
+        // The least recently used result made room for the newest one
+        Assertions.assertEquals("b2", flights.get("b", () -> CompletableFuture.completedFuture("b2")).get());
+    }
+}
@@ -0,0 +1,28 @@
+package org.noqturne;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class SongDownloaderTest {
+
+    @Test
+    void progressIsParsedFromTemplateOutput() {
+        DownloadProgress.Item item = SongDownloader.parseProgress("dQw4w9WgXcQ:{\"status\": \"downloading\", "
+                + "\"downloaded_bytes\": 1024, \"total_bytes\": null, \"total_bytes_estimate\": 4096.5, "
+                + "\"speed\": 2048.25, \"eta\": 2}");
+
+        Assertions.assertEquals(new DownloadProgress.Item("dQw4w9WgXcQ", "downloading", 1024, 4097L, 2048.25, 2L), item);
+        Assertions.assertEquals(0.25, item.fraction(), 0.001);
+        Assertions.assertFalse(item.isFinished());
+    }
+
+    @Test
+    void unknownValuesAndBrokenLinesAreTolerated() {
+        DownloadProgress.Item item = SongDownloader.parseProgress("dQw4w9WgXcQ:{\"status\": \"finished\", \"downloaded_bytes\": 10}");
+
+        Assertions.assertEquals(new DownloadProgress.Item("dQw4w9WgXcQ", "finished", 10, null, null, null), item);
+        Assertions.assertNull(item.fraction());
+        Assertions.assertNull(SongDownloader.parseProgress("dQw4w9WgXcQ:NA"));
+        Assertions.assertNull(SongDownloader.parseProgress("no separator"));
+    }
+}
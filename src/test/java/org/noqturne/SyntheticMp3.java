@@ -0,0 +1,39 @@
+package org.noqturne;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Creates mp3 files that mp3agic accepts without needing real audio, for tests and benchmarks.
+ */
+final class SyntheticMp3 {
+
+    // MPEG-1 Layer III, 128 kbps, 44.1 kHz, no padding, no CRC
+    private static final byte[] FRAME_HEADER = {(byte) 0xFF, (byte) 0xFB, (byte) 0x90, 0x00};
+    private static final int FRAME_LENGTH = 417;
+
+    private SyntheticMp3() {
+    }
+
+    /**
+     * Writes an mp3 file without ID3 tags consisting of silent frames.
+     *
+     * @param path where to write the file
+     * @param approximateSize size of the file in bytes, rounded down to a whole number of frames
+     * @return the path of the written file
+     * @throws IOException if an I/O error occurs
+     */
+    static Path create(Path path, long approximateSize) throws IOException {
+        byte[] frame = new byte[FRAME_LENGTH];
+        System.arraycopy(FRAME_HEADER, 0, frame, 0, FRAME_HEADER.length);
+        long frames = Math.max(approximateSize / FRAME_LENGTH, 2);
+        try (OutputStream out = Files.newOutputStream(path)) {
+            for (long i = 0; i < frames; i++) {
+                out.write(frame);
+            }
+        }
+        return path;
+    }
+}
@@ -0,0 +1,228 @@
+package org.noqturne;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class TaggingPipelineTest {
+
+    private static final TaggingPipeline.Settings SETTINGS = new TaggingPipeline.Settings(2, 2, 2, 2, 4);
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @TempDir
+    Path dir;
+
+    private StubTagger tagger;
+    private TaggingPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        new ConsoleLogger(System.out, System.err, false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+    }
+
+    private void createPipeline(TaggingPipeline.Settings settings) {
+        tagger = new StubTagger(settings);
+        pipeline = tagger.getPipeline();
+    }
+
+    @Test
+    void oneBadFileDoesNotStopTheBatch() throws Exception {
+        createPipeline(SETTINGS);
+        tagger.onSave = song -> {
+            if (song.getName().startsWith("Broken")) {
+                throw new IOException("Broken file");
+            }
+        };
+        File broken = song("Broken - Song");
+        File[] songs = {song("Artist - One"), broken, song("Artist - Two"), song("Artist - Three")};
+
+        TaggingPipeline.BatchResult result = pipeline.tagAll(songs, null);
+
+        Assertions.assertEquals(3, result.tagged());
+        Assertions.assertEquals(List.of(broken), result.failed());
+        Assertions.assertEquals("search-Artist - Two", tagger.saved.get(songs[2]));
+    }
+
+    @Test
+    void songsOfAFixedVIdBatchAllGetItsCoverArt() throws Exception {
+        createPipeline(SETTINGS);
+        File[] songs = new File[10];
+        for (int i = 0; i < songs.length; i++) {
+            songs[i] = song("Album - Track " + i);
+        }
+
+        TaggingPipeline.BatchResult result = pipeline.tagAll(songs, "abcdefghijk");
+
+        Assertions.assertTrue(result.isSuccessful());
+        Assertions.assertEquals(0, tagger.searches.get());
+        // Also for songs submitted after the first ones finished, as there is no cover art cache
+        Assertions.assertEquals(1, tagger.fetches.get());
+        for (File song : songs) {
+            Assertions.assertEquals("abcdefghijk", tagger.saved.get(song));
+        }
+    }
+
+    @Test
+    void failingListenerStillMakesRoomForTheNextSong() {
+        createPipeline(new TaggingPipeline.Settings(1, 1, 1, 1, 1));
+        TaggingPipeline.BatchResult result = Assertions.assertTimeoutPreemptively(TIMEOUT, () -> {
+            TaggingPipeline.Batch batch = pipeline.startBatch(null, (song, tagged) -> {
+                throw new IllegalStateException("Listener failed");
+            });
+            for (int i = 0; i < 3; i++) {
+                batch.submit(song("Artist - Song " + i));
+            }
+            return batch.await();
+        });
+        Assertions.assertEquals(3, result.tagged());
+    }
+
+    @Test
+    void stagesAreResizedWhenTheConfigChanges() throws Exception {
+        createPipeline(new TaggingPipeline.Settings(1, 1, 1, 1, 8));
+        Config config = Config.load(dir.resolve("config.txt"));
+        pipeline.followConfig(config);
+
+        // Only succeeds if all three songs are being saved at the same time
+        config.set(Config.SAVE_THREADS, 3);
+        CountDownLatch together = new CountDownLatch(3);
+        tagger.onSave = song -> {
+            together.countDown();
+            if (!together.await(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new IOException("Songs were not saved concurrently");
+            }
+        };
+        Assertions.assertEquals(3, pipeline.tagAll(songs("Grow", 3), null).tagged());
+
+        config.set(Config.SAVE_THREADS, 1);
+        AtomicInteger saving = new AtomicInteger();
+        AtomicInteger mostSaving = new AtomicInteger();
+        tagger.onSave = song -> {
+            mostSaving.accumulateAndGet(saving.incrementAndGet(), Math::max);
+            Thread.sleep(50);
+            saving.decrementAndGet();
+        };
+        Assertions.assertEquals(3, pipeline.tagAll(songs("Shrink", 3), null).tagged());
+        Assertions.assertEquals(1, mostSaving.get());
+    }
+
+    @Test
+    void interruptingTheBatchAbandonsItsSongs() throws Exception {
+        createPipeline(SETTINGS);
+        CountDownLatch saving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        tagger.onSave = song -> {
+            saving.countDown();
+            release.await();
+        };
+        CompletableFuture<Throwable> outcome = new CompletableFuture<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                pipeline.tagAll(new File[] {song("Artist - Stuck")}, null);
+                outcome.complete(null);
+            } catch (Throwable e) {
+                outcome.complete(e);
+            }
+        });
+        waiter.start();
+        try {
+            Assertions.assertTrue(saving.await(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS));
+            waiter.interrupt();
+            Assertions.assertInstanceOf(InterruptedException.class, outcome.get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private File song(String name) {
+        return dir.resolve(name + ".mp3").toFile();
+    }
+
+    private File[] songs(String artist, int count) {
+        File[] songs = new File[count];
+        for (int i = 0; i < count; i++) {
+            songs[i] = song(artist + " - Song " + i);
+        }
+        return songs;
+    }
+
+    @FunctionalInterface
+    private interface SaveHook {
+        void saving(File song) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Performs the stages without any network, cache or mp3 file, and remembers which vId every song was saved with.
+     */
+    private static class StubTagger extends Tagger {
+        private final AtomicInteger searches = new AtomicInteger();
+        private final AtomicInteger fetches = new AtomicInteger();
+        private final Map<File, String> saved = new ConcurrentHashMap<>();
+        private volatile SaveHook onSave = song -> {};
+
+        private StubTagger(TaggingPipeline.Settings settings) {
+            super(settings, new CoverArtProcessor(CoverArtProcessor.DEFAULT_JPEG_QUALITY), 0);
+        }
+
+        @Override
+        List<String> getCachedVIds(String songName) {
+            return null;
+        }
+
+        @Override
+        List<String> searchVIds(String songName) {
+            searches.incrementAndGet();
+            return List.of("search-" + songName);
+        }
+
+        @Override
+        byte[] getCachedCoverArt(String vId) {
+            return null;
+        }
+
+        @Override
+        byte[] fetchThumbnail(String vId) {
+            fetches.incrementAndGet();
+            return vId.getBytes();
+        }
+
+        @Override
+        byte[] cropCoverArt(byte[] thumbnail) {
+            return thumbnail;
+        }
+
+        @Override
+        void cacheCoverArt(String vId, byte[] coverArt) {
+        }
+
+        @Override
+        void writeTags(String filePath, byte[] coverArt, String vId) throws IOException {
+            File song = new File(filePath);
+            try {
+                onSave.saving(song);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            saved.put(song, vId);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.noqturne;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ThumbnailFetcherTest {
+
+    private HttpServer server;
+    private final Map<String, byte[]> thumbnails = new ConcurrentHashMap<>();
+    private volatile long responseDelayMillis;
+    private final AtomicInteger downloads = new AtomicInteger();
+    private ThumbnailFetcher fetcher;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/vi/", exchange -> {
+            try {
+                Thread.sleep(responseDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = thumbnails.get(exchange.getRequestURI().getPath());
+            int status = body == null ? 404 : 200;
+            if (body == null) {
+                body = "placeholder".getBytes(StandardCharsets.UTF_8);
+            }
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(status, -1);
+                exchange.close();
+                return;
+            }
+            if (status == 200) {
+                downloads.incrementAndGet();
+            }
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        String baseUrl = "http://localhost:" + server.getAddress().getPort() + "/vi/";
+        fetcher = new ThumbnailFetcher(baseUrl, Duration.ofSeconds(2), Duration.ofMillis(500));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void highestAvailableResolutionIsUsed() throws IOException, InterruptedException {
+        thumbnails.put("/vi/abc/hq720.jpg", bytes("hq720"));
+        thumbnails.put("/vi/abc/hqdefault.jpg", bytes("hqdefault"));
+        Assertions.assertArrayEquals(bytes("hq720"), fetcher.fetch("abc"));
+
+        thumbnails.put("/vi/abc/maxresdefault.jpg", bytes("maxres"));
+        Assertions.assertArrayEquals(bytes("maxres"), fetcher.fetch("abc"));
+        // Only the images that were used were downloaded
+        Assertions.assertEquals(2, downloads.get());
+    }
+
+    @Test
+    void missingThumbnailFails() {
+        Assertions.assertThrows(IOException.class, () -> fetcher.fetch("missing"));
+    }
+
+    @Test
+    void slowServerTimesOut() {
+        thumbnails.put("/vi/slow/hqdefault.jpg", bytes("hqdefault"));
+        responseDelayMillis = 2000;
+        Assertions.assertThrows(IOException.class, () -> fetcher.fetch("slow"));
+    }
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,79 @@
+package org.noqturne;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+class YouTubeMusicSearchTest {
+
+    // Trimmed down from a real response, with a song listed twice and a result without a vId
+    private static final String RESPONSE = """
+            {"contents": {"tabbedSearchResultsRenderer": {"tabs": [{"tabRenderer": {"content": {
+              "sectionListRenderer": {"contents": [{"musicShelfRenderer": {"contents": [
+                {"musicResponsiveListItemRenderer": {"flexColumns": [{"text": {"runs": [{"text": "Song"}]}}],
+                  "playlistItemData": {"videoId": "aaaaaaaaaaa", "playlistSetVideoId": "x"}}},
+                {"musicResponsiveListItemRenderer": {"playlistItemData": {"extra": {"videoId": "nested"}, "videoId": "bbbbbbbbbbb"}}},
+                {"musicResponsiveListItemRenderer": {"playlistItemData": {"videoId": "aaaaaaaaaaa"}}},
+                {"musicResponsiveListItemRenderer": {"playlistItemData": {}}},
+                {"musicResponsiveListItemRenderer": {"playlistItemData": {"videoId": "ccccccccccc"}}}
+              ]}}]}}}}]}}}
+            """;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private HttpServer server;
+    private volatile int status = 200;
+    private final AtomicReference<JsonNode> lastRequest = new AtomicReference<>();
+    private YouTubeMusicSearch search;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/youtubei/v1/search", exchange -> {
+            lastRequest.set(mapper.readTree(exchange.getRequestBody()));
+            byte[] body = RESPONSE.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        search = new YouTubeMusicSearch(URI.create("http://localhost:" + server.getAddress().getPort()
+                + "/youtubei/v1/search?prettyPrint=false"), Duration.ofSeconds(10));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void resultsAreReturnedInOrderWithoutDuplicates() throws Exception {
+        Assertions.assertEquals(List.of("aaaaaaaaaaa", "bbbbbbbbbbb", "ccccccccccc"), search.search("Artist - Song"));
+
+        JsonNode request = lastRequest.get();
+        Assertions.assertEquals("Artist - Song", request.path("query").asText());
+        Assertions.assertEquals("EgWKAQIIAWoMEA4QChADEAQQCRAF", request.path("params").asText());
+        Assertions.assertEquals("WEB_REMIX", request.path("context").path("client").path("clientName").asText());
+    }
+
+    @Test
+    void failedSearchesThrow() {
+        status = 429;
+        Assertions.assertThrows(IOException.class, () -> search.search("Artist - Song"));
+    }
+}